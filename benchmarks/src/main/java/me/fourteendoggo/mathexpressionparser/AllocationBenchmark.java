@@ -0,0 +1,86 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scenarios of the allocation budget test in core, meant to be run with the GC profiler ({@code -prof gc}),
+ * which reports the bytes allocated per operation as {@code gc.alloc.rate.norm}. See {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+    private final double[] args = {1, 2, 3};
+    private ExecutionEnv env;
+    private CompiledExpression arithmetic;
+    private CompiledExpression fixedArityCalls;
+    private CompiledExpression variadicCall;
+    private CompiledExpression lazyVariable;
+
+    @Setup
+    public void setup() {
+        env = ExecutionEnv.defaulted();
+        env.insertLazyVariable("seed", () -> 3);
+        arithmetic = ExpressionParser.compile("a * b + c", env, "a", "b", "c");
+        fixedArityCalls = ExpressionParser.compile("sqrt(a * a + b * b) + pow(c, 2)", env, "a", "b", "c");
+        variadicCall = ExpressionParser.compile("max(a, b, c) + a", env, "a", "b", "c");
+        lazyVariable = ExpressionParser.compile("a * seed", env, "a", "b", "c");
+    }
+
+    @Benchmark
+    public double compiledArithmetic() {
+        return arithmetic.evaluate(args);
+    }
+
+    @Benchmark
+    public double compiledFixedArityCalls() {
+        return fixedArityCalls.evaluate(args);
+    }
+
+    @Benchmark
+    public double compiledVariadicCall() {
+        return variadicCall.evaluate(args);
+    }
+
+    @Benchmark
+    public double compiledLazyVariable() {
+        return lazyVariable.evaluate(args);
+    }
+
+    @Benchmark
+    public double parseSimple() {
+        return ExpressionParser.parse("1+2*3", env);
+    }
+
+    @Benchmark
+    public double parseNested() {
+        return ExpressionParser.parse("((1 + 2) * (3 + 4)) / 5", env);
+    }
+
+    @Benchmark
+    public double parseCalls() {
+        return ExpressionParser.parse("sqrt(16) + max(1, 2, 3) * pi", env);
+    }
+
+    /**
+     * Runs only these benchmarks, with the GC profiler. Equivalent to {@code Main AllocationBenchmark -prof gc}.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,44 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses expressions on an env while another thread keeps inserting and removing a symbol in it.
+ * The removed symbol shares a prefix with a symbol being looked up, so both threads touch the same trie nodes.
+ * <p>
+ * Every group of threads has its own env, with one writer. Change the amount of parsing threads with
+ * {@code -tg 1,7} (the writer comes first), or see {@link ScalingReport}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentMutationBenchmark {
+    private ExecutionEnv env;
+    private int counter;
+
+    @Setup
+    public void setup() {
+        env = ExecutionEnv.defaulted();
+    }
+
+    @Benchmark
+    @Group("mutation")
+    @GroupThreads(3)
+    public double parse() {
+        return ExpressionParser.parse(ConcurrentParseBenchmark.EXPRESSION, env);
+    }
+
+    @Benchmark
+    @Group("mutation")
+    @GroupThreads(1)
+    public Object insertAndRemove() {
+        env.insertVariable("sqrt_tmp", counter++);
+        return env.removeSymbol("sqrt_tmp");
+    }
+}
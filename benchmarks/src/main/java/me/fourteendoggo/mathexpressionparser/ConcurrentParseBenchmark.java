@@ -0,0 +1,70 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses expressions from many threads at once: on one shared env, on the global env of {@link ExpressionParser},
+ * and on an env per thread, to decide between sharing an env and giving every thread its own.
+ * The rand() benchmarks all draw from the one random generator shared by the builtin symbols.
+ * <p>
+ * Runs with as many threads as there are cores, see {@link ScalingReport} for the scaling from 1 to N threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConcurrentParseBenchmark {
+    // only builtin symbols, so every env can parse it
+    static final String EXPRESSION = "sqrt(3 * 3 + 4 * 4) + max(3, 4, 1) * sin(pi / 4) - abs(-2)";
+
+    private ExecutionEnv sharedEnv;
+    private CompiledExpression compiledRand;
+
+    @State(Scope.Thread)
+    public static class ThreadEnv {
+        ExecutionEnv env;
+
+        @Setup
+        public void setup() {
+            env = ExecutionEnv.defaulted();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        sharedEnv = ExecutionEnv.defaulted();
+        compiledRand = ExpressionParser.compile("rand()", sharedEnv);
+    }
+
+    @Benchmark
+    public double parseSharedEnv() {
+        return ExpressionParser.parse(EXPRESSION, sharedEnv);
+    }
+
+    @Benchmark
+    public double parseDefaultEnv() {
+        return ExpressionParser.parse(EXPRESSION);
+    }
+
+    @Benchmark
+    public double parsePerThreadEnv(ThreadEnv state) {
+        return ExpressionParser.parse(EXPRESSION, state.env);
+    }
+
+    @Benchmark
+    public double parseRand() {
+        return ExpressionParser.parse("rand()", sharedEnv);
+    }
+
+    @Benchmark
+    public double evaluateRand() {
+        return compiledRand.evaluate();
+    }
+}
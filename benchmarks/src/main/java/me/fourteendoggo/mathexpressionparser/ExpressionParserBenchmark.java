@@ -4,34 +4,33 @@ import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
-// TODO: new benchmarks that represent the current state, also mention them in the readme
+/**
+ * Parses many small multiplications, the inputs are built up front so only the parser is measured.
+ */
 @State(Scope.Benchmark)
-@BenchmarkMode(Mode.All)
+@BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
 public class ExpressionParserBenchmark {
     private static final int NUM_EXPRESSIONS = 1000;
-    private final int[] firstOperands = new int[NUM_EXPRESSIONS];
-    private final int[] secondOperands = new int[NUM_EXPRESSIONS];
+    private final String[] expressions = new String[NUM_EXPRESSIONS];
 
     @Setup
     public void setup() {
-        Random random = ThreadLocalRandom.current();
+        Random random = new Random(42);
         for (int i = 0; i < NUM_EXPRESSIONS; i++) {
-            firstOperands[i] = random.nextInt(10000);
-            secondOperands[i] = random.nextInt(10000);
+            expressions[i] = random.nextInt(10000) + "*" + random.nextInt(10000);
         }
     }
 
     @Benchmark
-    @Fork(value = 2, warmups = 2)
     public void parseMultipleExpressions(Blackhole blackhole) {
-        for (int i = 0; i < NUM_EXPRESSIONS; i++) {
-            double result = ExpressionParser.parse(firstOperands[i] + "*" + secondOperands[i]);
-
-            blackhole.consume(result);
+        for (String expression : expressions) {
+            blackhole.consume(ExpressionParser.parse(expression));
         }
     }
 }
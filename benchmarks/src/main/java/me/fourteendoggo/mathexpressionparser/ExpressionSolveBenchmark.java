@@ -0,0 +1,50 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.token.Expression;
+import me.fourteendoggo.mathexpressionparser.token.Operand;
+import me.fourteendoggo.mathexpressionparser.token.Operator;
+import me.fourteendoggo.mathexpressionparser.token.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and solves an {@link Expression} from already scanned tokens, so no tokenizing is measured.
+ * A chain alternates operators of different priorities, which is the worst case for the linked calculations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ExpressionSolveBenchmark {
+    private static final Operator[] OPERATORS = {Operator.ADDITION, Operator.MULTIPLICATION, Operator.SUBTRACTION, Operator.DIVISION};
+
+    @Param({"8", "64", "512"})
+    public int length;
+
+    private Token[] tokens;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        tokens = new Token[length * 2 - 1];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = i % 2 == 0
+                    ? new Operand(1 + random.nextInt(100))
+                    : OPERATORS[random.nextInt(OPERATORS.length)];
+        }
+    }
+
+    @Benchmark
+    public double solveChain() {
+        // an expression is consumed by solving it
+        Expression expression = new Expression();
+        for (Token token : tokens) {
+            expression.pushToken(token);
+        }
+        return expression.solve();
+    }
+}
@@ -0,0 +1,81 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end runs over a corpus of realistic formulas, read from {@code formulas.txt}.
+ * Every formula may use the variables x, y and z, which are also the parameters when compiling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FormulaCorpusBenchmark {
+    private static final String[] PARAMETERS = {"x", "y", "z"};
+
+    private ExecutionEnv env;
+    private String[] formulas;
+    private CompiledExpression[] compiled;
+
+    @Setup
+    public void setup() throws IOException {
+        formulas = readCorpus().toArray(new String[0]);
+        env = ExecutionEnv.defaulted();
+        env.insertVariable("x", 1.5);
+        env.insertVariable("y", 2.25);
+        env.insertVariable("z", 0.75);
+
+        ExecutionEnv compileEnv = ExecutionEnv.defaulted();
+        compiled = new CompiledExpression[formulas.length];
+        for (int i = 0; i < formulas.length; i++) {
+            compiled[i] = ExpressionParser.compile(formulas[i], compileEnv, PARAMETERS);
+        }
+    }
+
+    static List<String> readCorpus() throws IOException {
+        try (InputStream in = FormulaCorpusBenchmark.class.getResourceAsStream("/formulas.txt")) {
+            if (in == null) {
+                throw new IOException("formulas.txt not found");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return reader.lines()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .toList();
+        }
+    }
+
+    @Benchmark
+    public void parseCorpus(Blackhole blackhole) {
+        for (String formula : formulas) {
+            blackhole.consume(ExpressionParser.parse(formula, env));
+        }
+    }
+
+    @Benchmark
+    public void compileCorpus(Blackhole blackhole) {
+        for (String formula : formulas) {
+            blackhole.consume(ExpressionParser.compile(formula, env, PARAMETERS));
+        }
+    }
+
+    @Benchmark
+    public void evaluateCompiledCorpus(Blackhole blackhole) {
+        for (CompiledExpression expression : compiled) {
+            blackhole.consume(expression.evaluate(1.5, 2.25, 0.75));
+        }
+    }
+}
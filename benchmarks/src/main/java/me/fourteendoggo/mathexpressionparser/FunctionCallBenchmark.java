@@ -0,0 +1,59 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of calling a trivial function, per arity. Arities up to 3 go through the fixed arity call sites,
+ * more arguments through a {@link me.fourteendoggo.mathexpressionparser.function.FunctionContext}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FunctionCallBenchmark {
+    @Param({"0", "1", "2", "3", "8"})
+    public int arity;
+
+    private ExecutionEnv env;
+    private String expression;
+    private CompiledExpression compiled;
+    private double[] args;
+
+    @Setup
+    public void setup() {
+        env = ExecutionEnv.empty();
+        switch (arity) {
+            case 0 -> env.insertFunction("f", () -> 1);
+            case 1 -> env.insertFunction("f", a -> a);
+            case 2 -> env.insertFunction("f", (a, b) -> a);
+            case 3 -> env.insertFunction("f", (a, b, c) -> a);
+            default -> env.insertFunction("f", arity, ctx -> ctx.getDouble(0));
+        }
+        StringJoiner joiner = new StringJoiner(", ", "f(", ")");
+        String[] parameters = new String[arity];
+        for (int i = 0; i < arity; i++) {
+            joiner.add(String.valueOf(i));
+            parameters[i] = "p" + i;
+        }
+        expression = joiner.toString();
+        compiled = ExpressionParser.compile("f(" + String.join(", ", parameters) + ")", env, parameters);
+        args = new double[arity];
+    }
+
+    @Benchmark
+    public double parseCall() {
+        return ExpressionParser.parse(expression, env);
+    }
+
+    @Benchmark
+    public double evaluateCompiledCall() {
+        return compiled.evaluate(args);
+    }
+}
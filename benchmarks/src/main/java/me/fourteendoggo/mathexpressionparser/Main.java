@@ -1,16 +1,30 @@
 package me.fourteendoggo.mathexpressionparser;
 
+import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
-import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+/**
+ * Runs the benchmarks, accepting the usual JMH command line options, f.e. {@code NestingBenchmark -p depth=32}.
+ * Unless specified otherwise, results are also written to {@code jmh-result.json}, to compare between releases.
+ */
 public class Main {
-    public static void main(String[] args) throws RunnerException {
-        Options opt = new OptionsBuilder()
-                .include(ExpressionParserBenchmark.class.getSimpleName())
-                .build();
-
-        new Runner(opt).run();
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cli);
+        if (!cli.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cli.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+        if (cli.getIncludes().isEmpty()) {
+            builder.include(Main.class.getPackageName() + ".*Benchmark");
+        }
+        new Runner(builder.build()).run();
     }
 }
@@ -0,0 +1,42 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses deeply nested brackets, every level branches off another tokenizer and expression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NestingBenchmark {
+    @Param({"4", "32", "256"})
+    public int depth;
+
+    private ExecutionEnv env;
+    private String nestedBrackets;
+    private String nestedCalls;
+
+    @Setup
+    public void setup() {
+        env = ExecutionEnv.defaulted();
+        // ((1 + 1) * 2 + 1) * 2 ...
+        nestedBrackets = "(".repeat(depth) + "1" + " + 1) * 2".repeat(depth);
+        nestedCalls = "abs(".repeat(depth) + "-1" + ")".repeat(depth);
+    }
+
+    @Benchmark
+    public double parseNestedBrackets() {
+        return ExpressionParser.parse(nestedBrackets, env);
+    }
+
+    @Benchmark
+    public double parseNestedCalls() {
+        return ExpressionParser.parse(nestedCalls, env);
+    }
+}
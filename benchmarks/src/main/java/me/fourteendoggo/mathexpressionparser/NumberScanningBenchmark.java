@@ -0,0 +1,35 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import me.fourteendoggo.mathexpressionparser.token.Tokenizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes a single number literal, so this is dominated by scanning its digits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NumberScanningBenchmark {
+    @Param({"7", "123456", "3.14159", "123456789.123456789"})
+    public String literal;
+
+    private char[] chars;
+    private ExecutionEnv env;
+
+    @Setup
+    public void setup() {
+        chars = literal.toCharArray();
+        env = ExecutionEnv.empty();
+    }
+
+    @Benchmark
+    public double scanNumber() {
+        return new Tokenizer(chars, env).readTokens().solve();
+    }
+}
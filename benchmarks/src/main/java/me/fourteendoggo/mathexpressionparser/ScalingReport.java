@@ -0,0 +1,76 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Runs the concurrent benchmarks with 1, 2, 4... up to N threads and prints how their throughput scales.
+ * Speedup is the throughput relative to one thread, efficiency is the speedup divided by the amount of threads.
+ * For {@link ConcurrentMutationBenchmark}, the amount of threads is the amount of parsing threads, next to the one writer.
+ * <p>
+ * Usage: {@code ScalingReport [max threads]}, the max defaults to the amount of cores.
+ */
+public class ScalingReport {
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> threadCounts = new TreeSet<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        // benchmark label -> throughput per thread count
+        Map<String, Map<Integer, Double>> scores = new LinkedHashMap<>();
+        for (int threads : threadCounts) {
+            Options parse = new OptionsBuilder()
+                    .include(ConcurrentParseBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .verbosity(VerboseMode.SILENT)
+                    .build();
+            Options mutation = new OptionsBuilder()
+                    .include(ConcurrentMutationBenchmark.class.getSimpleName())
+                    .threads(threads + 1)
+                    .threadGroups(1, threads) // methods are ordered by name, the writer first
+                    .verbosity(VerboseMode.SILENT)
+                    .build();
+            List<RunResult> results = new ArrayList<>(new Runner(parse).run());
+            results.addAll(new Runner(mutation).run());
+            for (RunResult result : results) {
+                String benchmark = result.getParams().getBenchmark();
+                String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+                record(scores, name, threads, result.getPrimaryResult());
+                for (Result<?> secondary : result.getSecondaryResults().values()) {
+                    record(scores, name + ":" + secondary.getLabel(), threads, secondary);
+                }
+            }
+        }
+        print(scores);
+    }
+
+    private static void record(Map<String, Map<Integer, Double>> scores, String name, int threads, Result<?> result) {
+        scores.computeIfAbsent(name, k -> new LinkedHashMap<>()).put(threads, result.getScore());
+    }
+
+    private static void print(Map<String, Map<Integer, Double>> scores) {
+        System.out.printf("%-60s %8s %14s %8s %10s%n", "benchmark", "threads", "ops/us", "speedup", "efficiency");
+        scores.forEach((name, byThreads) -> {
+            Double single = byThreads.get(1);
+            byThreads.forEach((threads, score) -> {
+                double speedup = single != null && single > 0 ? score / single : Double.NaN;
+                System.out.printf("%-60s %8d %14.3f %8.2f %9.0f%%%n", name, threads, score, speedup, speedup / threads * 100);
+            });
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.symbol.BuiltinGroup;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to the first result in a fresh JVM, including class loading, creating the builtin symbols
+ * and running everything in the interpreter. Every fork measures exactly one cold call,
+ * so the amount of forks is the amount of samples. Starting the JVM itself is not included.
+ * <p>
+ * Nothing in this class may touch the parser outside the benchmark methods, or that would already warm it up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1, batchSize = 1)
+@Fork(20)
+public class StartupBenchmark {
+    private static final String EXPRESSION = "sqrt(3 * 3 + 4 * 4) + sin(pi / 4) - abs(-2)";
+
+    @Benchmark
+    public double firstParse() {
+        return ExpressionParser.parse(EXPRESSION);
+    }
+
+    @Benchmark
+    public double firstParseWithBuiltinGroups() {
+        ExecutionEnv env = ExecutionEnv.withBuiltins(BuiltinGroup.TRIGONOMETRY, BuiltinGroup.MATH, BuiltinGroup.CONSTANTS);
+        return ExpressionParser.parse(EXPRESSION, env);
+    }
+
+    @Benchmark
+    public double firstParseWithEmptyEnv() {
+        return ExpressionParser.parse("(3 * 3 + 4 * 4) / 5 - 2", ExecutionEnv.empty());
+    }
+
+    @Benchmark
+    public double firstCompileAndEvaluate() {
+        return ExpressionParser.compile(EXPRESSION).evaluate();
+    }
+}
@@ -0,0 +1,69 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.symbol.Symbol;
+import me.fourteendoggo.mathexpressionparser.symbol.SymbolLookup;
+import me.fourteendoggo.mathexpressionparser.symbol.Variable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up symbols in tries of different sizes, both names that are present and names that are not.
+ * Every invocation cycles through a fixed set of names, so the branch predictor cannot learn a single path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SymbolLookupBenchmark {
+    private static final int NUM_QUERIES = 256;
+
+    @Param({"16", "256", "4096"})
+    public int size;
+
+    private final SymbolLookup lookup = new SymbolLookup();
+    private final char[][] hits = new char[NUM_QUERIES][];
+    private final char[][] misses = new char[NUM_QUERIES][];
+    private int index;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = randomName(random);
+            if (lookup.lookup(names[i].toCharArray(), 0) != null) {
+                i--; // already inserted, pick another name
+                continue;
+            }
+            lookup.insert(new Variable(names[i], i));
+        }
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            hits[i] = names[random.nextInt(size)].toCharArray();
+            // same length distribution, but with a character that no inserted name has
+            misses[i] = (names[random.nextInt(size)] + "Q").toCharArray();
+        }
+    }
+
+    private static String randomName(Random random) {
+        int length = 3 + random.nextInt(8);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public Symbol lookupHit() {
+        return lookup.lookup(hits[index++ & (NUM_QUERIES - 1)], 0);
+    }
+
+    @Benchmark
+    public Symbol lookupMiss() {
+        return lookup.lookup(misses[index++ & (NUM_QUERIES - 1)], 0);
+    }
+}
@@ -0,0 +1,81 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Limits on the work a single evaluation may do, so expressions from untrusted sources cannot hold up a thread.
+ * When a limit is exceeded, the evaluation is aborted with an {@link EvaluationLimitException}.
+ * <p>
+ * Limits are immutable, start from {@link #NONE} and restrict the ones you need:
+ * <pre>{@code
+ * EvaluationLimits limits = EvaluationLimits.NONE
+ *         .withMaxOperations(10_000)
+ *         .withMaxDepth(32)
+ *         .withTimeout(Duration.ofMillis(50));
+ * double result = ExpressionParser.parse(input, env, limits);
+ * }</pre>
+ *
+ * @param maxOperations the maximum number of operators applied, implicit multiplications included
+ * @param maxCalls      the maximum number of function calls
+ * @param maxDepth      the maximum nesting depth of parentheses, function arguments and unary operators,
+ *                      the expression itself is at depth 1
+ * @param timeoutNanos  the maximum wall clock time of an evaluation, {@link Long#MAX_VALUE} for none.
+ *                      Checked between function calls and every so many operations,
+ *                      so a single function call which takes too long is not interrupted
+ * @see ExpressionParser#parse(String, ExecutionEnv, EvaluationLimits)
+ * @see CompiledExpression#evaluate(EvaluationLimits, double...)
+ */
+public record EvaluationLimits(long maxOperations, long maxCalls, int maxDepth, long timeoutNanos) {
+    public static final EvaluationLimits NONE = new EvaluationLimits(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    public EvaluationLimits {
+        if (maxOperations < 0) {
+            throw new IllegalArgumentException("max operations must be >= 0, got " + maxOperations);
+        }
+        if (maxCalls < 0) {
+            throw new IllegalArgumentException("max calls must be >= 0, got " + maxCalls);
+        }
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("max depth must be >= 1, got " + maxDepth);
+        }
+        if (timeoutNanos <= 0) {
+            throw new IllegalArgumentException("timeout must be > 0, got " + timeoutNanos + "ns");
+        }
+    }
+
+    public EvaluationLimits withMaxOperations(long maxOperations) {
+        return new EvaluationLimits(maxOperations, maxCalls, maxDepth, timeoutNanos);
+    }
+
+    public EvaluationLimits withMaxCalls(long maxCalls) {
+        return new EvaluationLimits(maxOperations, maxCalls, maxDepth, timeoutNanos);
+    }
+
+    public EvaluationLimits withMaxDepth(int maxDepth) {
+        return new EvaluationLimits(maxOperations, maxCalls, maxDepth, timeoutNanos);
+    }
+
+    public EvaluationLimits withTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout was null");
+        return new EvaluationLimits(maxOperations, maxCalls, maxDepth, timeout.toNanos());
+    }
+
+    /**
+     * @return whether evaluations have a deadline
+     */
+    public boolean hasTimeout() {
+        return timeoutNanos != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} an evaluation starting now must be completed by
+     */
+    public long deadlineFromNow() {
+        return System.nanoTime() + timeoutNanos;
+    }
+}
@@ -1,14 +1,29 @@
 package me.fourteendoggo.mathexpressionparser;
 
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledDecimalExpression;
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledLongExpression;
+import me.fourteendoggo.mathexpressionparser.compiler.ExpressionCompiler;
 import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
 import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.AsyncFunction;
+import me.fourteendoggo.mathexpressionparser.function.BatchFunction;
+import me.fourteendoggo.mathexpressionparser.function.DoubleTernaryOperator;
 import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
 import me.fourteendoggo.mathexpressionparser.function.FunctionContext;
+import me.fourteendoggo.mathexpressionparser.function.MemoCache;
+import me.fourteendoggo.mathexpressionparser.metrics.EvaluateEvent;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionEvents;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionMetrics;
 import me.fourteendoggo.mathexpressionparser.symbol.Symbol;
 import me.fourteendoggo.mathexpressionparser.symbol.Variable;
 import me.fourteendoggo.mathexpressionparser.token.Tokenizer;
 
+import java.math.MathContext;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleSupplier;
 import java.util.function.DoubleUnaryOperator;
@@ -46,7 +61,146 @@ public class ExpressionParser {
         Objects.requireNonNull(env, "environment was null");
 
         Tokenizer tokenizer = new Tokenizer(input.toCharArray(), env);
-        return tokenizer.readTokens().solve();
+        if (env.getMetrics() == null && !ExpressionEvents.isEvaluateEnabled()) {
+            return tokenizer.readTokens().solve();
+        }
+        return solveObserved(tokenizer, input, env);
+    }
+
+    /**
+     * Parses the given expression and returns the result, aborting as soon as the evaluation exceeds the given limits.
+     * Use this for expressions from untrusted sources.
+     *
+     * @param input  the expression to parse
+     * @param env    the execution environment to obtain symbols from
+     * @param limits the limits of the evaluation
+     * @return the result of the expression
+     * @throws NullPointerException     if the expression, env or limits is null
+     * @throws SyntaxException          if the given expression is invalid or empty
+     * @throws EvaluationLimitException if the evaluation exceeded any of the limits
+     */
+    public static double parse(String input, ExecutionEnv env, EvaluationLimits limits) {
+        Objects.requireNonNull(input, "input was null");
+        Objects.requireNonNull(env, "environment was null");
+        Objects.requireNonNull(limits, "limits were null");
+
+        Tokenizer tokenizer = new Tokenizer(input.toCharArray(), env, limits);
+        if (env.getMetrics() == null && !ExpressionEvents.isEvaluateEnabled()) {
+            return tokenizer.readTokens().solve();
+        }
+        return solveObserved(tokenizer, input, env);
+    }
+
+    private static double solveObserved(Tokenizer tokenizer, String input, ExecutionEnv env) {
+        ExpressionMetrics metrics = env.getMetrics();
+        EvaluateEvent event = ExpressionEvents.beginEvaluate();
+        long start = System.nanoTime();
+        try {
+            double result = tokenizer.readTokens().solve();
+            if (metrics != null) {
+                metrics.onParse(System.nanoTime() - start);
+            }
+            if (event != null) {
+                ExpressionEvents.commit(event, input, System.identityHashCode(env), false);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            if (metrics != null) {
+                metrics.onError(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Parses the given expression and evaluates it without blocking on async functions.
+     *
+     * @param input    the expression to parse
+     * @param env      the execution environment to obtain symbols from
+     * @param executor the executor to start async function calls on
+     * @return a future completing with the result of the expression
+     * @throws NullPointerException if the expression, env or executor is null
+     * @throws SyntaxException      if the given expression is invalid or empty
+     * @see CompiledExpression#evaluateAsync(Executor, double...)
+     */
+    public static CompletableFuture<Double> parseAsync(String input, ExecutionEnv env, Executor executor) {
+        Objects.requireNonNull(executor, "executor was null");
+        return compile(input, env).evaluateAsync(executor);
+    }
+
+    /**
+     * @see ExpressionParser#compile(String, ExecutionEnv, String...)
+     */
+    public static CompiledExpression compile(String input, String... parameters) {
+        return compile(input, DEFAULT_ENV, parameters);
+    }
+
+    /**
+     * Compiles the given expression, so it can be evaluated many times without parsing it again.
+     *
+     * @param input      the expression to compile
+     * @param env        the execution environment to obtain symbols from
+     * @param parameters the names of the parameters, whose values are supplied when evaluating
+     * @return the compiled expression
+     * @throws NullPointerException if the expression or env is null
+     * @throws SyntaxException      if the given expression is invalid or empty, or a parameter name is invalid
+     */
+    public static CompiledExpression compile(String input, ExecutionEnv env, String... parameters) {
+        Objects.requireNonNull(input, "input was null");
+        Objects.requireNonNull(env, "environment was null");
+
+        return new ExpressionCompiler(input.toCharArray(), env, parameters).compile();
+    }
+
+    /**
+     * @see ExpressionParser#compileLong(String, ExecutionEnv, String...)
+     */
+    public static CompiledLongExpression compileLong(String input, String... parameters) {
+        return compileLong(input, DEFAULT_ENV, parameters);
+    }
+
+    /**
+     * Compiles the given expression for evaluation with 64-bit integer arithmetic.
+     *
+     * @param input      the expression to compile, its number literals must be integers
+     * @param env        the execution environment to obtain symbols from
+     * @param parameters the names of the parameters, whose values are supplied when evaluating
+     * @return the compiled expression
+     * @throws NullPointerException if the expression or env is null
+     * @throws SyntaxException      if the given expression is invalid or empty, a parameter name is invalid,
+     *                              or a constant part of it does not fit in a long
+     */
+    public static CompiledLongExpression compileLong(String input, ExecutionEnv env, String... parameters) {
+        Objects.requireNonNull(input, "input was null");
+        Objects.requireNonNull(env, "environment was null");
+
+        return new ExpressionCompiler(input.toCharArray(), env, parameters).compileLong();
+    }
+
+    /**
+     * @see ExpressionParser#compileDecimal(String, ExecutionEnv, MathContext, String...)
+     */
+    public static CompiledDecimalExpression compileDecimal(String input, MathContext mathContext, String... parameters) {
+        return compileDecimal(input, DEFAULT_ENV, mathContext, parameters);
+    }
+
+    /**
+     * Compiles the given expression for evaluation with decimal arithmetic.
+     *
+     * @param input       the expression to compile
+     * @param env         the execution environment to obtain symbols from
+     * @param mathContext the math context to round operations with, f.e. {@link MathContext#DECIMAL128}
+     * @param parameters  the names of the parameters, whose values are supplied when evaluating
+     * @return the compiled expression
+     * @throws NullPointerException if the expression, env or math context is null
+     * @throws SyntaxException      if the given expression is invalid or empty, or a parameter name is invalid
+     */
+    public static CompiledDecimalExpression compileDecimal(String input, ExecutionEnv env, MathContext mathContext, String... parameters) {
+        Objects.requireNonNull(input, "input was null");
+        Objects.requireNonNull(env, "environment was null");
+        Objects.requireNonNull(mathContext, "math context was null");
+
+        return new ExpressionCompiler(input.toCharArray(), env, parameters).compileDecimal(mathContext);
     }
 
     public static void insertVariable(String name, double value) {
@@ -57,6 +211,20 @@ public class ExpressionParser {
         return DEFAULT_ENV.insertVariableIfAbsent(name, value);
     }
 
+    /**
+     * @see ExecutionEnv#insertLazyVariable(String, DoubleSupplier)
+     */
+    public static void insertLazyVariable(String name, DoubleSupplier supplier) {
+        DEFAULT_ENV.insertLazyVariable(name, supplier);
+    }
+
+    /**
+     * @see ExecutionEnv#insertLazyVariableIfAbsent(String, DoubleSupplier)
+     */
+    public static Symbol insertLazyVariableIfAbsent(String name, DoubleSupplier supplier) {
+        return DEFAULT_ENV.insertLazyVariableIfAbsent(name, supplier);
+    }
+
     // region functions
 
     /**
@@ -80,6 +248,13 @@ public class ExpressionParser {
         DEFAULT_ENV.insertFunction(functionName, fn);
     }
 
+    /**
+     * @see ExecutionEnv#insertFunction(String, DoubleTernaryOperator)
+     */
+    public static void insertFunction(String functionName, DoubleTernaryOperator fn) {
+        DEFAULT_ENV.insertFunction(functionName, fn);
+    }
+
     /**
      * Inserts a function into the default execution environment.
      *
@@ -98,6 +273,57 @@ public class ExpressionParser {
         DEFAULT_ENV.insertFunction(functionName, minArgs, maxArgs, fn);
     }
 
+    /**
+     * Inserts a function with a batch variant into the default execution environment.
+     *
+     * @see ExecutionEnv#insertFunction(String, int, int, ToDoubleFunction, BatchFunction)
+     */
+    public static void insertFunction(String functionName, int minArgs, int maxArgs, ToDoubleFunction<FunctionContext> fn, BatchFunction batchFn) {
+        DEFAULT_ENV.insertFunction(functionName, minArgs, maxArgs, fn, batchFn);
+    }
+
+    /**
+     * @see ExecutionEnv#insertFunction(String, DoubleUnaryOperator, MemoCache)
+     */
+    public static void insertFunction(String functionName, DoubleUnaryOperator fn, MemoCache cache) {
+        DEFAULT_ENV.insertFunction(functionName, fn, cache);
+    }
+
+    /**
+     * @see ExecutionEnv#insertFunction(String, DoubleBinaryOperator, MemoCache)
+     */
+    public static void insertFunction(String functionName, DoubleBinaryOperator fn, MemoCache cache) {
+        DEFAULT_ENV.insertFunction(functionName, fn, cache);
+    }
+
+    /**
+     * @see ExecutionEnv#insertFunction(String, DoubleTernaryOperator, MemoCache)
+     */
+    public static void insertFunction(String functionName, DoubleTernaryOperator fn, MemoCache cache) {
+        DEFAULT_ENV.insertFunction(functionName, fn, cache);
+    }
+
+    /**
+     * @see ExecutionEnv#insertFunction(String, int, int, ToDoubleFunction, MemoCache)
+     */
+    public static void insertFunction(String functionName, int minArgs, int maxArgs, ToDoubleFunction<FunctionContext> fn, MemoCache cache) {
+        DEFAULT_ENV.insertFunction(functionName, minArgs, maxArgs, fn, cache);
+    }
+
+    /**
+     * @see ExecutionEnv#defineFunction(String)
+     */
+    public static void defineFunction(String definition) {
+        DEFAULT_ENV.defineFunction(definition);
+    }
+
+    /**
+     * @see ExecutionEnv#insertAsyncFunction(String, int, int, AsyncFunction)
+     */
+    public static void insertAsyncFunction(String functionName, int minArgs, int maxArgs, AsyncFunction fn) {
+        DEFAULT_ENV.insertAsyncFunction(functionName, minArgs, maxArgs, fn);
+    }
+
     /**
      * @see #insertSymbolIfAbsent(Symbol)
      */
@@ -119,6 +345,13 @@ public class ExpressionParser {
         return DEFAULT_ENV.insertFunctionIfAbsent(name, fn);
     }
 
+    /**
+     * @see #insertSymbolIfAbsent(Symbol)
+     */
+    public static Symbol insertFunctionIfAbsent(String name, DoubleTernaryOperator fn) {
+        return DEFAULT_ENV.insertFunctionIfAbsent(name, fn);
+    }
+
     /**
      * @see #insertSymbolIfAbsent(Symbol)
      */
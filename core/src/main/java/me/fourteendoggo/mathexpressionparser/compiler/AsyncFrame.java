@@ -0,0 +1,41 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.function.ArgumentStack;
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
+
+import java.util.concurrent.Executor;
+
+/**
+ * State of one asynchronous evaluation of a {@link CompiledExpression}.
+ * <p>
+ * Most of the expression is evaluated on the calling thread, but the body of an inlined function whose arguments
+ * contain async calls is only evaluated once those complete, possibly on several threads at the same time.
+ * Lazy variables are therefore resolved under a lock and variadic calls on other threads get their own argument stack.
+ */
+final class AsyncFrame extends Frame {
+    final Executor executor;
+    private final Thread callingThread;
+
+    AsyncFrame(int numLazies, int numLocals, Executor executor) {
+        super(numLazies, numLocals);
+        this.executor = executor;
+        this.callingThread = Thread.currentThread();
+    }
+
+    @Override
+    synchronized double resolve(int slot, LazyVariable variable) {
+        return super.resolve(slot, variable);
+    }
+
+    /**
+     * Everything evaluated on the calling thread shares one stack, calls always close their window before another
+     * call on the same thread can continue. Only continuations running on other threads get a stack of their own.
+     */
+    @Override
+    ArgumentStack arguments() {
+        if (Thread.currentThread() == callingThread) {
+            return super.arguments();
+        }
+        return new ArgumentStack(8);
+    }
+}
@@ -0,0 +1,68 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import java.util.Arrays;
+
+/**
+ * State of one batch evaluation of a {@link CompiledExpression}, holding the input columns.
+ * Lazy variables are resolved once per batch.
+ * <p>
+ * The columns of intermediate results are taken from a stack of scratch columns, which is reset for every block
+ * of a float batch, so all blocks evaluate into the same, cache resident, arrays.
+ */
+final class BatchFrame extends Frame {
+    final double[][] columns;
+    // only changed between the blocks of a float batch
+    int length;
+    final double[][] localColumns;
+    private final int capacity;
+    private double[][] scratchColumns = new double[8][];
+    private int scratchTop;
+
+    BatchFrame(int numLazies, int numLocals, double[][] columns, int length) {
+        super(numLazies, 0);
+        this.columns = columns;
+        this.length = length;
+        this.localColumns = new double[numLocals][];
+        this.capacity = length;
+    }
+
+    /**
+     * Starts evaluating the next block of a float batch, all scratch columns can be reused.
+     *
+     * @param length the amount of rows of the block, at most the length this frame was created with
+     */
+    void nextBlock(int length) {
+        this.length = length;
+        scratchTop = 0;
+    }
+
+    /**
+     * @return a scratch column, which stays in use until released with {@link #releaseColumns(int)}
+     */
+    double[] acquireColumn() {
+        if (scratchTop == scratchColumns.length) {
+            scratchColumns = Arrays.copyOf(scratchColumns, scratchTop * 2);
+        }
+        double[] column = scratchColumns[scratchTop];
+        if (column == null) {
+            column = new double[capacity];
+            scratchColumns[scratchTop] = column;
+        }
+        scratchTop++;
+        return column;
+    }
+
+    /**
+     * @return the amount of scratch columns in use, to pass to {@link #releaseColumns(int)}
+     */
+    int scratchMark() {
+        return scratchTop;
+    }
+
+    /**
+     * Releases all scratch columns acquired since the given mark.
+     */
+    void releaseColumns(int mark) {
+        scratchTop = mark;
+    }
+}
@@ -0,0 +1,84 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * An expression compiled for evaluation with decimal arithmetic, f.e. for financial formulas where {@code 0.1 + 0.2}
+ * must be exactly {@code 0.3}. Literals are read exactly, without going through a double.
+ * <p>
+ * Values are kept as scaled longs as long as they fit, so most additions, subtractions, multiplications and comparisons
+ * do not allocate a {@link BigDecimal}. Only when an operation overflows or must be rounded, it falls back to a BigDecimal
+ * with the {@link MathContext} this expression was compiled with. The result is always rounded to that math context.
+ * <p>
+ * Values are only converted to doubles when calling a function or resolving a lazy variable,
+ * their results are converted back by their shortest decimal representation, like {@link BigDecimal#valueOf(double)}.
+ * Bitwise operators require integers.
+ * <p>
+ * A compiled expression is immutable and can be shared between threads,
+ * as long as the functions it calls are thread safe.
+ *
+ * @see ExpressionCompiler#compileDecimal(MathContext)
+ */
+public final class CompiledDecimalExpression {
+    private final String source;
+    private final String[] parameters;
+    private final Node root;
+    private final int numLazies;
+    private final int numLocals;
+    private final MathContext mathContext;
+
+    CompiledDecimalExpression(String source, String[] parameters, Node root, int numLazies, int numLocals, MathContext mathContext) {
+        this.source = source;
+        this.parameters = parameters;
+        this.root = root;
+        this.numLazies = numLazies;
+        this.numLocals = numLocals;
+        this.mathContext = mathContext;
+    }
+
+    /**
+     * Evaluates this expression.
+     *
+     * @param args the values of the parameters, in the order they were declared when compiling
+     * @return the result, rounded to the math context of this expression
+     * @throws SyntaxException          if a division does not terminate without a precision, or a function returns NaN or an infinity
+     * @throws IllegalArgumentException if the number of arguments does not match the number of parameters
+     */
+    public BigDecimal evaluate(BigDecimal... args) {
+        if (args.length != parameters.length) {
+            throw new IllegalArgumentException("expected %s arguments, got %s".formatted(parameters.length, args.length));
+        }
+        Decimal[] values = new Decimal[args.length];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = Decimal.valueOf(args[i]);
+        }
+        Decimal result = root.evaluateDecimal(values, new DecimalFrame(numLazies, numLocals, mathContext));
+        return result.toBigDecimal().round(mathContext);
+    }
+
+    /**
+     * @return the math context operations are rounded with
+     */
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    /**
+     * @return the names of the parameters, in the order they are expected when evaluating
+     */
+    public String[] getParameters() {
+        return parameters.clone();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+}
@@ -0,0 +1,409 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.EvaluationLimits;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException.Limit;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.AsyncFunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.BatchFunction;
+import me.fourteendoggo.mathexpressionparser.function.Derivative;
+import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.metrics.EvaluateEvent;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionEvents;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionMetrics;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An expression which was parsed once and can be evaluated many times, for different parameter values.
+ * Variables are captured with the value they had when compiling, lazy variables are resolved once per evaluation.
+ * <p>
+ * A compiled expression is immutable and can be shared between threads,
+ * as long as the functions it calls are thread safe.
+ *
+ * @see ExpressionCompiler
+ */
+public final class CompiledExpression {
+    // 8KB per widened column, small enough for a few columns to stay in the L1 or L2 cache
+    private static final int FLOAT_BLOCK_SIZE = 1024;
+
+    private final String source;
+    private final String[] parameters;
+    private final Node root;
+    private final int numLazies;
+    private final int numLocals;
+    private final boolean requiresFrame;
+    // the work done by one evaluation, checked against evaluation limits
+    private final long numOperations;
+    private final long numCalls;
+    private final int depth;
+    // only set if the tree contains nodes that fork
+    @Nullable
+    private final ForkJoinPool pool;
+    @Nullable
+    private final ExpressionMetrics metrics;
+    // identity hash code of the env compiled against, for flight recorder events
+    private final int environment;
+
+    CompiledExpression(String source, String[] parameters, Node root, int numLazies, int numLocals, boolean hasVariadicCalls,
+                       @Nullable ExpressionMetrics metrics, int environment) {
+        this.source = source;
+        this.parameters = parameters;
+        this.root = root;
+        this.numLazies = numLazies;
+        this.numLocals = numLocals;
+        this.requiresFrame = numLazies > 0 || numLocals > 0 || hasVariadicCalls;
+        this.numOperations = countNodes(root, Node.Binary.class) + countNodes(root, Node.Not.class) + countNodes(root, Node.BitwiseNot.class);
+        this.numCalls = countNodes(root, Node.Call.class);
+        this.depth = depth(root);
+        this.pool = null;
+        this.metrics = metrics;
+        this.environment = environment;
+    }
+
+    private CompiledExpression(CompiledExpression sequential, Node root, ForkJoinPool pool) {
+        this.source = sequential.source;
+        this.parameters = sequential.parameters;
+        this.root = root;
+        this.numLazies = sequential.numLazies;
+        this.numLocals = sequential.numLocals;
+        this.requiresFrame = true;
+        this.numOperations = sequential.numOperations;
+        this.numCalls = sequential.numCalls;
+        this.depth = sequential.depth;
+        this.pool = pool;
+        this.metrics = sequential.metrics;
+        this.environment = sequential.environment;
+    }
+
+    private static long countNodes(Node node, Class<? extends Node> type) {
+        long count = type.isInstance(node) ? 1 : 0;
+        for (Node child : node.children()) {
+            count += countNodes(child, type);
+        }
+        return count;
+    }
+
+    /**
+     * @return the nesting depth of function calls and unary operators, like parentheses they do not count
+     * in the tree of a compiled expression
+     */
+    private static int depth(Node node) {
+        int depth = 0;
+        for (Node child : node.children()) {
+            depth = Math.max(depth, depth(child));
+        }
+        boolean nests = node instanceof Node.Call || node instanceof Node.Not || node instanceof Node.BitwiseNot;
+        return nests ? depth + 1 : depth;
+    }
+
+    /**
+     * Returns a variant of this expression which evaluates independent expensive sub-expressions in parallel,
+     * f.e. the arguments of {@code max(sim(1), sim(2), sim(3))} when {@code sim} is expensive.
+     * <p>
+     * The cost of a sub-expression is estimated from the {@link FunctionCallSite#setCostHint(long) cost hints}
+     * of the functions it calls. Only operands and arguments costing at least {@code thresholdNanos} are forked,
+     * and only when at least two of them are independent of each other.
+     * If nothing in this expression is worth forking, this expression itself is returned, so it does not pay
+     * any scheduling overhead. Only {@link #evaluate(double...)} runs in parallel, the other modes are unaffected.
+     *
+     * @param pool           the pool to fork sub-expressions in
+     * @param thresholdNanos the minimum estimated cost of a sub-expression to be evaluated in parallel
+     * @return the parallel variant of this expression, or this expression
+     */
+    public CompiledExpression parallel(ForkJoinPool pool, long thresholdNanos) {
+        Objects.requireNonNull(pool, "pool was null");
+        if (thresholdNanos <= 0) {
+            throw new IllegalArgumentException("threshold must be > 0, got " + thresholdNanos);
+        }
+        Node parallelRoot = root.parallelize(thresholdNanos);
+        if (parallelRoot == root) {
+            return this;
+        }
+        return new CompiledExpression(this, parallelRoot, pool);
+    }
+
+    /**
+     * Evaluates this expression.
+     *
+     * @param args the values of the parameters, in the order they were declared when compiling
+     * @return the result
+     * @throws IllegalArgumentException if the number of arguments does not match the number of parameters
+     */
+    public double evaluate(double... args) {
+        // kept apart so this method stays small enough to inline
+        if (metrics == null && !ExpressionEvents.isEvaluateEnabled()) {
+            return evaluateOnce(args, null);
+        }
+        return evaluateObserved(args, null);
+    }
+
+    private double evaluateObserved(double[] args, @Nullable EvaluationLimits limits) {
+        EvaluateEvent event = ExpressionEvents.beginEvaluate();
+        long start = System.nanoTime();
+        try {
+            double result = evaluateOnce(args, limits);
+            if (metrics != null) {
+                metrics.onEvaluate(System.nanoTime() - start);
+            }
+            if (event != null) {
+                ExpressionEvents.commit(event, source, environment, true);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            if (metrics != null) {
+                metrics.onError(e);
+            }
+            throw e;
+        }
+    }
+
+    private double evaluateOnce(double[] args, @Nullable EvaluationLimits limits) {
+        if (limits != null) {
+            checkLimits(limits);
+        }
+        if (args.length != parameters.length) {
+            throw new IllegalArgumentException("expected %s arguments, got %s".formatted(parameters.length, args.length));
+        }
+        boolean hasDeadline = limits != null && limits.hasTimeout();
+        if (pool != null) {
+            ForkFrame frame = new ForkFrame(numLazies, numLocals);
+            if (hasDeadline) {
+                frame.startDeadline(limits);
+            }
+            Node.Subtree task = new Node.Subtree(root, args, frame);
+            pool.invoke(task);
+            return task.result;
+        }
+        if (hasDeadline) {
+            Frame frame = new Frame(numLazies, numLocals);
+            frame.startDeadline(limits);
+            return root.evaluate(args, frame);
+        }
+        return root.evaluate(args, requiresFrame ? new Frame(numLazies, numLocals) : null);
+    }
+
+    private void checkLimits(EvaluationLimits limits) {
+        if (numOperations > limits.maxOperations()) {
+            throw new EvaluationLimitException(Limit.OPERATIONS, "evaluation exceeds the maximum of %s operations", limits.maxOperations());
+        }
+        if (numCalls > limits.maxCalls()) {
+            throw new EvaluationLimitException(Limit.CALLS, "evaluation exceeds the maximum of %s function calls", limits.maxCalls());
+        }
+        // the expression itself is at depth 1
+        if (depth + 1 > limits.maxDepth()) {
+            throw new EvaluationLimitException(Limit.DEPTH, "evaluation exceeds the maximum depth of %s", limits.maxDepth());
+        }
+    }
+
+    /**
+     * Evaluates this expression, aborting as soon as it exceeds the given limits.
+     * <p>
+     * The tree of a compiled expression is known upfront, so the operations, function calls and depth of an evaluation
+     * are checked before evaluating anything. Operations are only counted if they were not folded into a constant,
+     * the body of an inlined user-defined function counts as part of the expression.
+     * The deadline is checked before every function call, also in a {@link #parallel(ForkJoinPool, long) parallel} variant.
+     *
+     * @param limits the limits of the evaluation
+     * @param args   the values of the parameters
+     * @return the result
+     * @throws EvaluationLimitException if the evaluation exceeded any of the limits
+     * @throws IllegalArgumentException if the number of arguments does not match the number of parameters
+     */
+    public double evaluate(EvaluationLimits limits, double... args) {
+        Objects.requireNonNull(limits, "limits were null");
+        // observed like any other evaluation, exceeding a limit is reported as an error
+        if (metrics == null && !ExpressionEvents.isEvaluateEnabled()) {
+            return evaluateOnce(args, limits);
+        }
+        return evaluateObserved(args, limits);
+    }
+
+    /**
+     * Evaluates this expression without blocking on {@link AsyncFunctionCallSite async functions}.
+     * All async calls whose arguments do not depend on other async calls are started at once, so the latency of
+     * {@code f(a) + g(b) + h(c)} is the latency of the slowest call, rather than the sum of all three.
+     * A call whose arguments contain async calls is started as soon as those complete.
+     * <p>
+     * Everything that does not depend on an async call is evaluated on the calling thread, before this method returns.
+     * Results are combined on whichever thread completes the last async call they depend on.
+     *
+     * @param executor the executor to start async calls on, so functions that block before returning their future
+     *                 do not hold up each other. On Java 21 and newer, {@code Executors.newVirtualThreadPerTaskExecutor()} is a good fit
+     * @param args     the values of the parameters
+     * @return a future completing with the result, or exceptionally if any function failed
+     * @throws IllegalArgumentException if the number of arguments does not match the number of parameters
+     */
+    public CompletableFuture<Double> evaluateAsync(Executor executor, double... args) {
+        if (args.length != parameters.length) {
+            throw new IllegalArgumentException("expected %s arguments, got %s".formatted(parameters.length, args.length));
+        }
+        try {
+            if (!root.isAsync()) {
+                return CompletableFuture.completedFuture(evaluate(args));
+            }
+            return root.evaluateAsync(args, new AsyncFrame(numLazies, numLocals, executor));
+        } catch (RuntimeException e) { // thrown while evaluating on the calling thread
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Evaluates this expression together with its partial derivatives with respect to every parameter,
+     * in a single pass using forward-mode automatic differentiation. This is both faster and more accurate than
+     * re-evaluating the expression with every parameter bumped by a small amount.
+     * <p>
+     * Functions whose arguments depend on a parameter need a {@link FunctionCallSite#setDerivative(Derivative) derivative},
+     * all builtin functions that are differentiable have one. User-defined functions are differentiated through their body.
+     * Comparisons, logical and bitwise operators are treated as piecewise constant.
+     *
+     * @param gradient the array to write the partial derivatives to, in the order of the parameters
+     * @param args     the values of the parameters
+     * @return the result
+     * @throws SyntaxException          if a function without a derivative is called with arguments depending on a parameter
+     * @throws IllegalArgumentException if the number of arguments does not match the number of parameters,
+     *                                  or the gradient array is too short
+     */
+    public double evaluateGradient(double[] gradient, double... args) {
+        if (args.length != parameters.length) {
+            throw new IllegalArgumentException("expected %s arguments, got %s".formatted(parameters.length, args.length));
+        }
+        if (gradient.length < parameters.length) {
+            throw new IllegalArgumentException("expected a gradient array of at least %s elements, got %s".formatted(parameters.length, gradient.length));
+        }
+        Dual result = root.evaluateDual(args, new DualFrame(numLazies, numLocals, parameters.length));
+        if (result.tangent == null) {
+            Arrays.fill(gradient, 0, parameters.length, 0);
+        } else {
+            System.arraycopy(result.tangent, 0, gradient, 0, parameters.length);
+        }
+        return result.value;
+    }
+
+    /**
+     * Evaluates this expression for a batch of rows at once, which is a lot faster than calling
+     * {@link #evaluate(double...)} for every row.
+     * Functions registered with a {@link BatchFunction} are called once for the whole batch.
+     *
+     * @param columns one column per parameter, holding the value of that parameter for every row.
+     *                Every column must be at least as long as {@code out}, and is not modified
+     * @param out     the array to write the result of every row to, its length determines the number of rows
+     * @throws IllegalArgumentException if the number of columns does not match the number of parameters,
+     *                                  or if a column is too short
+     */
+    public void evaluateBatch(double[][] columns, double[] out) {
+        if (columns.length != parameters.length) {
+            throw new IllegalArgumentException("expected %s columns, got %s".formatted(parameters.length, columns.length));
+        }
+        for (double[] column : columns) {
+            if (column.length < out.length) {
+                throw new IllegalArgumentException("expected columns of at least %s rows, got %s".formatted(out.length, column.length));
+            }
+        }
+        root.evaluateBatch(new BatchFrame(numLazies, numLocals, columns, out.length), out);
+    }
+
+    /**
+     * Evaluates this expression for a batch of single precision rows, f.e. for large grids where memory bandwidth
+     * matters more than precision. Rows are widened to doubles in blocks of {@value #FLOAT_BLOCK_SIZE},
+     * which stay in the cache while being evaluated, so only the float columns go through main memory.
+     * Functions still compute in double precision, their results are rounded to the nearest float.
+     *
+     * @param columns one column per parameter, holding the value of that parameter for every row.
+     *                Every column must be at least as long as {@code out}, and is not modified
+     * @param out     the array to write the result of every row to, its length determines the number of rows
+     * @throws IllegalArgumentException if the number of columns does not match the number of parameters,
+     *                                  or if a column is too short
+     * @see #evaluateBatch(double[][], double[])
+     */
+    public void evaluateBatch(float[][] columns, float[] out) {
+        if (columns.length != parameters.length) {
+            throw new IllegalArgumentException("expected %s columns, got %s".formatted(parameters.length, columns.length));
+        }
+        for (float[] column : columns) {
+            if (column.length < out.length) {
+                throw new IllegalArgumentException("expected columns of at least %s rows, got %s".formatted(out.length, column.length));
+            }
+        }
+        int blockSize = Math.min(FLOAT_BLOCK_SIZE, out.length);
+        double[][] block = new double[columns.length][blockSize];
+        double[] result = new double[blockSize];
+        // one frame for all blocks, so lazy variables are still resolved once per batch
+        BatchFrame frame = new BatchFrame(numLazies, numLocals, block, blockSize);
+
+        for (int offset = 0; offset < out.length; offset += blockSize) {
+            int length = Math.min(blockSize, out.length - offset);
+            // simple loops, so they can be auto vectorized
+            for (int i = 0; i < columns.length; i++) {
+                float[] column = columns[i];
+                double[] widened = block[i];
+                for (int row = 0; row < length; row++) {
+                    widened[row] = column[offset + row];
+                }
+            }
+            frame.nextBlock(length);
+            root.evaluateBatch(frame, result);
+            for (int row = 0; row < length; row++) {
+                out[offset + row] = (float) result[row];
+            }
+        }
+    }
+
+    /**
+     * @return the names of the parameters, in the order they are expected when evaluating
+     */
+    public String[] getParameters() {
+        return parameters.clone();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    Node root() {
+        return root;
+    }
+
+    /**
+     * @return the operations applied by one evaluation, those folded into constants excluded
+     */
+    public long getNumOperations() {
+        return numOperations;
+    }
+
+    /**
+     * @return the function calls made by one evaluation
+     */
+    public long getNumCalls() {
+        return numCalls;
+    }
+
+    /**
+     * @return the nesting depth of function calls and unary operators
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    int numLocals() {
+        return numLocals;
+    }
+
+    int numLazies() {
+        return numLazies;
+    }
+
+    boolean requiresFrame() {
+        return requiresFrame;
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+}
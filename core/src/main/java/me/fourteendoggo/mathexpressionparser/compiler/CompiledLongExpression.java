@@ -0,0 +1,67 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.token.Operator;
+
+/**
+ * An expression compiled for evaluation with 64-bit integer arithmetic, f.e. for hashing and bitmask formulas.
+ * Unlike a {@link CompiledExpression}, bitwise operators work on all 64 bits and values never lose precision beyond 2^53.
+ * <p>
+ * Arithmetic fails with a {@link SyntaxException} on overflow instead of wrapping around,
+ * division truncates towards zero. See {@link Operator#applyAsLong(long, long)} for all operators.
+ * Values are only converted to doubles when calling a function or resolving a lazy variable,
+ * whose results must then be integers again.
+ * <p>
+ * A compiled expression is immutable and can be shared between threads,
+ * as long as the functions it calls are thread safe.
+ *
+ * @see ExpressionCompiler#compileLong()
+ */
+public final class CompiledLongExpression {
+    private final String source;
+    private final String[] parameters;
+    private final Node root;
+    private final int numLazies;
+    private final int numLocals;
+    private final boolean requiresFrame;
+
+    CompiledLongExpression(String source, String[] parameters, Node root, int numLazies, int numLocals, boolean hasVariadicCalls) {
+        this.source = source;
+        this.parameters = parameters;
+        this.root = root;
+        this.numLazies = numLazies;
+        this.numLocals = numLocals;
+        this.requiresFrame = numLazies > 0 || numLocals > 0 || hasVariadicCalls;
+    }
+
+    /**
+     * Evaluates this expression.
+     *
+     * @param args the values of the parameters, in the order they were declared when compiling
+     * @return the result
+     * @throws SyntaxException          if an operation overflows, or a function returns a value that is not an integer
+     * @throws IllegalArgumentException if the number of arguments does not match the number of parameters
+     */
+    public long evaluate(long... args) {
+        if (args.length != parameters.length) {
+            throw new IllegalArgumentException("expected %s arguments, got %s".formatted(parameters.length, args.length));
+        }
+        return root.evaluateLong(args, requiresFrame ? new Frame(numLazies, numLocals) : null);
+    }
+
+    /**
+     * @return the names of the parameters, in the order they are expected when evaluating
+     */
+    public String[] getParameters() {
+        return parameters.clone();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+}
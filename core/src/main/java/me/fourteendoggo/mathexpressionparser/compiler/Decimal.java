@@ -0,0 +1,277 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.token.Operator;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * An immutable decimal number, as used by a {@link CompiledDecimalExpression}.
+ * While a value fits, it is kept as a scaled long ({@code unscaled * 10^-scale}) and arithmetic is done on longs.
+ * Only when an operation overflows, or its result needs rounding, it is promoted to a {@link BigDecimal}.
+ * <p>
+ * Results are numerically equal to what the corresponding {@link BigDecimal} operation with the same {@link MathContext} returns.
+ */
+final class Decimal {
+    static final Decimal ZERO = new Decimal(0, 0);
+    static final Decimal ONE = new Decimal(1, 0);
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+            10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+    private static final double[] POWERS_OF_TEN_DOUBLE = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // a long holds any number of at most 18 digits
+    static final int MAX_COMPACT_DIGITS = 18;
+
+    private final long unscaled;
+    private final int scale;
+    // only set if this value does not fit in a scaled long
+    @Nullable
+    private final BigDecimal big;
+
+    private Decimal(long unscaled, int scale) {
+        this.unscaled = unscaled;
+        this.scale = scale;
+        this.big = null;
+    }
+
+    private Decimal(BigDecimal big) {
+        this.unscaled = 0;
+        this.scale = 0;
+        this.big = big;
+    }
+
+    static Decimal valueOf(long unscaled, int scale) {
+        return new Decimal(unscaled, scale);
+    }
+
+    static Decimal valueOf(BigDecimal value) {
+        if (value.precision() <= MAX_COMPACT_DIGITS) {
+            return new Decimal(value.unscaledValue().longValue(), value.scale());
+        }
+        return new Decimal(value);
+    }
+
+    /**
+     * Converts a double by its shortest decimal representation, like {@link BigDecimal#valueOf(double)} does,
+     * so {@code 0.1} becomes exactly 0.1.
+     */
+    static Decimal valueOf(double value) {
+        if (!Double.isFinite(value)) {
+            throw new SyntaxException("cannot represent %s as a decimal", value);
+        }
+        if (value == (long) value && Math.abs(value) < 1e18) {
+            return new Decimal((long) value, 0);
+        }
+        return valueOf(BigDecimal.valueOf(value));
+    }
+
+    static Decimal valueOf(boolean value) {
+        return value ? ONE : ZERO;
+    }
+
+    BigDecimal toBigDecimal() {
+        return big != null ? big : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    double toDouble() {
+        // both operands are exact doubles, so the division is correctly rounded
+        if (big == null && scale >= 0 && scale <= 22 && Math.abs(unscaled) < (1L << 53)) {
+            return scale == 0 ? unscaled : unscaled / POWERS_OF_TEN_DOUBLE[scale];
+        }
+        return toBigDecimal().doubleValue();
+    }
+
+    boolean isZero() {
+        return big != null ? big.signum() == 0 : unscaled == 0;
+    }
+
+    /**
+     * @throws SyntaxException if this is not an integer that fits in a long
+     */
+    long longValueExact() {
+        if (big == null && scale == 0) {
+            return unscaled;
+        }
+        try {
+            return toBigDecimal().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new SyntaxException("an integer is required, got %s", this);
+        }
+    }
+
+    Decimal negate() {
+        if (big == null && unscaled != Long.MIN_VALUE) {
+            return new Decimal(-unscaled, scale);
+        }
+        return valueOf(toBigDecimal().negate());
+    }
+
+    Decimal add(Decimal other, MathContext mc) {
+        if (big == null && other.big == null) {
+            long a = unscaled;
+            long b = other.unscaled;
+            int resultScale = Math.max(scale, other.scale);
+            if (scale != other.scale) {
+                // align both to the largest scale, Long.MIN_VALUE if that does not fit
+                a = scaleUp(a, resultScale - scale);
+                b = scaleUp(b, resultScale - other.scale);
+            }
+            long sum = a + b;
+            // overflow if both operands have the same sign, which differs from the sign of the result
+            if (a != Long.MIN_VALUE && b != Long.MIN_VALUE && ((a ^ sum) & (b ^ sum)) >= 0 && fits(sum, mc)) {
+                return new Decimal(sum, resultScale);
+            }
+        }
+        return valueOf(toBigDecimal().add(other.toBigDecimal(), mc));
+    }
+
+    Decimal subtract(Decimal other, MathContext mc) {
+        if (big == null && other.big == null) {
+            long a = unscaled;
+            long b = other.unscaled;
+            int resultScale = Math.max(scale, other.scale);
+            if (scale != other.scale) {
+                a = scaleUp(a, resultScale - scale);
+                b = scaleUp(b, resultScale - other.scale);
+            }
+            long difference = a - b;
+            // overflow if the operands have a different sign, and the result has the sign of b
+            if (a != Long.MIN_VALUE && b != Long.MIN_VALUE && ((a ^ b) & (a ^ difference)) >= 0 && fits(difference, mc)) {
+                return new Decimal(difference, resultScale);
+            }
+        }
+        return valueOf(toBigDecimal().subtract(other.toBigDecimal(), mc));
+    }
+
+    Decimal multiply(Decimal other, MathContext mc) {
+        if (big == null && other.big == null) {
+            long high = Math.multiplyHigh(unscaled, other.unscaled);
+            long product = unscaled * other.unscaled;
+            // the product fits in a long if the high half only holds the sign extension of the low half
+            if (high == (product >> 63) && fits(product, mc)) {
+                return new Decimal(product, scale + other.scale);
+            }
+        }
+        return valueOf(toBigDecimal().multiply(other.toBigDecimal(), mc));
+    }
+
+    Decimal divide(Decimal other, MathContext mc) {
+        if (other.isZero()) {
+            throw new SyntaxException("division by zero");
+        }
+        // exact divisions of compact values, f.e. 12.50 / 5, do not need to go through a BigDecimal
+        if (big == null && other.big == null && unscaled % other.unscaled == 0 && !(unscaled == Long.MIN_VALUE && other.unscaled == -1)) {
+            long quotient = unscaled / other.unscaled;
+            if (fits(quotient, mc)) {
+                return new Decimal(quotient, scale - other.scale);
+            }
+        }
+        try {
+            return valueOf(toBigDecimal().divide(other.toBigDecimal(), mc));
+        } catch (ArithmeticException e) { // non-terminating expansion without a precision
+            throw new SyntaxException(e.getMessage());
+        }
+    }
+
+    Decimal remainder(Decimal other, MathContext mc) {
+        if (other.isZero()) {
+            throw new SyntaxException("division by zero");
+        }
+        // like BigDecimal, the remainder is exact but the integer quotient must fit in the precision
+        if (big == null && other.big == null && scale == other.scale && fits(unscaled / other.unscaled, mc)) {
+            return new Decimal(unscaled % other.unscaled, scale);
+        }
+        try {
+            return valueOf(toBigDecimal().remainder(other.toBigDecimal(), mc));
+        } catch (ArithmeticException e) { // the integer quotient has more digits than the precision
+            throw new SyntaxException("cannot compute %s %% %s, the quotient needs more than %s digits", this, other, mc.getPrecision());
+        }
+    }
+
+    Decimal pow(Decimal exponent, MathContext mc) {
+        long n = exponent.longValueExact();
+        if (n < -999_999_999 || n > 999_999_999) {
+            throw new SyntaxException("decimal exponent out of range, got %s", n);
+        }
+        try {
+            return valueOf(toBigDecimal().pow((int) n, mc));
+        } catch (ArithmeticException e) { // f.e. a negative exponent without a precision
+            throw new SyntaxException(e.getMessage());
+        }
+    }
+
+    int compareTo(Decimal other) {
+        if (big == null && other.big == null) {
+            if (scale == other.scale) {
+                return Long.compare(unscaled, other.unscaled);
+            }
+            int resultScale = Math.max(scale, other.scale);
+            long a = scaleUp(unscaled, resultScale - scale);
+            long b = scaleUp(other.unscaled, resultScale - other.scale);
+            if (a != Long.MIN_VALUE && b != Long.MIN_VALUE) {
+                return Long.compare(a, b);
+            }
+        }
+        return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+
+    /**
+     * Applies an operator, comparisons are numeric so {@code 2.0 == 2} holds.
+     * Bitwise operators require integers and are applied with {@link Operator#applyAsLong(long, long)}.
+     */
+    static Decimal apply(Operator operator, Decimal a, Decimal b, MathContext mc) {
+        return switch (operator) {
+            case ADDITION -> a.add(b, mc);
+            case SUBTRACTION -> a.subtract(b, mc);
+            case MULTIPLICATION -> a.multiply(b, mc);
+            case DIVISION -> a.divide(b, mc);
+            case MODULO -> a.remainder(b, mc);
+            case POWER -> a.pow(b, mc);
+            case LESS_THAN -> valueOf(a.compareTo(b) < 0);
+            case GREATER_THAN -> valueOf(a.compareTo(b) > 0);
+            case LESS_THAN_OR_EQUAL -> valueOf(a.compareTo(b) <= 0);
+            case GREATER_THAN_OR_EQUAL -> valueOf(a.compareTo(b) >= 0);
+            case EQUALS -> valueOf(a.compareTo(b) == 0);
+            case NOT_EQUALS -> valueOf(a.compareTo(b) != 0);
+            case LOGICAL_AND -> valueOf(!a.isZero() && !b.isZero());
+            case LOGICAL_OR -> valueOf(!a.isZero() || !b.isZero());
+            case LEFT_SHIFT, RIGHT_SHIFT, BITWISE_AND, BITWISE_OR ->
+                    valueOf(operator.applyAsLong(a.longValueExact(), b.longValueExact()), 0);
+        };
+    }
+
+    /**
+     * @return value * 10^n, or Long.MIN_VALUE if that overflows, which is never a valid compact value here
+     */
+    private static long scaleUp(long value, int n) {
+        if (n == 0) return value;
+        if (n >= POWERS_OF_TEN.length || value == Long.MIN_VALUE) return Long.MIN_VALUE;
+        long factor = POWERS_OF_TEN[n];
+        long high = Math.multiplyHigh(value, factor);
+        long product = value * factor;
+        return high == (product >> 63) && product != Long.MIN_VALUE ? product : Long.MIN_VALUE;
+    }
+
+    /**
+     * @return whether an unscaled value has no more digits than the precision allows, so it does not need rounding
+     */
+    private static boolean fits(long value, MathContext mc) {
+        int precision = mc.getPrecision();
+        if (precision == 0 || precision > MAX_COMPACT_DIGITS) {
+            return true; // unlimited, or more digits than a long has
+        }
+        return value != Long.MIN_VALUE && Math.abs(value) < POWERS_OF_TEN[precision];
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -0,0 +1,18 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import java.math.MathContext;
+
+/**
+ * The frame of one evaluation of a {@link CompiledDecimalExpression}.
+ * Always created, as the nodes need the math context to round with.
+ */
+final class DecimalFrame extends Frame {
+    final MathContext mathContext;
+    final Decimal[] decimalLocals;
+
+    DecimalFrame(int numLazies, int numLocals, MathContext mathContext) {
+        super(numLazies, numLocals);
+        this.mathContext = mathContext;
+        this.decimalLocals = new Decimal[numLocals];
+    }
+}
@@ -0,0 +1,95 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.function.ArgumentStack;
+import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.FunctionContext;
+
+/**
+ * A function defined in the expression language itself, f.e. {@code hyp(a, b) = sqrt(a*a + b*b)}.
+ * <p>
+ * The body is compiled once, when defining the function. Compiled expressions calling it inline the body,
+ * so a call costs exactly as much as writing out the body. Symbols referenced by the body are resolved at definition
+ * time, variables are captured with the value they had then.
+ *
+ * @see me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv#defineFunction(String)
+ */
+public final class DefinedFunction extends FunctionCallSite {
+    private final CompiledExpression body;
+    // the body without folded constants, inlined by integer and decimal expressions
+    private final CompiledExpression unfoldedBody;
+
+    DefinedFunction(String name, CompiledExpression body, CompiledExpression unfoldedBody) {
+        super(name, body.getParameters().length, body.getParameters().length, null);
+        this.body = body;
+        this.unfoldedBody = unfoldedBody;
+    }
+
+    /**
+     * @return the names of the parameters
+     */
+    public String[] getParameters() {
+        return body.getParameters();
+    }
+
+    public CompiledExpression getBody() {
+        return body;
+    }
+
+    CompiledExpression getUnfoldedBody() {
+        return unfoldedBody;
+    }
+
+    @Override
+    public DefinedFunction copy() {
+        return copyStateTo(new DefinedFunction(getName(), body, unfoldedBody));
+    }
+
+    /**
+     * Called by the interpreter, compiled expressions inline the body instead.
+     * The arguments and frame are kept on the caller's argument stack, and reused by later calls at the same depth.
+     */
+    @Override
+    protected double invoke(FunctionContext ctx) {
+        ArgumentStack stack = ctx.getStack();
+        CallState state = stack.getCallState() instanceof CallState existing ? existing : null;
+        if (state == null) {
+            state = new CallState();
+            stack.setCallState(state);
+        }
+        int size = ctx.size();
+        if (state.args.length < size) {
+            state.args = new double[size];
+        }
+        for (int i = 0; i < size; i++) {
+            state.args[i] = ctx.getDouble(i);
+        }
+        Frame frame = null;
+        // with a scope, calls in the body check the deadline of the calling evaluation through the frame
+        if (body.requiresFrame() || stack.getScope() != null) {
+            if (state.frameOwner != this) {
+                // variadic calls in the body open their windows on top of the one of this call
+                state.frame = new Frame(body.numLazies(), body.numLocals(), stack);
+                state.frameOwner = this;
+            } else {
+                state.frame.reset();
+            }
+            frame = state.frame;
+        }
+        return body.root().evaluate(state.args, frame);
+    }
+
+    /**
+     * The state of a call, reused by calls of any defined function at the same depth of the same evaluation.
+     */
+    private static final class CallState {
+        double[] args = new double[4];
+        // the frame is specific to the function it was created for
+        DefinedFunction frameOwner;
+        Frame frame;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + "(" + String.join(", ", body.getParameters()) + ") = " + body.getSource();
+    }
+}
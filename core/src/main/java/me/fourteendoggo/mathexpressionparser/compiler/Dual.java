@@ -0,0 +1,51 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A dual number for forward-mode automatic differentiation: a value, together with its partial derivatives
+ * with respect to every parameter of the expression.
+ */
+final class Dual {
+    final double value;
+    /**
+     * The partial derivatives, null if they are all zero, f.e. for constants. Never modified once created,
+     * so the same array can be shared by multiple duals.
+     */
+    @Nullable
+    final double[] tangent;
+
+    Dual(double value, @Nullable double[] tangent) {
+        this.value = value;
+        this.tangent = tangent;
+    }
+
+    static Dual constant(double value) {
+        return new Dual(value, null);
+    }
+
+    /**
+     * @return {@code ca * ta + cb * tb}, or null if both tangents are zero
+     */
+    @Nullable
+    static double[] combine(double ca, @Nullable double[] ta, double cb, @Nullable double[] tb) {
+        if (tb == null) return scale(ca, ta);
+        if (ta == null) return scale(cb, tb);
+        double[] result = new double[ta.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ca * ta[i] + cb * tb[i];
+        }
+        return result;
+    }
+
+    @Nullable
+    static double[] scale(double c, @Nullable double[] t) {
+        if (t == null) return null;
+        if (c == 1) return t; // tangents are never modified
+        double[] result = new double[t.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = c * t[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+/**
+ * The frame of one differentiating evaluation of a {@link CompiledExpression}.
+ */
+final class DualFrame extends Frame {
+    final Dual[] dualLocals;
+    // the tangent of every parameter, a unit vector, created on first use
+    private final double[][] parameterTangents;
+
+    DualFrame(int numLazies, int numLocals, int numParameters) {
+        super(numLazies, numLocals);
+        this.dualLocals = new Dual[numLocals];
+        this.parameterTangents = new double[numParameters][];
+    }
+
+    double[] parameterTangent(int index) {
+        double[] tangent = parameterTangents[index];
+        if (tangent == null) {
+            tangent = new double[parameterTangents.length];
+            tangent[index] = 1;
+            parameterTangents[index] = tangent;
+        }
+        return tangent;
+    }
+}
@@ -0,0 +1,767 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.AsyncFunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.FixedArityFunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.metrics.CompileEvent;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionEvents;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionMetrics;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
+import me.fourteendoggo.mathexpressionparser.symbol.Symbol;
+import me.fourteendoggo.mathexpressionparser.symbol.Variable;
+import me.fourteendoggo.mathexpressionparser.token.Operator;
+import me.fourteendoggo.mathexpressionparser.token.Tokenizer;
+import me.fourteendoggo.mathexpressionparser.token.TokenType;
+import me.fourteendoggo.mathexpressionparser.utils.Assert;
+import me.fourteendoggo.mathexpressionparser.utils.Utility;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Compiles an expression into a {@link CompiledExpression}, which can be evaluated many times.
+ * This accepts exactly the same syntax as the {@link Tokenizer}, but builds a tree instead of solving right away.
+ * Symbols are resolved, function arities are checked and constant sub-expressions are folded once, when compiling.
+ */
+public class ExpressionCompiler {
+    private final char[] source;
+    private final ExecutionEnv env;
+    private final String[] parameters;
+    // the name of the function whose body is being compiled, if any
+    @Nullable
+    private final String definedName;
+    private final List<LazyVariable> lazies = new ArrayList<>();
+    private int numLocals;
+    private boolean hasVariadicCalls;
+    // whether we are compiling for 64-bit integer evaluation
+    private boolean integerMode;
+    // the math context when compiling for decimal evaluation, null otherwise
+    @Nullable
+    private MathContext decimalContext;
+    // whether we are compiling the unfolded body of a defined function, see compileDefinition
+    private boolean unfolded;
+    private int pos;
+
+    /**
+     * @param parameters the names of the parameters, which are supplied when evaluating.
+     *                   These shadow symbols with the same name in the env.
+     */
+    public ExpressionCompiler(char[] source, ExecutionEnv env, String... parameters) {
+        this(source, env, null, parameters);
+    }
+
+    private ExpressionCompiler(char[] source, ExecutionEnv env, @Nullable String definedName, String... parameters) {
+        for (int i = 0; i < parameters.length; i++) {
+            Assert.isValidIdentifierName(parameters[i]);
+            for (int j = 0; j < i; j++) {
+                Assert.isFalse(parameters[i].equals(parameters[j]), "duplicate parameter %s", parameters[i]);
+            }
+        }
+        this.source = source;
+        this.env = env;
+        this.definedName = definedName;
+        this.parameters = parameters.clone();
+    }
+
+    public CompiledExpression compile() {
+        Node root = readRoot();
+        return new CompiledExpression(new String(source), parameters, root, lazies.size(), numLocals, hasVariadicCalls,
+                env.getMetrics(), System.identityHashCode(env));
+    }
+
+    /**
+     * Compiles the expression for evaluation with 64-bit integer arithmetic.
+     * Number literals must be integers, and constants are folded with integer arithmetic too.
+     *
+     * @see CompiledLongExpression
+     */
+    public CompiledLongExpression compileLong() {
+        integerMode = true;
+        Node root = readRoot();
+        return new CompiledLongExpression(new String(source), parameters, root, lazies.size(), numLocals, hasVariadicCalls);
+    }
+
+    /**
+     * Compiles the expression for evaluation with decimal arithmetic.
+     * Number literals are read exactly, and constants are folded with decimal arithmetic too.
+     *
+     * @param mathContext the math context to round operations with, {@link MathContext#UNLIMITED} never rounds
+     *                    but makes non-terminating divisions fail
+     * @see CompiledDecimalExpression
+     */
+    public CompiledDecimalExpression compileDecimal(MathContext mathContext) {
+        decimalContext = mathContext;
+        Node root = readRoot();
+        return new CompiledDecimalExpression(new String(source), parameters, root, lazies.size(), numLocals, mathContext);
+    }
+
+    /**
+     * Compiles a function definition of the form {@code name(a, b) = body}.
+     *
+     * @param definition the definition
+     * @param env        the env to resolve the symbols in the body with
+     * @return the compiled function, not yet inserted into the env
+     * @throws SyntaxException if the definition is invalid, or the function calls itself
+     */
+    public static DefinedFunction compileDefinition(String definition, ExecutionEnv env) {
+        char[] chars = definition.toCharArray();
+        int pos = skipWhitespace(chars, 0);
+
+        int nameStart = pos;
+        while (pos < chars.length && Utility.isValidIdentifierChar(chars[pos])) {
+            pos++;
+        }
+        String name = new String(chars, nameStart, pos - nameStart);
+        Assert.isTrue(!name.isEmpty(), "expected a function definition of the form name(a, b) = body");
+        pos = skipWhitespace(chars, pos);
+        Assert.isTrue(pos < chars.length && chars[pos++] == '(', "missing opening parenthesis for function %s", name);
+
+        List<String> parameters = new ArrayList<>();
+        pos = skipWhitespace(chars, pos);
+        if (pos < chars.length && chars[pos] == ')') {
+            pos++;
+        } else {
+            while (true) {
+                pos = skipWhitespace(chars, pos);
+                int parameterStart = pos;
+                while (pos < chars.length && Utility.isValidIdentifierChar(chars[pos])) {
+                    pos++;
+                }
+                parameters.add(new String(chars, parameterStart, pos - parameterStart));
+                pos = skipWhitespace(chars, pos);
+                Assert.isTrue(pos < chars.length, "missing closing parenthesis for function %s", name);
+                char current = chars[pos++];
+                if (current == ')') break;
+                Assert.isTrue(current == ',', "expected ',' or ')' after parameter of function %s", name);
+            }
+        }
+
+        pos = skipWhitespace(chars, pos);
+        Assert.isTrue(pos < chars.length && chars[pos] == '=', "expected '=' after the parameters of function %s", name);
+        pos++;
+        Assert.isTrue(pos == chars.length || chars[pos] != '=', "expected '=' after the parameters of function %s", name);
+
+        char[] body = Arrays.copyOfRange(chars, pos, chars.length);
+        String[] parameterNames = parameters.toArray(new String[0]);
+        CompiledExpression compiled = new ExpressionCompiler(body, env, name, parameterNames).compile();
+        // integer and decimal expressions inlining the body must fold its constants with their own arithmetic
+        CompiledExpression unfolded = new ExpressionCompiler(body, env, name, parameterNames).compileUnfolded();
+        return new DefinedFunction(name, compiled, unfolded);
+    }
+
+    /**
+     * Compiles without folding constants, literals keep their exact value next to their double value.
+     * Symbols are still resolved, so inlining this tree behaves as if the function was defined in that mode.
+     */
+    private CompiledExpression compileUnfolded() {
+        unfolded = true;
+        Node root = readExpression(current -> true);
+        return new CompiledExpression(new String(source), parameters, root, lazies.size(), numLocals, hasVariadicCalls,
+                null, System.identityHashCode(env));
+    }
+
+    private Node readRoot() {
+        ExpressionMetrics metrics = env.getMetrics();
+        CompileEvent event = ExpressionEvents.beginCompile();
+        if (metrics == null && event == null) {
+            return readExpression(current -> true);
+        }
+        long start = System.nanoTime();
+        try {
+            Node root = readExpression(current -> true);
+            if (metrics != null) {
+                metrics.onCompile(System.nanoTime() - start);
+            }
+            if (event != null) {
+                ExpressionEvents.commit(event, new String(source), System.identityHashCode(env));
+            }
+            return root;
+        } catch (RuntimeException e) {
+            if (metrics != null) {
+                metrics.onError(e);
+            }
+            throw e;
+        }
+    }
+
+    private static int skipWhitespace(char[] chars, int pos) {
+        while (pos < chars.length && Character.isWhitespace(chars[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /*
+    The methods below mirror the ones from the Tokenizer, keep them in sync
+     */
+
+    private Node readExpression(IntPredicate loopCondition) {
+        TreeBuilder expr = new TreeBuilder();
+
+        while (hasRemaining(loopCondition)) {
+            char current = advance();
+            switch (current) {
+                case ' ', '\r', '\t' -> {} // no-op
+                case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> expr.pushOperand(readNumber(current, true));
+                case '*' -> expr.pushOperator(Operator.MULTIPLICATION);
+                case '/' -> expr.pushOperator(Operator.DIVISION);
+                case '+' -> expr.pushOperator(Operator.ADDITION);
+                case '%' -> expr.pushOperator(Operator.MODULO);
+                case '^' -> expr.pushOperator(Operator.POWER);
+                case '-' -> {
+                    switch (expr.lastType) {
+                        case OPERAND -> expr.pushOperator(Operator.SUBTRACTION);
+                        case OPERATOR -> expr.pushOperand(readNegativeNumber());
+                    }
+                }
+                case '<' -> {
+                    switch (advanceOrThrow(loopCondition)) {
+                        case '<' -> expr.pushOperator(Operator.LEFT_SHIFT);
+                        case '=' -> expr.pushOperator(Operator.LESS_THAN_OR_EQUAL);
+                        default -> {
+                            expr.pushOperator(Operator.LESS_THAN);
+                            pos--; // put the character after < back
+                        }
+                    }
+                }
+                case '>' -> {
+                    switch (advanceOrThrow(loopCondition)) {
+                        case '>' -> expr.pushOperator(Operator.RIGHT_SHIFT);
+                        case '=' -> expr.pushOperator(Operator.GREATER_THAN_OR_EQUAL);
+                        default -> {
+                            expr.pushOperator(Operator.GREATER_THAN);
+                            pos--; // put the character after > back
+                        }
+                    }
+                }
+                case '=' -> {
+                    matchOrThrow('=', "expected another '=' for comparison");
+                    expr.pushOperator(Operator.EQUALS);
+                }
+                case 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
+                     'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z', '_' -> {
+                    if (expr.lastType == TokenType.OPERAND) {
+                        expr.pushOperator(Operator.MULTIPLICATION);
+                    }
+                    expr.pushOperand(readSymbol());
+                }
+                case '&' -> expr.pushOperator(match('&') ? Operator.LOGICAL_AND : Operator.BITWISE_AND);
+                case '|' -> expr.pushOperator(match('|') ? Operator.LOGICAL_OR : Operator.BITWISE_OR);
+                case '(' -> {
+                    if (expr.lastType == TokenType.OPERAND) {
+                        expr.pushOperator(Operator.MULTIPLICATION);
+                    }
+                    expr.pushOperand(readBrackets());
+                }
+                case '!' -> {
+                    if (currentOrThrow("expected an operand") == '=') {
+                        advance();
+                        expr.pushOperator(Operator.NOT_EQUALS);
+                    } else {
+                        expr.pushOperand(not(readExpression(loopCondition)));
+                    }
+                }
+                case '~' -> {
+                    expr.pushOperand(bitwiseNot(readExpression(loopCondition)));
+                }
+                default -> throw new SyntaxException("unexpected character " + current);
+            }
+        }
+        return expr.build();
+    }
+
+    private Node readNumber(char initialChar, boolean readNumber) {
+        if (decimalContext != null) {
+            return new Node.Constant(readDecimal(initialChar, readNumber));
+        }
+        if (integerMode) {
+            return new Node.Constant(readLong(initialChar, readNumber));
+        }
+        if (unfolded) {
+            int start = readNumber ? pos - 1 : pos;
+            return exactLiteral(readDouble(initialChar, readNumber), start, false);
+        }
+        return constant(readDouble(initialChar, readNumber));
+    }
+
+    private Node readNegativeNumber() {
+        if (decimalContext != null) {
+            return new Node.Constant(readDecimal('0', false).negate());
+        }
+        if (integerMode) {
+            // cannot overflow, the positive value is at most Long.MAX_VALUE
+            return new Node.Constant(-readLong('0', false));
+        }
+        if (unfolded) {
+            int start = pos;
+            return exactLiteral(-readDouble('0', false), start, true);
+        }
+        return constant(-readDouble('0', false));
+    }
+
+    /**
+     * @param value the value as read by {@link #readDouble(char, boolean)}, already negated if needed
+     * @param start the start of the literal, which ends at the current position
+     */
+    private Node exactLiteral(double value, int start, boolean negate) {
+        // no digits for the -1 of -func()
+        Decimal exact = pos == start ? Decimal.ONE : Decimal.valueOf(new BigDecimal(source, start, pos - start));
+        return new Node.Constant(value, negate ? exact.negate() : exact);
+    }
+
+    /**
+     * Reads an integer literal in integer mode, exactly, where a double would round beyond 2^53.
+     */
+    private long readLong(char initialChar, boolean readNumber) {
+        long result = initialChar - '0';
+
+        while (pos < source.length && source[pos] >= '0' && source[pos] <= '9') {
+            int digit = source[pos++] - '0';
+            try {
+                result = Math.addExact(Math.multiplyExact(result, 10), digit);
+            } catch (ArithmeticException e) {
+                throw new SyntaxException("integer literal is too large, the maximum is %s", Long.MAX_VALUE);
+            }
+            readNumber = true;
+        }
+        Assert.isFalse(currentOrDefault() == '.', "decimal numbers are not supported when compiling for integers");
+        if (!readNumber) {
+            // support for function calls of form -func()
+            Assert.isTrue(Utility.isValidIdentifierFirstChar(currentOrDefault()), "expected a number");
+            return 1; // negated by the caller
+        }
+        return result;
+    }
+
+    /**
+     * Reads a number literal in decimal mode, straight into an unscaled long and a scale.
+     * Only literals with more digits than a long can hold go through a {@link BigDecimal}.
+     */
+    private Decimal readDecimal(char initialChar, boolean readNumber) {
+        int start = readNumber ? pos - 1 : pos;
+        long unscaled = initialChar - '0';
+        int digits = readNumber ? 1 : 0;
+        int scale = 0;
+        boolean decimalPoint = false;
+
+        while (pos < source.length) {
+            char current = source[pos];
+            if (current >= '0' && current <= '9') {
+                unscaled = unscaled * 10 + (current - '0'); // only used if it did not overflow
+                digits++;
+                if (decimalPoint) {
+                    scale++;
+                }
+            } else if (current == '.' && !decimalPoint) {
+                Assert.isTrue(digits > 0, "expected a number before the comma");
+                decimalPoint = true;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        Assert.isTrue(!decimalPoint || scale > 0, "expected the decimal part of a number");
+        if (digits == 0) {
+            // support for function calls of form -func()
+            Assert.isTrue(Utility.isValidIdentifierFirstChar(currentOrDefault()), "expected a number");
+            return Decimal.ONE; // negated by the caller
+        }
+        if (digits <= Decimal.MAX_COMPACT_DIGITS) {
+            return Decimal.valueOf(unscaled, scale);
+        }
+        return Decimal.valueOf(new BigDecimal(source, start, pos - start));
+    }
+
+    private double readDouble(char initialChar, boolean readNumber) {
+        double result = initialChar - '0';
+
+        loop:
+        while (pos < source.length) {
+            char current = advance();
+            switch (current) {
+                case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> {
+                    result *= 10;
+                    result += current - '0';
+                    readNumber = true;
+                }
+                case '.' -> {
+                    Assert.isTrue(readNumber, "expected a number before the comma");
+                    result += readDecimalPart();
+                    return result;
+                }
+                default -> {
+                    pos--; // read too far then
+                    break loop;
+                }
+            }
+        }
+        if (!readNumber) {
+            // support for function calls of form -func()
+            Assert.isTrue(Utility.isValidIdentifierFirstChar(currentOrDefault()), "expected a number");
+            return 1; // negated by the caller
+        }
+        return result;
+    }
+
+    private double readDecimalPart() {
+        int oldPos = pos;
+        double result = 0;
+        double divider = 10; // always power of ten
+
+        while (pos < source.length && source[pos] >= '0' && source[pos] <= '9') {
+            result += (source[pos++] - '0') / divider;
+            divider *= 10;
+        }
+        Assert.isTrue(pos > oldPos, "expected the decimal part of a number");
+        return result;
+    }
+
+    private Node readBrackets() {
+        Node result = readExpression(c -> c != ')'); // enter expression
+
+        Assert.isTrue(currentOrDefault() == ')', "missing closing parenthesis");
+        pos++;
+        return result;
+    }
+
+    private Node readSymbol() {
+        int start = pos - 1; // already incremented pos
+        int end = start;
+        while (end < source.length && Utility.isValidIdentifierChar(source[end])) {
+            end++;
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            if (regionEquals(parameters[i], start, end)) {
+                pos = end;
+                return new Node.Parameter(i, parameters[i]);
+            }
+        }
+        if (definedName != null && regionEquals(definedName, start, end)) {
+            throw new SyntaxException("function %s calls itself, recursion is not supported", definedName);
+        }
+
+        Symbol symbol = env.lookupSymbol(source, start);
+        pos += symbol.getName().length() - 1;
+
+        return switch (symbol.getType()) {
+            case FUNCTION -> readFunctionCall((FunctionCallSite) symbol);
+            case VARIABLE -> variable(((Variable) symbol).value());
+            case LAZY_VARIABLE -> lazy((LazyVariable) symbol);
+        };
+    }
+
+    private Node readFunctionCall(FunctionCallSite desc) {
+        String functionName = desc.getName();
+        matchOrThrow('(', "missing opening parenthesis for function %s", functionName);
+
+        char maybeClosingParenthesis = currentOrThrow("missing closing parenthesis for function call %s", functionName);
+        List<Node> args = new ArrayList<>();
+
+        if (maybeClosingParenthesis != ')') { // parameters were provided
+            Assert.isTrue(desc.supportsArgs(), "function %s did not expect any parameters", functionName);
+
+            do {
+                args.add(readExpression(Utility::isValidArgument));
+            } while (match(','));
+        }
+        matchOrThrow(')', "missing closing parenthesis for function %s", functionName);
+        desc.checkArity(args.size());
+
+        Node[] argNodes = args.toArray(new Node[0]);
+        if (desc instanceof DefinedFunction definedDesc) {
+            return inline(definedDesc, argNodes);
+        }
+        if (desc instanceof FixedArityFunctionCallSite fixedArityDesc) {
+            return new Node.FixedArityCall(fixedArityDesc, argNodes, env.getMetrics());
+        }
+        hasVariadicCalls = true;
+        if (desc instanceof AsyncFunctionCallSite asyncDesc) {
+            return new Node.AsyncCall(asyncDesc, argNodes, env.getMetrics());
+        }
+        return new Node.VariadicCall(desc, argNodes, env.getMetrics());
+    }
+
+    /**
+     * Inlines the body of a user-defined function. Arguments are substituted for the parameters,
+     * unless that would evaluate a non-trivial argument multiple times, those are evaluated once and bound to a local.
+     */
+    private Node inline(DefinedFunction function, Node[] args) {
+        // the folded body is only exact for double arithmetic
+        CompiledExpression body = integerMode || decimalContext != null || unfolded ? function.getUnfoldedBody() : function.getBody();
+        int[] uses = new int[args.length];
+        countParameterUses(body.root(), uses);
+
+        int localBase = numLocals;
+        numLocals += body.numLocals();
+
+        Node[] bindings = new Node[args.length];
+        int[] slots = new int[args.length];
+        Node[] values = new Node[args.length];
+        int numBound = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (uses[i] <= 1 || isLeaf(args[i])) {
+                bindings[i] = args[i];
+            } else {
+                slots[numBound] = numLocals++;
+                values[numBound] = args[i];
+                bindings[i] = new Node.Local(slots[numBound++]);
+            }
+        }
+
+        Node inlined = rebind(body.root(), bindings, localBase);
+        if (numBound == 0) {
+            return inlined;
+        }
+        return new Node.Let(Arrays.copyOf(slots, numBound), Arrays.copyOf(values, numBound), inlined);
+    }
+
+    private static void countParameterUses(Node node, int[] uses) {
+        if (node instanceof Node.Parameter parameter) {
+            uses[parameter.index]++;
+        } else if (node instanceof Node.Binary binary) {
+            countParameterUses(binary.left, uses);
+            countParameterUses(binary.right, uses);
+        } else if (node instanceof Node.Not not) {
+            countParameterUses(not.operand, uses);
+        } else if (node instanceof Node.BitwiseNot not) {
+            countParameterUses(not.operand, uses);
+        } else if (node instanceof Node.Let let) {
+            for (Node value : let.values) {
+                countParameterUses(value, uses);
+            }
+            countParameterUses(let.body, uses);
+        } else if (node instanceof Node.Call call) {
+            for (Node arg : call.args) {
+                countParameterUses(arg, uses);
+            }
+        }
+    }
+
+    private static boolean isLeaf(Node node) {
+        return node instanceof Node.Constant || node instanceof Node.Parameter
+                || node instanceof Node.Lazy || node instanceof Node.Local;
+    }
+
+    /**
+     * Copies the body of an inlined function into this expression, replacing its parameters by the given bindings.
+     * Its lazy variables and locals are moved to the slots of this expression, constants are folded again.
+     */
+    private Node rebind(Node node, Node[] bindings, int localBase) {
+        if (node instanceof Node.Parameter parameter) {
+            return bindings[parameter.index];
+        } else if (node instanceof Node.Lazy lazy) {
+            return lazy(lazy.variable);
+        } else if (node instanceof Node.Local local) {
+            return new Node.Local(localBase + local.slot);
+        } else if (node instanceof Node.Binary binary) {
+            return binary(binary.operator, rebind(binary.left, bindings, localBase), rebind(binary.right, bindings, localBase));
+        } else if (node instanceof Node.Not not) {
+            return not(rebind(not.operand, bindings, localBase));
+        } else if (node instanceof Node.BitwiseNot not) {
+            return bitwiseNot(rebind(not.operand, bindings, localBase));
+        } else if (node instanceof Node.Let let) {
+            int[] slots = new int[let.slots.length];
+            Node[] values = new Node[let.values.length];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = localBase + let.slots[i];
+                values[i] = rebind(let.values[i], bindings, localBase);
+            }
+            return new Node.Let(slots, values, rebind(let.body, bindings, localBase));
+        } else if (node instanceof Node.Call call) {
+            if (call instanceof Node.VariadicCall) {
+                hasVariadicCalls = true;
+            }
+            Node[] args = new Node[call.args.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = rebind(call.args[i], bindings, localBase);
+            }
+            return call.withArgs(args);
+        }
+        if (node instanceof Node.Constant constant && !unfolded) {
+            // literals of the unfolded body carry their exact value, captured variables only have a double
+            if (integerMode) {
+                return new Node.Constant(constant.decimalValue != null ? constant.decimalValue.longValueExact() : Utility.requireLong(constant.value));
+            } else if (decimalContext != null) {
+                return new Node.Constant(constant.decimalValue != null ? constant.decimalValue : Decimal.valueOf(constant.value));
+            }
+        }
+        return node; // constants
+    }
+
+    private Node lazy(LazyVariable variable) {
+        int slot = 0;
+        // identity comparison, two distinct lazy variables may well be equal records
+        while (slot < lazies.size() && lazies.get(slot) != variable) {
+            slot++;
+        }
+        if (slot == lazies.size()) {
+            lazies.add(variable);
+        }
+        return new Node.Lazy(variable, slot);
+    }
+
+    private boolean regionEquals(String name, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source[start + i]) return false;
+        }
+        return true;
+    }
+
+    private static Node constant(double value) {
+        return new Node.Constant(value);
+    }
+
+    private Node variable(double value) {
+        if (decimalContext != null) {
+            return new Node.Constant(Decimal.valueOf(value));
+        }
+        return integerMode ? new Node.Constant(Utility.requireLong(value)) : constant(value);
+    }
+
+    private Node binary(Operator operator, Node left, Node right) {
+        if (left.isConstant() && right.isConstant() && !unfolded) {
+            if (decimalContext != null) {
+                Decimal a = left.evaluateDecimal(null, null);
+                return new Node.Constant(Decimal.apply(operator, a, right.evaluateDecimal(null, null), decimalContext));
+            }
+            if (integerMode) {
+                return new Node.Constant(operator.applyAsLong(left.evaluateLong(null, null), right.evaluateLong(null, null)));
+            }
+            return constant(operator.apply(left.evaluate(null, null), right.evaluate(null, null)));
+        }
+        return new Node.Binary(operator, left, right);
+    }
+
+    private Node not(Node operand) {
+        if (operand.isConstant() && !unfolded) {
+            if (decimalContext != null) {
+                return new Node.Constant(Decimal.valueOf(operand.evaluateDecimal(null, null).isZero()));
+            }
+            if (integerMode) {
+                return new Node.Constant(operand.evaluateLong(null, null) == 0 ? 1L : 0L);
+            }
+            return constant(Utility.boolNot(operand.evaluate(null, null)));
+        }
+        return new Node.Not(operand);
+    }
+
+    private Node bitwiseNot(Node operand) {
+        if (operand.isConstant() && !unfolded) {
+            if (decimalContext != null) {
+                return new Node.Constant(Decimal.valueOf(~operand.evaluateDecimal(null, null).longValueExact(), 0));
+            }
+            if (integerMode) {
+                return new Node.Constant(~operand.evaluateLong(null, null));
+            }
+            return constant(~Utility.requireInt(operand.evaluate(null, null)));
+        }
+        return new Node.BitwiseNot(operand);
+    }
+
+    private boolean hasRemaining(IntPredicate loopCondition) {
+        return pos < source.length && loopCondition.test(source[pos]);
+    }
+
+    private char advance() {
+        return source[pos++];
+    }
+
+    private char advanceOrThrow(IntPredicate loopCondition) {
+        Assert.isTrue(hasRemaining(loopCondition), "expected an operand");
+        return advance();
+    }
+
+    private char currentOrThrow(String fmt, Object... placeholders) {
+        Assert.isTrue(pos < source.length, fmt, placeholders);
+        return source[pos];
+    }
+
+    private char currentOrDefault() {
+        if (pos < source.length) {
+            return source[pos];
+        }
+        return '\0';
+    }
+
+    private boolean match(char c) {
+        if (pos >= source.length || source[pos] != c) {
+            return false;
+        }
+        pos++;
+        return true;
+    }
+
+    private void matchOrThrow(char expected, String fmt, Object... placeholders) {
+        Assert.isTrue(match(expected), fmt, placeholders);
+    }
+
+    /**
+     * Collects the operands and operators of one (sub) expression and combines them by operator priority,
+     * the same way {@link me.fourteendoggo.mathexpressionparser.token.Expression#solve()} does.
+     */
+    private class TreeBuilder {
+        private final List<Node> operands = new ArrayList<>();
+        private final List<Operator> operators = new ArrayList<>();
+        private TokenType lastType = TokenType.OPERATOR; // need to assure incoming type is different from the current one
+
+        void pushOperand(Node operand) {
+            checkType(TokenType.OPERAND);
+            operands.add(operand);
+        }
+
+        void pushOperator(Operator operator) {
+            checkType(TokenType.OPERATOR);
+            operators.add(operator);
+        }
+
+        private void checkType(TokenType type) {
+            if (lastType == type) {
+                throw new SyntaxException(switch (type) {
+                    case OPERAND -> "expected operator, got operand";
+                    case OPERATOR -> "expected operand, got operator";
+                });
+            }
+            lastType = type;
+        }
+
+        Node build() {
+            if (operands.isEmpty()) {
+                throw new SyntaxException("cannot solve an empty expression");
+            }
+            Assert.isTrue(lastType == TokenType.OPERAND, "unexpected trailing operator");
+
+            // operator precedence parsing, equal priorities are left associative
+            List<Node> outputStack = new ArrayList<>();
+            List<Operator> operatorStack = new ArrayList<>();
+            outputStack.add(operands.get(0));
+
+            for (int i = 0; i < operators.size(); i++) {
+                Operator operator = operators.get(i);
+                while (!operatorStack.isEmpty() && operatorStack.get(operatorStack.size() - 1).getPriority() >= operator.getPriority()) {
+                    reduce(outputStack, operatorStack);
+                }
+                operatorStack.add(operator);
+                outputStack.add(operands.get(i + 1));
+            }
+            while (!operatorStack.isEmpty()) {
+                reduce(outputStack, operatorStack);
+            }
+            return outputStack.get(0);
+        }
+
+        private void reduce(List<Node> outputStack, List<Operator> operatorStack) {
+            Operator operator = operatorStack.remove(operatorStack.size() - 1);
+            Node right = outputStack.remove(outputStack.size() - 1);
+            Node left = outputStack.remove(outputStack.size() - 1);
+            outputStack.add(binary(operator, left, right));
+        }
+    }
+}
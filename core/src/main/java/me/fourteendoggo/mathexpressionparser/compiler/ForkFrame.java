@@ -0,0 +1,37 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
+
+/**
+ * State of one parallel evaluation of a {@link CompiledExpression}.
+ * Every forked subtree gets its own frame, so it has its own argument stack,
+ * but lazy variables are shared and still resolved at most once per evaluation.
+ * Locals are shared too, they are always assigned before any subtree reading them is forked.
+ */
+final class ForkFrame extends Frame {
+    private final Object lock;
+
+    ForkFrame(int numLazies, int numLocals) {
+        super(numLazies, numLocals);
+        this.lock = new Object();
+    }
+
+    private ForkFrame(ForkFrame parent) {
+        super(parent);
+        this.lock = parent.lock;
+    }
+
+    @Override
+    double resolve(int slot, LazyVariable variable) {
+        synchronized (lock) {
+            return super.resolve(slot, variable);
+        }
+    }
+
+    /**
+     * @return a frame for a subtree evaluated on another thread
+     */
+    ForkFrame fork() {
+        return new ForkFrame(this);
+    }
+}
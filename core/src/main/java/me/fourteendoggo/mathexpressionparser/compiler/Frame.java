@@ -0,0 +1,121 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.EvaluationLimits;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
+import me.fourteendoggo.mathexpressionparser.function.ArgumentStack;
+import me.fourteendoggo.mathexpressionparser.function.EvaluationScope;
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
+
+import java.util.Arrays;
+
+/**
+ * State that lives for exactly one evaluation of a {@link CompiledExpression}.
+ * Only created when the expression references lazy variables, calls variadic functions or binds locals,
+ * evaluating anything else does not allocate.
+ */
+class Frame {
+    private final double[] lazyValues;
+    private final boolean[] resolved;
+    /**
+     * The arguments of inlined user-defined functions, see {@link Node.Let}.
+     */
+    final double[] locals;
+    // locals when evaluating in integer mode, created on first use
+    private long[] longLocals;
+    private ArgumentStack arguments;
+    // the calling evaluation of a user-defined function body, lazy variables are resolved once per evaluation in there
+    private EvaluationScope scope;
+    // only set if this evaluation has a deadline
+    private EvaluationLimits limits;
+    private long deadline;
+
+    Frame(int numLazies, int numLocals) {
+        lazyValues = new double[numLazies];
+        resolved = new boolean[numLazies];
+        locals = new double[numLocals];
+    }
+
+    /**
+     * Creates a frame using the given argument stack for variadic calls, f.e. the one of the caller of a user-defined function.
+     * Lazy variables and the deadline are those of the {@link EvaluationScope} of that stack, if it has one.
+     */
+    Frame(int numLazies, int numLocals, ArgumentStack arguments) {
+        this(numLazies, numLocals);
+        this.arguments = arguments;
+        this.scope = arguments.getScope();
+    }
+
+    /**
+     * Creates a frame sharing the lazy variables and locals of another frame, but with its own argument stack.
+     */
+    Frame(Frame shared) {
+        lazyValues = shared.lazyValues;
+        resolved = shared.resolved;
+        locals = shared.locals;
+        scope = shared.scope;
+        limits = shared.limits;
+        deadline = shared.deadline;
+    }
+
+    /**
+     * Makes function calls fail once the timeout of the given limits has passed, counting from now.
+     */
+    void startDeadline(EvaluationLimits limits) {
+        this.limits = limits;
+        this.deadline = limits.deadlineFromNow();
+    }
+
+    /**
+     * Called before every function call.
+     * @throws EvaluationLimitException if this evaluation has a deadline which has passed
+     */
+    void checkDeadline() {
+        if (scope != null) {
+            // the body of a user-defined function, the deadline is the one of the calling evaluation
+            scope.checkDeadline();
+            return;
+        }
+        // subtracting, nanoTime() may overflow
+        if (limits != null && System.nanoTime() - deadline > 0) {
+            throw EvaluationLimitException.deadlineExceeded(limits.timeoutNanos());
+        }
+    }
+
+    /**
+     * Returns the value of a lazy variable, invoking its supplier only the first time it is requested.
+     */
+    double resolve(int slot, LazyVariable variable) {
+        if (scope != null) {
+            return scope.resolve(variable);
+        }
+        if (!resolved[slot]) {
+            lazyValues[slot] = variable.resolve();
+            resolved[slot] = true;
+        }
+        return lazyValues[slot];
+    }
+
+    /**
+     * Forgets all resolved lazy variables, so this frame can be reused for another evaluation.
+     */
+    void reset() {
+        Arrays.fill(resolved, false);
+    }
+
+    long[] longLocals() {
+        if (longLocals == null) {
+            longLocals = new long[locals.length];
+        }
+        return longLocals;
+    }
+
+    /**
+     * @return the stack holding the arguments of all pending variadic function calls, created on first use.
+     */
+    ArgumentStack arguments() {
+        if (arguments == null) {
+            arguments = new ArgumentStack();
+        }
+        return arguments;
+    }
+}
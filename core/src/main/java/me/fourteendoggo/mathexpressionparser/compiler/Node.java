@@ -0,0 +1,1348 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.ArgumentStack;
+import me.fourteendoggo.mathexpressionparser.function.AsyncFunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.BatchFunction;
+import me.fourteendoggo.mathexpressionparser.function.CallProfile;
+import me.fourteendoggo.mathexpressionparser.function.Derivative;
+import me.fourteendoggo.mathexpressionparser.function.FixedArityFunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.FunctionContext;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionEvents;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionMetrics;
+import me.fourteendoggo.mathexpressionparser.metrics.SlowFunctionCallEvent;
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
+import me.fourteendoggo.mathexpressionparser.token.Operator;
+import me.fourteendoggo.mathexpressionparser.utils.Utility;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A node of a compiled expression tree.
+ * Every node can be evaluated for a single row of parameters, or for a whole batch of rows at once.
+ */
+abstract class Node {
+    private static final Node[] NO_CHILDREN = {};
+
+    /**
+     * @param args  the parameter values
+     * @param frame the per-evaluation state, only non-null if the expression needs one
+     */
+    abstract double evaluate(double[] args, Frame frame);
+
+    /**
+     * Evaluates this node for all rows of the batch.
+     *
+     * @param dest the column to write the result to, must not be one of the input columns
+     */
+    abstract void evaluateBatch(BatchFrame frame, double[] dest);
+
+    /**
+     * Evaluates this node with 64-bit integer arithmetic, for a {@link CompiledLongExpression}.
+     * Values are only converted to and from doubles at the boundaries, when calling functions and resolving lazy variables.
+     *
+     * @param args  the parameter values
+     * @param frame the per-evaluation state, only non-null if the expression needs one
+     */
+    abstract long evaluateLong(long[] args, Frame frame);
+
+    /**
+     * Evaluates this node with decimal arithmetic, for a {@link CompiledDecimalExpression}.
+     * Like {@link #evaluateLong(long[], Frame)}, values are only converted to doubles when calling functions.
+     *
+     * @param args  the parameter values
+     * @param frame the per-evaluation state, never null as it holds the math context
+     */
+    abstract Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame);
+
+    /**
+     * Evaluates this node together with its partial derivatives with respect to all parameters.
+     *
+     * @param args  the parameter values
+     * @param frame the per-evaluation state, never null as it holds the tangents of the parameters
+     */
+    abstract Dual evaluateDual(double[] args, DualFrame frame);
+
+    /**
+     * Evaluates this node for all rows of the batch, into a column which must not be modified.
+     * The column stays valid until the caller's own column is done, or until the next block of a float batch.
+     */
+    double[] column(BatchFrame frame) {
+        int mark = frame.scratchMark();
+        double[] column = frame.acquireColumn();
+        evaluateBatch(frame, column);
+        // the columns of the children are no longer needed, only keep this one
+        frame.releaseColumns(mark + 1);
+        return column;
+    }
+
+    /**
+     * Evaluates this node without blocking on async function calls.
+     * Nodes without async calls in their subtree are simply evaluated right away.
+     */
+    CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+        return CompletableFuture.completedFuture(evaluate(args, frame));
+    }
+
+    /**
+     * @return the nodes this node evaluates directly, must not be modified
+     */
+    Node[] children() {
+        return NO_CHILDREN;
+    }
+
+    boolean isConstant() {
+        return false;
+    }
+
+    /**
+     * @return the estimated cost of evaluating this node once in nanoseconds, based on the cost hints of the functions
+     */
+    long cost() {
+        return 0;
+    }
+
+    /**
+     * Returns a variant of this node in which independent children costing at least {@code threshold} nanoseconds
+     * are evaluated in parallel, or this node itself if nothing is worth forking.
+     * The parallel variant must be evaluated within a {@link java.util.concurrent.ForkJoinPool}, with a {@link ForkFrame}.
+     */
+    Node parallelize(long threshold) {
+        return this;
+    }
+
+    /**
+     * @return whether this node or any of its children calls an async function
+     */
+    boolean isAsync() {
+        return false;
+    }
+
+    /**
+     * Starts evaluating all nodes at once, the returned future completes when all of them are evaluated.
+     */
+    static CompletableFuture<double[]> evaluateAllAsync(Node[] nodes, double[] args, AsyncFrame frame) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Double>[] futures = new CompletableFuture[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            futures[i] = nodes[i].evaluateAsync(args, frame);
+        }
+        return CompletableFuture.allOf(futures).thenApply(ignored -> {
+            double[] values = new double[futures.length];
+            for (int i = 0; i < futures.length; i++) {
+                values[i] = futures[i].join();
+            }
+            return values;
+        });
+    }
+
+    static boolean anyAsync(Node[] nodes) {
+        for (Node node : nodes) {
+            if (node.isAsync()) return true;
+        }
+        return false;
+    }
+
+    static final class Constant extends Node {
+        final double value;
+        // exact value in integer mode, which a double cannot hold beyond 2^53
+        final long longValue;
+        private final boolean integer;
+        // exact value in decimal mode or of a literal of an unfolded function body, null otherwise
+        final Decimal decimalValue;
+
+        Constant(double value) {
+            this.value = value;
+            this.longValue = (long) value;
+            this.integer = false;
+            this.decimalValue = null;
+        }
+
+        Constant(long value) {
+            this.value = value;
+            this.longValue = value;
+            this.integer = true;
+            this.decimalValue = null;
+        }
+
+        Constant(Decimal value) {
+            this(value.toDouble(), value);
+        }
+
+        Constant(double value, Decimal exact) {
+            this.value = value;
+            this.longValue = (long) value;
+            this.integer = false;
+            this.decimalValue = exact;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            return value;
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            return longValue;
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            return decimalValue != null ? decimalValue : Decimal.valueOf(value);
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            return Dual.constant(value);
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            Arrays.fill(dest, 0, frame.length, value);
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            if (decimalValue != null) {
+                return decimalValue.toString();
+            }
+            return integer ? String.valueOf(longValue) : String.valueOf(value);
+        }
+    }
+
+    static final class Parameter extends Node {
+        final int index;
+        private final String name;
+
+        Parameter(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            return args[index];
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            return args[index];
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            return args[index];
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            return new Dual(args[index], frame.parameterTangent(index));
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            System.arraycopy(frame.columns[index], 0, dest, 0, frame.length);
+        }
+
+        @Override
+        double[] column(BatchFrame frame) {
+            return frame.columns[index]; // no need to copy
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final class Lazy extends Node {
+        final LazyVariable variable;
+        final int slot;
+
+        Lazy(LazyVariable variable, int slot) {
+            this.variable = variable;
+            this.slot = slot;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            return frame.resolve(slot, variable);
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            return Utility.requireLong(frame.resolve(slot, variable));
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            return Decimal.valueOf(frame.resolve(slot, variable));
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            return Dual.constant(frame.resolve(slot, variable));
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            // lazy variables do not depend on the row, resolved once per batch
+            Arrays.fill(dest, 0, frame.length, frame.resolve(slot, variable));
+        }
+
+        @Override
+        public String toString() {
+            return variable.getName();
+        }
+    }
+
+    /**
+     * A parameter of an inlined user-defined function, bound by a {@link Let}.
+     */
+    static final class Local extends Node {
+        final int slot;
+
+        Local(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            return frame.locals[slot];
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            return frame.longLocals()[slot];
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            return frame.decimalLocals[slot];
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            return frame.dualLocals[slot];
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            System.arraycopy(frame.localColumns[slot], 0, dest, 0, frame.length);
+        }
+
+        @Override
+        double[] column(BatchFrame frame) {
+            return frame.localColumns[slot];
+        }
+
+        @Override
+        public String toString() {
+            return "$" + slot;
+        }
+    }
+
+    /**
+     * Evaluates the arguments of an inlined user-defined function once, binds them to locals and evaluates the body.
+     * Only used for arguments that would otherwise be evaluated multiple times, all others are substituted into the body.
+     */
+    static final class Let extends Node {
+        final int[] slots;
+        final Node[] values;
+        final Node body;
+        private final boolean async;
+
+        Let(int[] slots, Node[] values, Node body) {
+            this.slots = slots;
+            this.values = values;
+            this.body = body;
+            this.async = anyAsync(values) || body.isAsync();
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            for (int i = 0; i < slots.length; i++) {
+                frame.locals[slots[i]] = values[i].evaluate(args, frame);
+            }
+            return body.evaluate(args, frame);
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            long[] locals = frame.longLocals();
+            for (int i = 0; i < slots.length; i++) {
+                locals[slots[i]] = values[i].evaluateLong(args, frame);
+            }
+            return body.evaluateLong(args, frame);
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            for (int i = 0; i < slots.length; i++) {
+                frame.decimalLocals[slots[i]] = values[i].evaluateDecimal(args, frame);
+            }
+            return body.evaluateDecimal(args, frame);
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            for (int i = 0; i < slots.length; i++) {
+                frame.dualLocals[slots[i]] = values[i].evaluateDual(args, frame);
+            }
+            return body.evaluateDual(args, frame);
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            for (int i = 0; i < slots.length; i++) {
+                frame.localColumns[slots[i]] = values[i].column(frame);
+            }
+            body.evaluateBatch(frame, dest);
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            if (!anyAsync(values)) {
+                for (int i = 0; i < slots.length; i++) {
+                    frame.locals[slots[i]] = values[i].evaluate(args, frame);
+                }
+                return body.evaluateAsync(args, frame);
+            }
+            return evaluateAllAsync(values, args, frame).thenCompose(known -> {
+                for (int i = 0; i < slots.length; i++) {
+                    frame.locals[slots[i]] = known[i];
+                }
+                return body.evaluateAsync(args, frame);
+            });
+        }
+
+        @Override
+        boolean isAsync() {
+            return async;
+        }
+
+        @Override
+        Node[] children() {
+            Node[] children = Arrays.copyOf(values, values.length + 1);
+            children[values.length] = body;
+            return children;
+        }
+
+        @Override
+        long cost() {
+            long cost = body.cost();
+            for (Node value : values) {
+                cost += value.cost();
+            }
+            return cost;
+        }
+
+        @Override
+        Node parallelize(long threshold) {
+            Node[] parallelValues = new Node[values.length];
+            boolean changed = false;
+            for (int i = 0; i < values.length; i++) {
+                parallelValues[i] = values[i].parallelize(threshold);
+                changed |= parallelValues[i] != values[i];
+            }
+            Node parallelBody = body.parallelize(threshold);
+            if (!changed && parallelBody == body) {
+                return this;
+            }
+            return new Let(slots, parallelValues, parallelBody);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("let(");
+            for (int i = 0; i < slots.length; i++) {
+                builder.append('$').append(slots[i]).append(" = ").append(values[i]).append(", ");
+            }
+            return builder.append(body).append(')').toString();
+        }
+    }
+
+    static final class Binary extends Node {
+        final Operator operator;
+        final Node left, right;
+
+        private final boolean async;
+
+        Binary(Operator operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+            this.async = left.isAsync() || right.isAsync();
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            double a = left.evaluate(args, frame);
+            return apply(a, right.evaluate(args, frame));
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            long a = left.evaluateLong(args, frame);
+            long b = right.evaluateLong(args, frame);
+            return switch (operator) {
+                // bitwise operators cannot fail, skip the overflow handling
+                case BITWISE_AND -> a & b;
+                case BITWISE_OR -> a | b;
+                default -> operator.applyAsLong(a, b);
+            };
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            Decimal a = left.evaluateDecimal(args, frame);
+            return Decimal.apply(operator, a, right.evaluateDecimal(args, frame), frame.mathContext);
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            Dual a = left.evaluateDual(args, frame);
+            Dual b = right.evaluateDual(args, frame);
+            double value = apply(a.value, b.value);
+            double[] tangent = switch (operator) {
+                case ADDITION -> Dual.combine(1, a.tangent, 1, b.tangent);
+                case SUBTRACTION -> Dual.combine(1, a.tangent, -1, b.tangent);
+                case MULTIPLICATION -> Dual.combine(b.value, a.tangent, a.value, b.tangent);
+                case DIVISION -> Dual.combine(1 / b.value, a.tangent, -a.value / (b.value * b.value), b.tangent);
+                // a % b is a - b * q, with q the truncated quotient
+                case MODULO -> Dual.combine(1, a.tangent, -(a.value - value) / b.value, b.tangent);
+                case POWER -> Dual.combine(
+                        a.tangent == null ? 0 : b.value * Math.pow(a.value, b.value - 1), a.tangent,
+                        // only taking the log when needed, it is NaN for negative bases
+                        b.tangent == null ? 0 : value * Math.log(a.value), b.tangent
+                );
+                // comparisons, logical and bitwise operators are piecewise constant
+                default -> null;
+            };
+            return new Dual(value, tangent);
+        }
+
+        double apply(double a, double b) {
+            // the most common operators are inlined, instead of going through the operators' lambdas
+            return switch (operator) {
+                case ADDITION -> a + b;
+                case SUBTRACTION -> a - b;
+                case MULTIPLICATION -> a * b;
+                case DIVISION -> a / b;
+                default -> operator.apply(a, b);
+            };
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            double[] a = left.column(frame);
+            double[] b = right.column(frame);
+            int length = frame.length;
+
+            // simple loops, so they can be auto vectorized
+            switch (operator) {
+                case ADDITION -> {
+                    for (int i = 0; i < length; i++) dest[i] = a[i] + b[i];
+                }
+                case SUBTRACTION -> {
+                    for (int i = 0; i < length; i++) dest[i] = a[i] - b[i];
+                }
+                case MULTIPLICATION -> {
+                    for (int i = 0; i < length; i++) dest[i] = a[i] * b[i];
+                }
+                case DIVISION -> {
+                    for (int i = 0; i < length; i++) dest[i] = a[i] / b[i];
+                }
+                default -> {
+                    for (int i = 0; i < length; i++) dest[i] = operator.apply(a[i], b[i]);
+                }
+            }
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            if (!async) return super.evaluateAsync(args, frame);
+            // both sides are started before either is waited for
+            CompletableFuture<Double> a = left.evaluateAsync(args, frame);
+            CompletableFuture<Double> b = right.evaluateAsync(args, frame);
+            return a.thenCombine(b, operator::apply);
+        }
+
+        @Override
+        boolean isAsync() {
+            return async;
+        }
+
+        @Override
+        Node[] children() {
+            return new Node[]{left, right};
+        }
+
+        @Override
+        long cost() {
+            return left.cost() + right.cost();
+        }
+
+        @Override
+        Node parallelize(long threshold) {
+            Node parallelLeft = left.parallelize(threshold);
+            Node parallelRight = right.parallelize(threshold);
+            Binary node = parallelLeft == left && parallelRight == right ? this : new Binary(operator, parallelLeft, parallelRight);
+            if (left.cost() >= threshold && right.cost() >= threshold) {
+                return new ParallelBinary(node);
+            }
+            return node;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " " + operator + " " + right + ")";
+        }
+    }
+
+    /**
+     * Logical not, {@code !x}.
+     */
+    static final class Not extends Node {
+        final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            if (!operand.isAsync()) return super.evaluateAsync(args, frame);
+            return operand.evaluateAsync(args, frame).thenApply(value -> Utility.boolNot(value));
+        }
+
+        @Override
+        boolean isAsync() {
+            return operand.isAsync();
+        }
+
+        @Override
+        Node[] children() {
+            return new Node[]{operand};
+        }
+
+        @Override
+        long cost() {
+            return operand.cost();
+        }
+
+        @Override
+        Node parallelize(long threshold) {
+            Node parallelOperand = operand.parallelize(threshold);
+            return parallelOperand == operand ? this : new Not(parallelOperand);
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            return Utility.boolNot(operand.evaluate(args, frame));
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            return operand.evaluateLong(args, frame) == 0 ? 1 : 0;
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            return Decimal.valueOf(operand.evaluateDecimal(args, frame).isZero());
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            return Dual.constant(Utility.boolNot(operand.evaluateDual(args, frame).value));
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            double[] a = operand.column(frame);
+            for (int i = 0; i < frame.length; i++) {
+                dest[i] = Utility.boolNot(a[i]);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "!" + operand;
+        }
+    }
+
+    /**
+     * Bitwise not, {@code ~x}.
+     */
+    static final class BitwiseNot extends Node {
+        final Node operand;
+
+        BitwiseNot(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            if (!operand.isAsync()) return super.evaluateAsync(args, frame);
+            return operand.evaluateAsync(args, frame).thenApply(value -> (double) ~Utility.requireInt(value));
+        }
+
+        @Override
+        boolean isAsync() {
+            return operand.isAsync();
+        }
+
+        @Override
+        Node[] children() {
+            return new Node[]{operand};
+        }
+
+        @Override
+        long cost() {
+            return operand.cost();
+        }
+
+        @Override
+        Node parallelize(long threshold) {
+            Node parallelOperand = operand.parallelize(threshold);
+            return parallelOperand == operand ? this : new BitwiseNot(parallelOperand);
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            return ~Utility.requireInt(operand.evaluate(args, frame));
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            return ~operand.evaluateLong(args, frame);
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            return Decimal.valueOf(~operand.evaluateDecimal(args, frame).longValueExact(), 0);
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            return Dual.constant(~Utility.requireInt(operand.evaluateDual(args, frame).value));
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            double[] a = operand.column(frame);
+            for (int i = 0; i < frame.length; i++) {
+                dest[i] = ~Utility.requireInt(a[i]);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "~" + operand;
+        }
+    }
+
+    /**
+     * A function call, its arity was already checked when compiling.
+     * Calls are reported to the metrics of the env at the time of compiling, if there were any.
+     */
+    abstract static class Call extends Node {
+        final Node[] args;
+        @Nullable
+        final ExpressionMetrics metrics;
+        private final FunctionCallSite callSite;
+        private final long cost;
+
+        Call(FunctionCallSite site, Node[] args, @Nullable ExpressionMetrics metrics) {
+            this.args = args;
+            this.metrics = metrics;
+            this.callSite = site;
+            long cost = site.getCostHint();
+            for (Node arg : args) {
+                cost += arg.cost();
+            }
+            this.cost = cost;
+        }
+
+        /**
+         * Calls the function with already evaluated arguments.
+         */
+        abstract double call(double[] values, Frame frame);
+
+        /**
+         * @return a call to the same function, with other argument nodes
+         */
+        abstract Call withArgs(Node[] args);
+
+        void reportCalls(int count) {
+            if (metrics != null) {
+                metrics.onFunctionCall(callSite, count);
+            }
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            double[] values = new double[this.args.length];
+            double[][] tangents = new double[this.args.length][];
+            boolean constant = true;
+            for (int i = 0; i < values.length; i++) {
+                Dual arg = this.args[i].evaluateDual(args, frame);
+                values[i] = arg.value;
+                tangents[i] = arg.tangent;
+                constant &= arg.tangent == null;
+            }
+            double value = call(values, frame);
+            if (constant) {
+                return Dual.constant(value);
+            }
+
+            Derivative derivative = callSite.getDerivative();
+            if (derivative == null) {
+                throw new SyntaxException("cannot differentiate function %s, it has no derivative", callSite.getName());
+            }
+            double[] tangent = new double[args.length]; // one partial derivative per parameter
+            for (int i = 0; i < values.length; i++) {
+                double[] argTangent = tangents[i];
+                if (argTangent == null) continue;
+                // chain rule
+                double partial = derivative.partial(values, i);
+                for (int j = 0; j < tangent.length; j++) {
+                    tangent[j] += partial * argTangent[j];
+                }
+            }
+            return new Dual(value, tangent);
+        }
+
+        @Override
+        Node[] children() {
+            return args;
+        }
+
+        @Override
+        long cost() {
+            return cost;
+        }
+
+        @Override
+        Node parallelize(long threshold) {
+            Node[] parallelArgs = new Node[args.length];
+            boolean changed = false;
+            int numExpensive = 0;
+            for (int i = 0; i < args.length; i++) {
+                parallelArgs[i] = args[i].parallelize(threshold);
+                changed |= parallelArgs[i] != args[i];
+                if (args[i].cost() >= threshold) {
+                    numExpensive++;
+                }
+            }
+            Call node = changed ? withArgs(parallelArgs) : this;
+            return numExpensive >= 2 ? new ParallelCall(node, threshold) : node;
+        }
+    }
+
+    /**
+     * A call to a {@link FixedArityFunctionCallSite}.
+     */
+    static final class FixedArityCall extends Call {
+        final FixedArityFunctionCallSite site;
+
+        private final boolean async;
+
+        FixedArityCall(FixedArityFunctionCallSite site, Node[] args, @Nullable ExpressionMetrics metrics) {
+            super(site, args, metrics);
+            this.site = site;
+            this.async = anyAsync(args);
+        }
+
+        @Override
+        double call(double[] values, Frame frame) {
+            return invoke(
+                    values.length > 0 ? values[0] : 0,
+                    values.length > 1 ? values[1] : 0,
+                    values.length > 2 ? values[2] : 0
+            );
+        }
+
+        @Override
+        Call withArgs(Node[] args) {
+            return new FixedArityCall(site, args, metrics);
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            if (!async) return super.evaluateAsync(args, frame);
+            return evaluateAllAsync(this.args, args, frame).thenApply(values -> call(values, null));
+        }
+
+        @Override
+        boolean isAsync() {
+            return async;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            if (frame != null) {
+                frame.checkDeadline();
+            }
+            Node[] nodes = this.args;
+            return switch (nodes.length) {
+                case 0 -> invoke(0, 0, 0);
+                case 1 -> invoke(nodes[0].evaluate(args, frame), 0, 0);
+                case 2 -> {
+                    double first = nodes[0].evaluate(args, frame);
+                    yield invoke(first, nodes[1].evaluate(args, frame), 0);
+                }
+                default -> {
+                    double first = nodes[0].evaluate(args, frame);
+                    double second = nodes[1].evaluate(args, frame);
+                    yield invoke(first, second, nodes[2].evaluate(args, frame));
+                }
+            };
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            Node[] nodes = this.args;
+            double first = nodes.length > 0 ? nodes[0].evaluateLong(args, frame) : 0;
+            double second = nodes.length > 1 ? nodes[1].evaluateLong(args, frame) : 0;
+            double third = nodes.length > 2 ? nodes[2].evaluateLong(args, frame) : 0;
+            return Utility.requireLong(invoke(first, second, third));
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            frame.checkDeadline();
+            Node[] nodes = this.args;
+            double first = nodes.length > 0 ? nodes[0].evaluateDecimal(args, frame).toDouble() : 0;
+            double second = nodes.length > 1 ? nodes[1].evaluateDecimal(args, frame).toDouble() : 0;
+            double third = nodes.length > 2 ? nodes[2].evaluateDecimal(args, frame).toDouble() : 0;
+            return Decimal.valueOf(invoke(first, second, third));
+        }
+
+        /**
+         * Calls the function for a single row, batches call {@link #site} directly.
+         */
+        private double invoke(double first, double second, double third) {
+            reportCalls(1);
+            CallProfile profile = site.getProfile();
+            long start = profile != null ? profile.begin() : 0;
+            SlowFunctionCallEvent event = ExpressionEvents.beginCall();
+            double result = site.apply(first, second, third);
+            if (event != null) {
+                ExpressionEvents.commit(event, site, args.length);
+            }
+            if (profile != null) {
+                profile.end(args.length, start);
+            }
+            return result;
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            int length = frame.length;
+            reportCalls(length);
+            CallProfile profile = site.getProfile();
+            if (profile != null) {
+                profile.endBatch(args.length, length);
+            }
+            switch (args.length) {
+                case 0 -> {
+                    for (int i = 0; i < length; i++) dest[i] = site.apply(0, 0, 0);
+                }
+                case 1 -> {
+                    double[] a = args[0].column(frame);
+                    for (int i = 0; i < length; i++) dest[i] = site.apply(a[i], 0, 0);
+                }
+                case 2 -> {
+                    double[] a = args[0].column(frame);
+                    double[] b = args[1].column(frame);
+                    for (int i = 0; i < length; i++) dest[i] = site.apply(a[i], b[i], 0);
+                }
+                default -> {
+                    double[] a = args[0].column(frame);
+                    double[] b = args[1].column(frame);
+                    double[] c = args[2].column(frame);
+                    for (int i = 0; i < length; i++) dest[i] = site.apply(a[i], b[i], c[i]);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return site.getName() + Arrays.toString(args);
+        }
+    }
+
+    /**
+     * A call to a generic {@link FunctionCallSite}, its arguments are passed through the {@link ArgumentStack}
+     * of the frame, or as whole columns if the function has a {@link BatchFunction}.
+     */
+    static class VariadicCall extends Call {
+        final FunctionCallSite site;
+        final boolean asyncArgs;
+
+        VariadicCall(FunctionCallSite site, Node[] args, @Nullable ExpressionMetrics metrics) {
+            super(site, args, metrics);
+            this.site = site;
+            this.asyncArgs = anyAsync(args);
+        }
+
+        @Override
+        double call(double[] values, Frame frame) {
+            ArgumentStack stack = frame.arguments();
+            FunctionContext ctx = stack.open();
+            for (double value : values) {
+                ctx.add(value);
+            }
+            double result = invoke(ctx);
+            stack.close(ctx);
+            return result;
+        }
+
+        @Override
+        Call withArgs(Node[] args) {
+            return new VariadicCall(site, args, metrics);
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            if (!asyncArgs) return super.evaluateAsync(args, frame);
+            return evaluateAllAsync(this.args, args, frame).thenApply(values -> invoke(toContext(values)));
+        }
+
+        @Override
+        boolean isAsync() {
+            return asyncArgs;
+        }
+
+        /**
+         * Calls the function for a single row.
+         */
+        double invoke(FunctionContext ctx) {
+            reportCalls(1);
+            CallProfile profile = site.getProfile();
+            long start = profile != null ? profile.begin() : 0;
+            SlowFunctionCallEvent event = ExpressionEvents.beginCall();
+            double result = site.apply(ctx);
+            if (event != null) {
+                ExpressionEvents.commit(event, site, ctx.size());
+            }
+            if (profile != null) {
+                profile.end(ctx.size(), start);
+            }
+            return result;
+        }
+
+        FunctionContext toContext(double[] values) {
+            FunctionContext ctx = site.allocateParameters();
+            for (double value : values) {
+                ctx.add(value);
+            }
+            return ctx;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            frame.checkDeadline();
+            ArgumentStack stack = frame.arguments();
+            FunctionContext ctx = stack.open();
+            for (Node arg : this.args) {
+                double value = arg.evaluate(args, frame);
+                ctx.add(value);
+            }
+            double result = invoke(ctx);
+            stack.close(ctx);
+            return result;
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            ArgumentStack stack = frame.arguments();
+            FunctionContext ctx = stack.open();
+            for (Node arg : this.args) {
+                long value = arg.evaluateLong(args, frame);
+                ctx.add(value);
+            }
+            double result = invoke(ctx);
+            stack.close(ctx);
+            return Utility.requireLong(result);
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            frame.checkDeadline();
+            ArgumentStack stack = frame.arguments();
+            FunctionContext ctx = stack.open();
+            for (Node arg : this.args) {
+                double value = arg.evaluateDecimal(args, frame).toDouble();
+                ctx.add(value);
+            }
+            double result = invoke(ctx);
+            stack.close(ctx);
+            return Decimal.valueOf(result);
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            double[][] columns = new double[args.length][];
+            for (int i = 0; i < args.length; i++) {
+                columns[i] = args[i].column(frame);
+            }
+            reportCalls(frame.length);
+            CallProfile profile = site.getProfile();
+            if (profile != null) {
+                profile.endBatch(args.length, frame.length);
+            }
+
+            BatchFunction batchFunction = site.getBatchFunction();
+            if (batchFunction != null) {
+                batchFunction.apply(columns, frame.length, dest);
+                return;
+            }
+
+            // fall back to calling the scalar function for every row
+            ArgumentStack stack = frame.arguments();
+            for (int row = 0; row < frame.length; row++) {
+                FunctionContext ctx = stack.open();
+                for (double[] column : columns) {
+                    ctx.add(column[row]);
+                }
+                dest[row] = site.apply(ctx);
+                stack.close(ctx);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return site.getName() + Arrays.toString(args);
+        }
+    }
+
+    /**
+     * A call to an {@link AsyncFunctionCallSite}. When evaluated asynchronously, the function is started on the executor
+     * as soon as its arguments are known, without waiting for any other call.
+     * Otherwise, it blocks like any other variadic call.
+     */
+    static final class AsyncCall extends VariadicCall {
+        private final AsyncFunctionCallSite asyncSite;
+
+        AsyncCall(AsyncFunctionCallSite site, Node[] args, @Nullable ExpressionMetrics metrics) {
+            super(site, args, metrics);
+            this.asyncSite = site;
+        }
+
+        @Override
+        Call withArgs(Node[] args) {
+            return new AsyncCall(asyncSite, args, metrics);
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            CompletableFuture<double[]> values;
+            if (asyncArgs) {
+                values = evaluateAllAsync(this.args, args, frame);
+            } else {
+                double[] known = new double[this.args.length];
+                for (int i = 0; i < known.length; i++) {
+                    known[i] = this.args[i].evaluate(args, frame);
+                }
+                values = CompletableFuture.completedFuture(known);
+            }
+            // started on the executor, a function that does its blocking work before returning does not hold up other calls
+            return values.thenComposeAsync(known -> {
+                reportCalls(1);
+                return asyncSite.applyAsync(toContext(known));
+            }, frame.executor);
+        }
+
+        @Override
+        boolean isAsync() {
+            return true;
+        }
+    }
+
+    /**
+     * A node evaluating some of the children of another node in parallel, when evaluated for a single row.
+     * Everything else is delegated to the sequential node.
+     */
+    abstract static class Forking extends Node {
+        final Node sequential;
+
+        Forking(Node sequential) {
+            this.sequential = sequential;
+        }
+
+        @Override
+        void evaluateBatch(BatchFrame frame, double[] dest) {
+            sequential.evaluateBatch(frame, dest);
+        }
+
+        @Override
+        long evaluateLong(long[] args, Frame frame) {
+            return sequential.evaluateLong(args, frame);
+        }
+
+        @Override
+        Decimal evaluateDecimal(Decimal[] args, DecimalFrame frame) {
+            return sequential.evaluateDecimal(args, frame);
+        }
+
+        @Override
+        Dual evaluateDual(double[] args, DualFrame frame) {
+            return sequential.evaluateDual(args, frame);
+        }
+
+        @Override
+        CompletableFuture<Double> evaluateAsync(double[] args, AsyncFrame frame) {
+            return sequential.evaluateAsync(args, frame);
+        }
+
+        @Override
+        boolean isAsync() {
+            return sequential.isAsync();
+        }
+
+        @Override
+        Node[] children() {
+            return sequential.children();
+        }
+
+        @Override
+        long cost() {
+            return sequential.cost();
+        }
+
+        @Override
+        public String toString() {
+            return sequential.toString();
+        }
+    }
+
+    /**
+     * A binary operation whose operands are both expensive, the left one is forked while the right one is evaluated.
+     */
+    static final class ParallelBinary extends Forking {
+        private final Binary binary;
+
+        ParallelBinary(Binary binary) {
+            super(binary);
+            this.binary = binary;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            Subtree left = new Subtree(binary.left, args, ((ForkFrame) frame).fork());
+            left.fork();
+            double right;
+            try {
+                right = binary.right.evaluate(args, frame);
+            } catch (RuntimeException | Error e) {
+                left.abandon();
+                throw e;
+            }
+            left.join();
+            return binary.apply(left.result, right);
+        }
+    }
+
+    /**
+     * A function call with at least two expensive arguments, all but the last of those are forked,
+     * the cheap arguments and the last expensive one are evaluated on the current thread meanwhile.
+     */
+    static final class ParallelCall extends Forking {
+        private final Call call;
+        private final boolean[] forked;
+
+        ParallelCall(Call call, long threshold) {
+            super(call);
+            this.call = call;
+            this.forked = new boolean[call.args.length];
+
+            int lastExpensive = -1;
+            for (int i = 0; i < forked.length; i++) {
+                if (call.args[i].cost() >= threshold) {
+                    forked[i] = true;
+                    lastExpensive = i;
+                }
+            }
+            forked[lastExpensive] = false;
+        }
+
+        @Override
+        double evaluate(double[] args, Frame frame) {
+            frame.checkDeadline();
+            Node[] nodes = call.args;
+            Subtree[] tasks = new Subtree[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                if (forked[i]) {
+                    tasks[i] = new Subtree(nodes[i], args, ((ForkFrame) frame).fork());
+                    tasks[i].fork();
+                }
+            }
+
+            double[] values = new double[nodes.length];
+            try {
+                for (int i = 0; i < nodes.length; i++) {
+                    if (!forked[i]) {
+                        values[i] = nodes[i].evaluate(args, frame);
+                    }
+                }
+                for (int i = 0; i < nodes.length; i++) {
+                    if (forked[i]) {
+                        tasks[i].join();
+                        values[i] = tasks[i].result;
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                // in reverse, so the tasks can be taken out of the queue in the order they were pushed
+                for (int i = tasks.length - 1; i >= 0; i--) {
+                    if (tasks[i] != null) {
+                        tasks[i].abandon();
+                    }
+                }
+                throw e;
+            }
+            return call.call(values, frame);
+        }
+    }
+
+    /**
+     * Evaluates a subtree as a fork join task, stores the result as a primitive to avoid boxing.
+     */
+    static final class Subtree extends RecursiveAction {
+        private final Node node;
+        private final double[] args;
+        private final Frame frame;
+        double result;
+
+        Subtree(Node node, double[] args, Frame frame) {
+            this.node = node;
+            this.args = args;
+            this.frame = frame;
+        }
+
+        @Override
+        protected void compute() {
+            result = node.evaluate(args, frame);
+        }
+
+        /**
+         * Called when the evaluation failed elsewhere, so this task does not outlive the evaluation it belongs to.
+         * A task still in the queue of this thread is taken out again, any other one is waited for, its outcome is ignored.
+         */
+        void abandon() {
+            if (!tryUnfork()) {
+                quietlyJoin();
+            }
+        }
+    }
+}
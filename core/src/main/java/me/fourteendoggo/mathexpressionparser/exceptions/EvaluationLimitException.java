@@ -0,0 +1,42 @@
+package me.fourteendoggo.mathexpressionparser.exceptions;
+
+import java.math.BigDecimal;
+
+/**
+ * Thrown when an evaluation exceeds one of its {@link me.fourteendoggo.mathexpressionparser.EvaluationLimits}.
+ * This is not a {@link SyntaxException}, the expression itself may be perfectly valid.
+ * <p>
+ * This exception has no stack trace, it is thrown on purpose and is expected to be common when evaluating
+ * expressions from untrusted sources, filling one in would only make aborting more expensive.
+ */
+public class EvaluationLimitException extends RuntimeException {
+    private final Limit limit;
+
+    public EvaluationLimitException(Limit limit, String message, Object... placeholders) {
+        super(message.formatted(placeholders), null, false, false);
+        this.limit = limit;
+    }
+
+    /**
+     * Creates the exception for an evaluation which did not complete within its timeout.
+     * The timeout is printed in milliseconds, with as many decimals as needed, so sub-millisecond timeouts do not read as 0ms.
+     */
+    public static EvaluationLimitException deadlineExceeded(long timeoutNanos) {
+        String millis = BigDecimal.valueOf(timeoutNanos, 6).stripTrailingZeros().toPlainString();
+        return new EvaluationLimitException(Limit.DEADLINE, "evaluation exceeded its timeout of %sms", millis);
+    }
+
+    /**
+     * @return the limit that was exceeded
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    public enum Limit {
+        OPERATIONS,
+        CALLS,
+        DEPTH,
+        DEADLINE
+    }
+}
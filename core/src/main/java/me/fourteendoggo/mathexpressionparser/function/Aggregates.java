@@ -0,0 +1,239 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.utils.Assert;
+
+import java.util.Arrays;
+
+/**
+ * Reduction kernels for variadic functions, which run directly over a range of a {@code double[]}.
+ * The {@link FunctionContext} overloads run over the argument buffer of the call itself,
+ * so they skip the bounds check {@link FunctionContext#getDouble(int)} does for every element.
+ * <p>
+ * Sums are compensated (Neumaier's variant of Kahan summation), so they do not lose precision on long
+ * argument lists or on values with very different magnitudes. Percentiles use quickselect instead of sorting.
+ * <p>
+ * All kernels propagate {@code NaN}.
+ */
+public final class Aggregates {
+    // independent accumulators in min/max, so the loop is not bound by the latency of one dependency chain
+    // and the JIT can turn it into a vectorized reduction
+    private static final int LANES = 4;
+
+    private Aggregates() {}
+
+    /**
+     * @return the compensated sum of all arguments
+     */
+    public static double sum(FunctionContext ctx) {
+        return sum(ctx.values(), ctx.start(), ctx.end());
+    }
+
+    /**
+     * @return the compensated sum of {@code values[from]} to {@code values[to - 1]}
+     */
+    public static double sum(double[] values, int from, int to) {
+        double sum = 0;
+        double compensation = 0;
+        for (int i = from; i < to; i++) {
+            double value = values[i];
+            double t = sum + value;
+            // recover the low order bits which were lost in t, from whichever operand was the smallest
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+        }
+        double result = sum + compensation;
+        // the compensation of an infinite sum is NaN, while the sum itself is the right answer
+        return Double.isInfinite(sum) ? sum : result;
+    }
+
+    /**
+     * @return the arithmetic mean of all arguments
+     */
+    public static double average(FunctionContext ctx) {
+        return average(ctx.values(), ctx.start(), ctx.end());
+    }
+
+    public static double average(double[] values, int from, int to) {
+        return sum(values, from, to) / (to - from);
+    }
+
+    /**
+     * @return the smallest argument
+     */
+    public static double min(FunctionContext ctx) {
+        return min(ctx.values(), ctx.start(), ctx.end());
+    }
+
+    public static double min(double[] values, int from, int to) {
+        Assert.isTrue(to > from, "min requires at least one value");
+        double m0 = values[from], m1 = m0, m2 = m0, m3 = m0;
+        int i = from;
+        for (int bound = to - LANES + 1; i < bound; i += LANES) {
+            m0 = Math.min(m0, values[i]);
+            m1 = Math.min(m1, values[i + 1]);
+            m2 = Math.min(m2, values[i + 2]);
+            m3 = Math.min(m3, values[i + 3]);
+        }
+        for (; i < to; i++) {
+            m0 = Math.min(m0, values[i]);
+        }
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    /**
+     * @return the largest argument
+     */
+    public static double max(FunctionContext ctx) {
+        return max(ctx.values(), ctx.start(), ctx.end());
+    }
+
+    public static double max(double[] values, int from, int to) {
+        Assert.isTrue(to > from, "max requires at least one value");
+        double m0 = values[from], m1 = m0, m2 = m0, m3 = m0;
+        int i = from;
+        for (int bound = to - LANES + 1; i < bound; i += LANES) {
+            m0 = Math.max(m0, values[i]);
+            m1 = Math.max(m1, values[i + 1]);
+            m2 = Math.max(m2, values[i + 2]);
+            m3 = Math.max(m3, values[i + 3]);
+        }
+        for (; i < to; i++) {
+            m0 = Math.max(m0, values[i]);
+        }
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    /**
+     * @return the population variance of all arguments
+     */
+    public static double variance(FunctionContext ctx) {
+        return variance(ctx.values(), ctx.start(), ctx.end());
+    }
+
+    /**
+     * Computes the population variance with the corrected two-pass algorithm,
+     * which does not suffer from the cancellation of the textbook {@code E[x²] - E[x]²} formula.
+     */
+    public static double variance(double[] values, int from, int to) {
+        int n = to - from;
+        Assert.isTrue(n > 0, "variance requires at least one value");
+        double mean = average(values, from, to);
+        double squares = 0;
+        // sums to zero in exact arithmetic, corrects the rounding error of the mean
+        double deviations = 0;
+        for (int i = from; i < to; i++) {
+            double deviation = values[i] - mean;
+            squares += deviation * deviation;
+            deviations += deviation;
+        }
+        return Math.max(0, (squares - deviations * deviations / n) / n);
+    }
+
+    /**
+     * @return the population standard deviation of all arguments
+     */
+    public static double stddev(FunctionContext ctx) {
+        return Math.sqrt(variance(ctx));
+    }
+
+    public static double stddev(double[] values, int from, int to) {
+        return Math.sqrt(variance(values, from, to));
+    }
+
+    /**
+     * Computes the median of all arguments.
+     * @see #percentile(double[], int, int, double)
+     */
+    public static double median(FunctionContext ctx) {
+        return percentile(ctx.values(), ctx.start(), ctx.end(), 50);
+    }
+
+    /**
+     * Computes a percentile of all arguments, except the first one, which is the percentile itself.
+     * @see #percentile(double[], int, int, double)
+     */
+    public static double percentile(FunctionContext ctx) {
+        double percentile = ctx.getBoundedDouble(0, 0, 100);
+        return percentile(ctx.values(), ctx.start() + 1, ctx.end(), percentile);
+    }
+
+    /**
+     * Computes a percentile by linear interpolation between the two closest ranks,
+     * the same definition spreadsheet applications use for {@code PERCENTILE}.
+     * The values are copied, the given array is not reordered.
+     *
+     * @param percentile the percentile to compute, between 0 and 100
+     * @return the percentile, or {@code NaN} if any of the values is {@code NaN}
+     */
+    public static double percentile(double[] values, int from, int to, double percentile) {
+        int n = to - from;
+        Assert.isTrue(n > 0, "percentile requires at least one value");
+        if (!(percentile >= 0 && percentile <= 100)) { // not using Assert directly, that would box the percentile on every call
+            throw new SyntaxException("percentile must be between 0 and 100, got %s", percentile);
+        }
+
+        double[] copy = Arrays.copyOfRange(values, from, to);
+        for (double value : copy) {
+            if (Double.isNaN(value)) { // would break the ordering that selection relies on
+                return Double.NaN;
+            }
+        }
+        double rank = percentile / 100 * (n - 1);
+        int lower = (int) rank;
+        double lowerValue = select(copy, lower);
+        double fraction = rank - lower;
+        if (fraction == 0) {
+            return lowerValue;
+        }
+        // select() partitioned the array around lower, so the next rank is the minimum of what comes after it
+        double upperValue = min(copy, lower + 1, n);
+        return lowerValue + fraction * (upperValue - lowerValue);
+    }
+
+    /**
+     * Finds the k-th smallest element with quickselect, using a median of three pivot.
+     * Afterwards, everything before {@code k} is smaller than or equal to it, and everything after it is larger or equal.
+     */
+    static double select(double[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+        while (right > left) {
+            int mid = (left + right) >>> 1;
+            // order left, mid and right, so the pivot is the median of the three
+            if (values[mid] < values[left]) swap(values, left, mid);
+            if (values[right] < values[left]) swap(values, left, right);
+            if (values[right] < values[mid]) swap(values, mid, right);
+            double pivot = values[mid];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+            // j < i now, [left, j] <= pivot, [i, right] >= pivot and anything in between equals the pivot
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+}
@@ -0,0 +1,113 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Arrays;
+
+/**
+ * A primitive stack holding the arguments of all function calls of one evaluation.
+ * Every pending function call gets a window on top of the stack, exposed to the function as a {@link FunctionContext}.
+ * Because nested calls are always completed before their caller continues reading arguments,
+ * the windows never overlap and the stack only grows as deep as the widest chain of nested calls.
+ * <p>
+ * {@link FunctionContext} views are reused per nesting depth, so in the steady state a function call allocates nothing.
+ */
+@ApiStatus.Internal
+public final class ArgumentStack {
+    private double[] values;
+    private FunctionContext[] views = new FunctionContext[4];
+    // number of views currently open
+    private int depth;
+    // per number of open views, the state of calls that evaluate on this stack, see getCallState
+    private Object[] callStates = new Object[4];
+    // the evaluation this stack belongs to, if it is shared with calls evaluating on this stack
+    private EvaluationScope scope;
+
+    public ArgumentStack() {
+        this(32);
+    }
+
+    public ArgumentStack(int initialCapacity) {
+        values = new double[initialCapacity];
+    }
+
+    /**
+     * Opens a new, empty window on top of the stack, for the arguments of one function call.
+     * Arguments must be added to the returned context before another one is opened.
+     *
+     * @return a view over the new window, only valid until {@link #close(FunctionContext)}.
+     */
+    public FunctionContext open() {
+        int offset = depth > 0 ? views[depth - 1].end() : 0;
+
+        if (depth == views.length) {
+            views = Arrays.copyOf(views, depth * 2);
+        }
+        FunctionContext view = views[depth];
+        if (view == null) {
+            view = views[depth] = new FunctionContext(this);
+        }
+        depth++;
+        view.open(offset);
+        return view;
+    }
+
+    /**
+     * Closes the topmost window, its arguments are discarded and the view must not be used anymore.
+     */
+    public void close(FunctionContext view) {
+        assert depth > 0 && views[depth - 1] == view : "function contexts must be closed in reverse order of opening";
+        view.release();
+        depth--;
+    }
+
+    /**
+     * Returns the state stored by a call with the same number of open windows, f.e. by a user-defined function
+     * evaluating its body. Like the views, it is reused by later calls at the same nesting depth,
+     * so such a call does not need to allocate its state every time.
+     *
+     * @return the state, or null if none was stored yet
+     */
+    public Object getCallState() {
+        return depth < callStates.length ? callStates[depth] : null;
+    }
+
+    /**
+     * @see #getCallState()
+     */
+    public void setCallState(Object state) {
+        if (depth >= callStates.length) {
+            callStates = Arrays.copyOf(callStates, Math.max(depth + 1, callStates.length * 2));
+        }
+        callStates[depth] = state;
+    }
+
+    /**
+     * @return the evaluation this stack belongs to, or null if not set
+     */
+    public EvaluationScope getScope() {
+        return scope;
+    }
+
+    public void setScope(EvaluationScope scope) {
+        this.scope = scope;
+    }
+
+    double get(int idx) {
+        return values[idx];
+    }
+
+    void set(int idx, double value) {
+        if (idx >= values.length) {
+            values = Arrays.copyOf(values, Math.max(idx + 1, values.length * 2));
+        }
+        values[idx] = value;
+    }
+
+    /**
+     * Returns the backing array, only valid until the next {@link #set(int, double)}.
+     */
+    double[] values() {
+        return values;
+    }
+}
@@ -0,0 +1,20 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A function whose result becomes available later, f.e. because it reads from a store and would otherwise block.
+ *
+ * @see AsyncFunctionCallSite
+ */
+@FunctionalInterface
+public interface AsyncFunction {
+
+    /**
+     * Starts computing the result.
+     *
+     * @param ctx the arguments, which must be read before returning. The context is not valid anymore afterwards
+     * @return a future completing with the result of the function
+     */
+    CompletableFuture<Double> apply(FunctionContext ctx);
+}
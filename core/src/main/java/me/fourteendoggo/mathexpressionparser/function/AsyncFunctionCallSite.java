@@ -0,0 +1,48 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A {@link FunctionCallSite} whose function completes asynchronously.
+ * <p>
+ * When an expression is evaluated asynchronously,
+ * see {@link me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression#evaluateAsync(java.util.concurrent.Executor, double...)},
+ * all calls to async functions whose arguments are known are started at once, and the results are combined
+ * as they become available. Anywhere else, such as {@link me.fourteendoggo.mathexpressionparser.ExpressionParser#parse(String)},
+ * the caller blocks until the result is available.
+ */
+public class AsyncFunctionCallSite extends FunctionCallSite {
+    private final AsyncFunction function;
+
+    public AsyncFunctionCallSite(String name, int minArgs, int maxArgs, AsyncFunction function) {
+        super(name, minArgs, maxArgs, null);
+        this.function = Objects.requireNonNull(function, "function was null");
+    }
+
+    @Override
+    public AsyncFunctionCallSite copy() {
+        return copyStateTo(new AsyncFunctionCallSite(getName(), getMinArgs(), getMaxArgs(), function));
+    }
+
+    /**
+     * Starts the function without waiting for its result, the amount of arguments must have been checked already.
+     */
+    public CompletableFuture<Double> applyAsync(FunctionContext ctx) {
+        return function.apply(ctx);
+    }
+
+    @Override
+    protected double invoke(FunctionContext ctx) {
+        try {
+            return function.apply(ctx).join();
+        } catch (CompletionException e) {
+            // rethrow exceptions of the function itself, such as a SyntaxException for an invalid argument
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
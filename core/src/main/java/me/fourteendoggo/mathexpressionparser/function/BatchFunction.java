@@ -0,0 +1,22 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+/**
+ * An optional, vectorized implementation of a {@link FunctionCallSite}, used when an expression is evaluated
+ * over a batch of rows. It receives whole argument columns at once instead of one row at a time.
+ * When a function has no batch implementation, the scalar one is called for every row instead.
+ * <p>
+ * Implementations must produce the same results as the scalar function would, row by row.
+ */
+@FunctionalInterface
+public interface BatchFunction {
+
+    /**
+     * Applies the function to every row.
+     *
+     * @param args   one column per argument, each holding at least {@code length} values. Must not be modified,
+     *               these may be the caller's own input arrays.
+     * @param length the number of rows to process
+     * @param out    the column to write the results to, holding at least {@code length} values
+     */
+    void apply(double[][] args, int length, double[] out);
+}
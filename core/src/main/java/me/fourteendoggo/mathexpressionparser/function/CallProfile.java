@@ -0,0 +1,139 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Profiling counters of one function: how often it was called, with how many arguments, and how long calls took.
+ * Every call is counted, but only about one in {@value #SAMPLE_INTERVAL} calls is timed, so the total time is an estimate.
+ * All counters are {@link LongAdder}s, so calls from many threads at once do not contend.
+ * <p>
+ * A call is profiled as follows:
+ * <pre>{@code
+ * long start = profile.begin();
+ * double result = function.apply(ctx);
+ * profile.end(ctx.size(), start);
+ * }</pre>
+ *
+ * @see me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv#setProfiling(boolean)
+ */
+public final class CallProfile {
+    public static final int SAMPLE_INTERVAL = 64;
+    /**
+     * Calls with this many arguments or more are counted together.
+     */
+    public static final int MAX_TRACKED_ARGS = 8;
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] argumentCounts = new LongAdder[MAX_TRACKED_ARGS + 1];
+
+    public CallProfile() {
+        for (int i = 0; i < argumentCounts.length; i++) {
+            argumentCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Called right before the function is invoked.
+     *
+     * @return the value to pass to {@link #end(int, long)}
+     */
+    public long begin() {
+        // a random sample rather than every nth call, which could line up with a repeating pattern of calls
+        if ((ThreadLocalRandom.current().nextInt() & (SAMPLE_INTERVAL - 1)) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Called right after the function returned.
+     *
+     * @param arguments the amount of arguments it was called with
+     * @param start     the value returned by {@link #begin()}
+     */
+    public void end(int arguments, long start) {
+        invocations.increment();
+        argumentCounts[Math.min(arguments, MAX_TRACKED_ARGS)].increment();
+        if (start != NOT_SAMPLED) {
+            long nanos = System.nanoTime() - start;
+            samples.increment();
+            sampledNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+
+    /**
+     * Counts a batch of calls without timing them, f.e. when a batch function processed a whole column.
+     */
+    public void endBatch(int arguments, int rows) {
+        invocations.add(rows);
+        argumentCounts[Math.min(arguments, MAX_TRACKED_ARGS)].add(rows);
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    /**
+     * @return the amount of calls that were timed
+     */
+    public long getSamples() {
+        return samples.sum();
+    }
+
+    /**
+     * @return the mean duration of the timed calls, 0 if no call was timed yet
+     */
+    public double getMeanNanos() {
+        long samples = getSamples();
+        return samples == 0 ? 0 : (double) sampledNanos.sum() / samples;
+    }
+
+    /**
+     * @return the estimated time spent in all calls, the mean duration of the timed calls times the invocation count
+     */
+    public long getTotalNanos() {
+        return (long) (getMeanNanos() * getInvocations());
+    }
+
+    /**
+     * @return the longest duration of the timed calls
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the amount of calls per argument count, the last element counts calls with
+     * {@value #MAX_TRACKED_ARGS} or more arguments
+     */
+    public long[] getArgumentCounts() {
+        long[] counts = new long[argumentCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = argumentCounts[i].sum();
+        }
+        return counts;
+    }
+
+    public void reset() {
+        invocations.reset();
+        samples.reset();
+        sampledNanos.reset();
+        maxNanos.reset();
+        for (LongAdder count : argumentCounts) {
+            count.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CallProfile{invocations=%s, samples=%s, meanNanos=%.0f, maxNanos=%s}".formatted(
+                getInvocations(), getSamples(), getMeanNanos(), getMaxNanos());
+    }
+}
@@ -0,0 +1,16 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+/**
+ * The partial derivatives of a {@link FunctionCallSite}, used to differentiate compiled expressions calling it.
+ * See {@link me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression#evaluateGradient(double[], double...)}.
+ */
+@FunctionalInterface
+public interface Derivative {
+
+    /**
+     * @param args  the values of all arguments of the call, must not be modified
+     * @param index the index of the argument to differentiate with respect to
+     * @return the partial derivative of the function at the given arguments, with respect to that argument
+     */
+    double partial(double[] args, int index);
+}
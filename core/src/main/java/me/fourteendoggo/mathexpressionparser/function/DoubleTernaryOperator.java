@@ -0,0 +1,11 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+/**
+ * Represents an operation upon three {@code double}-valued operands and producing a {@code double}-valued result.
+ * This is the three-arity specialization of {@link java.util.function.DoubleBinaryOperator}.
+ */
+@FunctionalInterface
+public interface DoubleTernaryOperator {
+
+    double applyAsDouble(double first, double second, double third);
+}
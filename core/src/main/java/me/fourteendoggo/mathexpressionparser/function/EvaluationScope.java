@@ -0,0 +1,23 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * The state of the evaluation an {@link ArgumentStack} belongs to, shared with the bodies of user-defined functions
+ * the evaluation calls, so a body behaves as if it was written out in place of the call.
+ */
+@ApiStatus.Internal
+public interface EvaluationScope {
+    /**
+     * Returns the value of a lazy variable, invoking its supplier only the first time it is requested in this evaluation.
+     */
+    double resolve(LazyVariable variable);
+
+    /**
+     * Called before every function call in the body of a user-defined function.
+     *
+     * @throws me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException if the evaluation has a deadline which has passed
+     */
+    void checkDeadline();
+}
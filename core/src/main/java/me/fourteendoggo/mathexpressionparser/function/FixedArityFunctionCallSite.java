@@ -0,0 +1,113 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import java.util.Objects;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A {@link FunctionCallSite} that takes a fixed amount of up to three arguments.
+ * Arguments are passed straight to the underlying function through {@link #apply(double, double, double)},
+ * no {@link FunctionContext} is allocated and the arity is only checked once per call.
+ * <p>
+ * Invoking it via {@link #apply(FunctionContext)} is still supported.
+ */
+public abstract sealed class FixedArityFunctionCallSite extends FunctionCallSite {
+
+    private FixedArityFunctionCallSite(String name, int numArgs, Object function) {
+        super(name, numArgs, numArgs, null);
+        Objects.requireNonNull(function, "function was null");
+    }
+
+    /**
+     * Invokes the function with the given arguments, arguments beyond the arity of this function are ignored.
+     * The caller is responsible for checking the amount of arguments first.
+     */
+    public abstract double apply(double first, double second, double third);
+
+    @Override
+    protected double invoke(FunctionContext ctx) {
+        int size = ctx.size();
+        return apply(
+                size > 0 ? ctx.getDouble(0) : 0,
+                size > 1 ? ctx.getDouble(1) : 0,
+                size > 2 ? ctx.getDouble(2) : 0
+        );
+    }
+
+    public static final class Nullary extends FixedArityFunctionCallSite {
+        private final DoubleSupplier function;
+
+        public Nullary(String name, DoubleSupplier function) {
+            super(name, 0, function);
+            this.function = function;
+        }
+
+        @Override
+        public Nullary copy() {
+            return copyStateTo(new Nullary(getName(), function));
+        }
+
+        @Override
+        public double apply(double first, double second, double third) {
+            return function.getAsDouble();
+        }
+    }
+
+    public static final class Unary extends FixedArityFunctionCallSite {
+        private final DoubleUnaryOperator function;
+
+        public Unary(String name, DoubleUnaryOperator function) {
+            super(name, 1, function);
+            this.function = function;
+        }
+
+        @Override
+        public Unary copy() {
+            return copyStateTo(new Unary(getName(), function));
+        }
+
+        @Override
+        public double apply(double first, double second, double third) {
+            return function.applyAsDouble(first);
+        }
+    }
+
+    public static final class Binary extends FixedArityFunctionCallSite {
+        private final DoubleBinaryOperator function;
+
+        public Binary(String name, DoubleBinaryOperator function) {
+            super(name, 2, function);
+            this.function = function;
+        }
+
+        @Override
+        public Binary copy() {
+            return copyStateTo(new Binary(getName(), function));
+        }
+
+        @Override
+        public double apply(double first, double second, double third) {
+            return function.applyAsDouble(first, second);
+        }
+    }
+
+    public static final class Ternary extends FixedArityFunctionCallSite {
+        private final DoubleTernaryOperator function;
+
+        public Ternary(String name, DoubleTernaryOperator function) {
+            super(name, 3, function);
+            this.function = function;
+        }
+
+        @Override
+        public Ternary copy() {
+            return copyStateTo(new Ternary(getName(), function));
+        }
+
+        @Override
+        public double apply(double first, double second, double third) {
+            return function.applyAsDouble(first, second, third);
+        }
+    }
+}
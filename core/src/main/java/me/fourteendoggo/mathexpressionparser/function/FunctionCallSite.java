@@ -1,8 +1,11 @@
 package me.fourteendoggo.mathexpressionparser.function;
 
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
 import me.fourteendoggo.mathexpressionparser.symbol.Symbol;
 import me.fourteendoggo.mathexpressionparser.symbol.SymbolType;
 import me.fourteendoggo.mathexpressionparser.utils.Assert;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.ToDoubleFunction;
 
@@ -11,17 +14,35 @@ import java.util.function.ToDoubleFunction;
  * Invocation happens via {@link #apply(FunctionContext)}.
  *
  * @see FunctionContext how to deal with parameters.
+ * @see FixedArityFunctionCallSite
  */
 public class FunctionCallSite implements Symbol {
     private final String name;
     private final int minArgs, maxArgs;
     private final ToDoubleFunction<FunctionContext> function;
+    @Nullable
+    private final BatchFunction batchFunction;
+    // read by threads compiling expressions
+    private volatile long costHint;
+    @Nullable
+    private Derivative derivative;
+    @Nullable
+    private CallProfile profile;
 
     public FunctionCallSite(String name, int numArgs, ToDoubleFunction<FunctionContext> function) {
         this(name, numArgs, numArgs, function);
     }
 
     public FunctionCallSite(String name, int minArgs, int maxArgs, ToDoubleFunction<FunctionContext> function) {
+        this(name, minArgs, maxArgs, function, null);
+    }
+
+    /**
+     * @param batchFunction an optional vectorized implementation, used when evaluating over a batch of rows.
+     * @see BatchFunction
+     */
+    public FunctionCallSite(String name, int minArgs, int maxArgs, ToDoubleFunction<FunctionContext> function,
+                            @Nullable BatchFunction batchFunction) {
         Assert.isValidIdentifierName(name);
         Assert.isTrue(
                 minArgs >= 0 && maxArgs >= 0 && maxArgs >= minArgs,
@@ -31,6 +52,7 @@ public class FunctionCallSite implements Symbol {
         this.minArgs = minArgs;
         this.maxArgs = maxArgs;
         this.function = function;
+        this.batchFunction = batchFunction;
     }
 
     @Override
@@ -43,20 +65,126 @@ public class FunctionCallSite implements Symbol {
         return name;
     }
 
+    public int getMinArgs() {
+        return minArgs;
+    }
+
+    public int getMaxArgs() {
+        return maxArgs;
+    }
+
+    /**
+     * @return the vectorized implementation of this function, or null if it has none.
+     */
+    @Nullable
+    public BatchFunction getBatchFunction() {
+        return batchFunction;
+    }
+
+    /**
+     * @return the estimated cost of one call in nanoseconds, 0 if unknown.
+     */
+    public long getCostHint() {
+        return costHint;
+    }
+
+    /**
+     * Hints how expensive one call of this function is, ignoring the cost of its arguments.
+     * Used to decide whether arguments are worth evaluating in parallel,
+     * see {@link me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression#parallel(java.util.concurrent.ForkJoinPool, long)}.
+     * Must be set before expressions calling this function are compiled.
+     *
+     * @param nanos the estimated cost in nanoseconds
+     */
+    public void setCostHint(long nanos) {
+        Assert.isTrue(nanos >= 0, "cost hint must be >= 0");
+        this.costHint = nanos;
+    }
+
+    /**
+     * @return the partial derivatives of this function, or null if it has none.
+     */
+    @Nullable
+    public Derivative getDerivative() {
+        return derivative;
+    }
+
+    /**
+     * Sets the partial derivatives of this function, so compiled expressions calling it can be differentiated.
+     *
+     * @param derivative the derivative, or null to remove it
+     * @see me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression#evaluateGradient(double[], double...)
+     */
+    public void setDerivative(@Nullable Derivative derivative) {
+        this.derivative = derivative;
+    }
+
+    /**
+     * @return the profile calls of this function are recorded in, or null if it is not profiled.
+     */
+    @Nullable
+    public CallProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @param profile the profile to record calls in, or null to stop profiling
+     * @see me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv#setProfiling(boolean)
+     */
+    public void setProfile(@Nullable CallProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Creates a call site invoking the same function, with the same cost hint and derivative but without a profile.
+     * Used to modify a builtin function for a single environment, without affecting the shared one.
+     * Subclasses must override this to return an instance of their own type.
+     */
+    @ApiStatus.Internal
+    public FunctionCallSite copy() {
+        return copyStateTo(new FunctionCallSite(name, minArgs, maxArgs, function, batchFunction));
+    }
+
+    protected <T extends FunctionCallSite> T copyStateTo(T copy) {
+        copy.setCostHint(costHint);
+        copy.setDerivative(derivative);
+        return copy;
+    }
+
     public boolean supportsArgs() {
         return maxArgs > 0;
     }
 
+    /**
+     * Checks whether this function can be called with the given amount of arguments.
+     *
+     * @throws SyntaxException if too few or too many arguments are provided.
+     */
+    @ApiStatus.Internal
+    public void checkArity(int providedArgs) {
+        // not using Assert here, that would box the placeholders on every call
+        if (providedArgs < minArgs) {
+            throw new SyntaxException("not enough arguments provided (expected %s, got %s)", minArgs, providedArgs);
+        }
+        if (providedArgs > maxArgs) {
+            throw new SyntaxException("too many arguments provided (max %s, got %s)", maxArgs, providedArgs);
+        }
+    }
+
     public FunctionContext allocateParameters() {
         return new FunctionContext();
     }
 
     // TODO: make this return Operand
     public double apply(FunctionContext ctx) {
-        int providedArgs = ctx.size();
-        Assert.isFalse(providedArgs < minArgs, "not enough arguments provided (expected %s, got %s)", minArgs, providedArgs);
-        Assert.isFalse(providedArgs > maxArgs, "too many arguments provided (max %s, got %s)", maxArgs, providedArgs);
+        checkArity(ctx.size());
+        return invoke(ctx);
+    }
 
+    /**
+     * Invokes the function, the amount of arguments has already been checked.
+     */
+    protected double invoke(FunctionContext ctx) {
         return function.applyAsDouble(ctx);
     }
 
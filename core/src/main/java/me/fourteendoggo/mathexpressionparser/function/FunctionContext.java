@@ -3,6 +3,7 @@ package me.fourteendoggo.mathexpressionparser.function;
 import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
 import me.fourteendoggo.mathexpressionparser.utils.Assert;
 import me.fourteendoggo.mathexpressionparser.utils.Utility;
+import org.jetbrains.annotations.ApiStatus;
 
 import java.util.Arrays;
 import java.util.stream.DoubleStream;
@@ -10,10 +11,16 @@ import java.util.stream.DoubleStream;
 // FIXME: implement PrimitiveIterator.OfDouble maybe?
 /**
  * A class that provides parameters for a {@link FunctionCallSite}. Acts as an array of doubles.
+ * <p>
+ * During evaluation, this is a view over a window of the {@link ArgumentStack} of that evaluation,
+ * which is reused for later function calls. A function must therefore not retain its context after returning,
+ * doing so fails fast when assertions are enabled.
  */
 public class FunctionContext {
-    private double[] parameters;
+    private final ArgumentStack stack;
+    private int offset;
     private int size;
+    private boolean open;
 
     /**
      * @see #FunctionContext(int)
@@ -23,34 +30,73 @@ public class FunctionContext {
     }
 
     /**
-     * Creates a new FunctionContext with a given initial capacity for holding parameters
+     * Creates a new standalone FunctionContext with a given initial capacity for holding parameters
      * @param initialCapacity the initial capacity
      */
     FunctionContext(int initialCapacity) {
-        parameters = new double[initialCapacity];
+        this(new ArgumentStack(initialCapacity));
+        open = true;
+    }
+
+    /**
+     * Creates a view over the given stack, which is opened by {@link ArgumentStack#open()}.
+     */
+    FunctionContext(ArgumentStack stack) {
+        this.stack = stack;
+    }
+
+    /**
+     * @return the stack this context is a view over
+     */
+    @ApiStatus.Internal
+    public ArgumentStack getStack() {
+        return stack;
+    }
+
+    void open(int offset) {
+        this.offset = offset;
+        this.size = 0;
+        this.open = true;
+    }
+
+    void release() {
+        open = false;
+    }
+
+    /**
+     * @return the absolute index into the stack of the first parameter
+     */
+    int start() {
+        return offset;
+    }
+
+    /**
+     * @return the absolute index into the stack, directly after the last parameter
+     */
+    int end() {
+        return offset + size;
     }
 
     /**
      * @return the number of parameters in this context
      */
     public int size() {
+        assert open : "function context used after its function call returned";
         return size;
     }
 
     public boolean isEmpty() {
-        return size == 0;
+        return size() == 0;
     }
 
     /**
-     * Adds a parameter to this context, resizing the internal array if necessary.
+     * Adds a parameter to this context, resizing the underlying stack if necessary.
      * This should ideally only be called internally, and not to alter the actual parameters.
      * @param value the parameter to add
      */
     public void add(double value) {
-        if (size == parameters.length) {
-            parameters = Arrays.copyOf(parameters, size * 2 + 1);
-        }
-        parameters[size++] = value;
+        assert open : "function context used after its function call returned";
+        stack.set(offset + size++, value);
     }
 
     /**
@@ -143,22 +189,34 @@ public class FunctionContext {
      * associated {@link FunctionCallSite}, meaning this call is set up wrongly.
      */
     public double getDouble(int idx) {
-        Assert.indexWithinBounds(
-                idx, size, "index %s is out of bounds for size %s, function definition is set up incorrectly",
-                idx, size
-        );
-        return parameters[idx];
+        assert open : "function context used after its function call returned";
+        if (idx < 0 || idx >= size) { // not using Assert directly, that would box the placeholders on every call
+            Assert.indexWithinBounds(
+                    idx, size, "index %s is out of bounds for size %s, function definition is set up incorrectly",
+                    idx, size
+            );
+        }
+        return stack.get(offset + idx);
+    }
+
+    /**
+     * Returns the backing array of the stack, the parameters are located from {@link #start()} to {@link #end()}.
+     */
+    double[] values() {
+        assert open : "function context used after its function call returned";
+        return stack.values();
     }
 
     public DoubleStream stream() {
-        return Arrays.stream(parameters, 0, size);
+        assert open : "function context used after its function call returned";
+        return Arrays.stream(stack.values(), offset, offset + size);
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("[");
         for (int i = 0; i < size; i++) {
-            sb.append(parameters[i]);
+            sb.append(stack.get(offset + i));
             if (i != size - 1) {
                 sb.append(", ");
             }
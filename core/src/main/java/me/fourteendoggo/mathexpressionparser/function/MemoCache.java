@@ -0,0 +1,276 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionEvents;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionMetrics;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A bounded cache of the results of one pure function, keyed on its arguments.
+ * <p>
+ * The cache is a direct mapped table with a fixed power of two capacity: every argument tuple hashes to exactly
+ * one slot, and a new result simply replaces whatever was in that slot. Arguments are stored as raw doubles inside
+ * immutable entries, so looking up a result never boxes and a hit never allocates.
+ * Lookups and inserts take no locks, concurrent evaluations at worst recompute a result another thread just cached.
+ * <p>
+ * Arguments are compared by their bit patterns, so {@code NaN} matches {@code NaN} but {@code 0.0} does not match {@code -0.0}.
+ * A cache belongs to exactly one function, hit and miss counts are therefore per function.
+ *
+ * @see me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv#insertFunction(String, DoubleUnaryOperator, MemoCache)
+ */
+public final class MemoCache {
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    // racily published, entries are immutable so a thread either sees a complete entry or an older one
+    private final Entry[] table;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private String owner;
+    @Nullable
+    private ExpressionMetrics metrics;
+
+    /**
+     * @param capacity the maximum amount of cached results, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is not positive or too large
+     */
+    public MemoCache(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be between 1 and %s, got %s".formatted(MAX_CAPACITY, capacity));
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        table = new Entry[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Wraps the given function so its results are cached in this cache.
+     *
+     * @param name the name of the function, a cache can only be used by one function
+     * @throws IllegalArgumentException if this cache is already used by another function
+     */
+    public DoubleUnaryOperator memoize(String name, DoubleUnaryOperator fn) {
+        bind(name);
+        return x -> {
+            int slot = slot(hash(x, 0, 0, 1));
+            Entry entry = table[slot];
+            if (entry != null && entry.matches(x, 0, 0, 1)) {
+                hit();
+                return entry.value;
+            }
+            miss();
+            double value = fn.applyAsDouble(x);
+            store(slot, entry, new Entry(x, 0, 0, 1, null, value));
+            return value;
+        };
+    }
+
+    /**
+     * @see #memoize(String, DoubleUnaryOperator)
+     */
+    public DoubleBinaryOperator memoize(String name, DoubleBinaryOperator fn) {
+        bind(name);
+        return (a, b) -> {
+            int slot = slot(hash(a, b, 0, 2));
+            Entry entry = table[slot];
+            if (entry != null && entry.matches(a, b, 0, 2)) {
+                hit();
+                return entry.value;
+            }
+            miss();
+            double value = fn.applyAsDouble(a, b);
+            store(slot, entry, new Entry(a, b, 0, 2, null, value));
+            return value;
+        };
+    }
+
+    /**
+     * @see #memoize(String, DoubleUnaryOperator)
+     */
+    public DoubleTernaryOperator memoize(String name, DoubleTernaryOperator fn) {
+        bind(name);
+        return (a, b, c) -> {
+            int slot = slot(hash(a, b, c, 3));
+            Entry entry = table[slot];
+            if (entry != null && entry.matches(a, b, c, 3)) {
+                hit();
+                return entry.value;
+            }
+            miss();
+            double value = fn.applyAsDouble(a, b, c);
+            store(slot, entry, new Entry(a, b, c, 3, null, value));
+            return value;
+        };
+    }
+
+    /**
+     * Wraps a function taking a variable amount of arguments, the arguments are only copied when caching a new result.
+     *
+     * Named differently than the other overloads, so a lambda like {@code x -> x} is not ambiguous.
+     *
+     * @see #memoize(String, DoubleUnaryOperator)
+     */
+    public ToDoubleFunction<FunctionContext> memoizeVariadic(String name, ToDoubleFunction<FunctionContext> fn) {
+        bind(name);
+        return ctx -> {
+            int size = ctx.size();
+            long hash = size;
+            for (int i = 0; i < size; i++) {
+                hash = (hash + Double.doubleToLongBits(ctx.getDouble(i))) * GOLDEN_RATIO;
+            }
+            int slot = slot(hash);
+            Entry entry = table[slot];
+            if (entry != null && entry.matches(ctx)) {
+                hit();
+                return entry.value;
+            }
+            miss();
+            double value = fn.applyAsDouble(ctx);
+            double[] args = new double[size];
+            for (int i = 0; i < size; i++) {
+                args[i] = ctx.getDouble(i);
+            }
+            store(slot, entry, new Entry(0, 0, 0, size, args, value));
+            return value;
+        };
+    }
+
+    private synchronized void bind(String name) {
+        if (owner != null) {
+            throw new IllegalArgumentException("memo cache is already used by function " + owner);
+        }
+        owner = name;
+    }
+
+    /**
+     * Frees this cache again after inserting the function it memoized failed, or after that function was removed,
+     * called by the {@link me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv} the function was inserted into.
+     * The cached results are cleared, they do not belong to the next function using this cache.
+     *
+     * @param name the name the cache was bound to
+     */
+    @ApiStatus.Internal
+    public synchronized void unbind(String name) {
+        if (name.equals(owner)) {
+            owner = null;
+            clear();
+        }
+    }
+
+    /**
+     * Sets the metrics hits and misses are reported to, called by the {@link me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv}
+     * this cache is inserted into.
+     */
+    @ApiStatus.Internal
+    public void setMetrics(@Nullable ExpressionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private void store(int slot, Entry previous, Entry entry) {
+        table[slot] = entry;
+        if (previous != null) {
+            ExpressionEvents.cacheEviction(owner, table.length);
+        }
+    }
+
+    private void hit() {
+        hits.increment();
+        if (metrics != null) {
+            metrics.onCacheHit(owner);
+        }
+    }
+
+    private void miss() {
+        misses.increment();
+        if (metrics != null) {
+            metrics.onCacheMiss(owner);
+        }
+    }
+
+    private static long hash(double a, double b, double c, int arity) {
+        long hash = arity;
+        hash = (hash + Double.doubleToLongBits(a)) * GOLDEN_RATIO;
+        hash = (hash + Double.doubleToLongBits(b)) * GOLDEN_RATIO;
+        return (hash + Double.doubleToLongBits(c)) * GOLDEN_RATIO;
+    }
+
+    private int slot(long hash) {
+        // multiplying only carries bits upwards, while small doubles mostly differ in their upper bits,
+        // spread those over the lower bits with murmur3's finalizer
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    /**
+     * @return the amount of calls answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the amount of calls that invoked the underlying function
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of calls answered from the cache, or 0 if the function was not called yet
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int getCapacity() {
+        return table.length;
+    }
+
+    /**
+     * Removes all cached results and resets the statistics.
+     */
+    public void clear() {
+        Arrays.fill(table, null);
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "MemoCache{function=%s, capacity=%s, hits=%s, misses=%s}".formatted(owner, table.length, getHits(), getMisses());
+    }
+
+    /**
+     * A cached result, the arguments of fixed arity functions are stored inline, those of variadic functions in {@link #rest}.
+     */
+    private record Entry(double a, double b, double c, int arity, double[] rest, double value) {
+
+        boolean matches(double a, double b, double c, int arity) {
+            return this.arity == arity
+                    && Double.doubleToLongBits(this.a) == Double.doubleToLongBits(a)
+                    && Double.doubleToLongBits(this.b) == Double.doubleToLongBits(b)
+                    && Double.doubleToLongBits(this.c) == Double.doubleToLongBits(c);
+        }
+
+        boolean matches(FunctionContext ctx) {
+            if (rest == null || rest.length != ctx.size()) return false;
+            for (int i = 0; i < rest.length; i++) {
+                if (Double.doubleToLongBits(rest[i]) != Double.doubleToLongBits(ctx.getDouble(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a cached result of a memoized function being replaced by another one.
+ * Disabled by default.
+ *
+ * @see me.fourteendoggo.mathexpressionparser.function.MemoCache
+ */
+@Name("me.fourteendoggo.mathexpressionparser.CacheEviction")
+@Label("Memo Cache Eviction")
+@Category("Math Expression Parser")
+@Enabled(false)
+@StackTrace(false)
+public final class CacheEvictionEvent extends Event {
+    @Label("Function")
+    String function;
+
+    @Label("Capacity")
+    int capacity;
+}
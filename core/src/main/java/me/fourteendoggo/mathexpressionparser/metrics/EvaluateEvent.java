@@ -0,0 +1,42 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for evaluating an expression, either by parsing it or by evaluating a compiled expression.
+ * Disabled by default.
+ *
+ * @see ExpressionEvents
+ */
+@Name("me.fourteendoggo.mathexpressionparser.Evaluate")
+@Label("Expression Evaluate")
+@Category("Math Expression Parser")
+@Enabled(false)
+@StackTrace(false)
+public final class EvaluateEvent extends Event {
+    @Label("Source")
+    @Description("The expression, truncated to " + ExpressionEvents.MAX_SOURCE_LENGTH + " characters")
+    String source;
+
+    @Label("Source Hash")
+    int sourceHash;
+
+    @Label("Environment")
+    @Description("The identity hash code of the execution environment")
+    int environment;
+
+    @Label("Compiled")
+    @Description("Whether a compiled expression was evaluated, rather than one being parsed")
+    boolean compiled;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,148 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import jdk.jfr.FlightRecorder;
+import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Emits the flight recorder events of this library. They are all disabled by default, and can be enabled in a
+ * JFR configuration or on a recording, f.e. {@code recording.enable("me.fourteendoggo.mathexpressionparser.Evaluate")}.
+ * <p>
+ * Whether an event is enabled is checked on a static instance of it, so nothing is allocated while it is disabled.
+ * The {@code begin} methods return null in that case.
+ * Those instances are only created once the flight recorder is running, registering the event classes
+ * takes a large part of the startup time otherwise.
+ */
+@ApiStatus.Internal
+public final class ExpressionEvents {
+    static final int MAX_SOURCE_LENGTH = 128;
+
+    private ExpressionEvents() {
+    }
+
+    public static boolean isEvaluateEnabled() {
+        return FlightRecorder.isInitialized() && Probes.EVALUATE.isEnabled();
+    }
+
+    @Nullable
+    public static CompileEvent beginCompile() {
+        if (!FlightRecorder.isInitialized() || !Probes.COMPILE.isEnabled()) return null;
+        CompileEvent event = new CompileEvent();
+        event.allocated = Allocations.current();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param environment the identity hash code of the environment
+     */
+    public static void commit(CompileEvent event, String source, int environment) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = truncate(source);
+            event.sourceHash = source.hashCode();
+            event.environment = environment;
+            event.allocated = Allocations.since(event.allocated);
+            event.commit();
+        }
+    }
+
+    @Nullable
+    public static EvaluateEvent beginEvaluate() {
+        if (!isEvaluateEnabled()) return null;
+        EvaluateEvent event = new EvaluateEvent();
+        event.allocated = Allocations.current();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param environment the identity hash code of the environment
+     */
+    public static void commit(EvaluateEvent event, String source, int environment, boolean compiled) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = truncate(source);
+            event.sourceHash = source.hashCode();
+            event.environment = environment;
+            event.compiled = compiled;
+            event.allocated = Allocations.since(event.allocated);
+            event.commit();
+        }
+    }
+
+    @Nullable
+    public static SlowFunctionCallEvent beginCall() {
+        if (!FlightRecorder.isInitialized() || !Probes.SLOW_CALL.isEnabled()) return null;
+        SlowFunctionCallEvent event = new SlowFunctionCallEvent();
+        event.allocated = Allocations.current();
+        event.begin();
+        return event;
+    }
+
+    public static void commit(SlowFunctionCallEvent event, FunctionCallSite function, int arguments) {
+        event.end();
+        // only calls exceeding the threshold pass this check
+        if (event.shouldCommit()) {
+            event.function = function.getName();
+            event.arguments = arguments;
+            event.allocated = Allocations.since(event.allocated);
+            event.commit();
+        }
+    }
+
+    public static void cacheEviction(String function, int capacity) {
+        if (!FlightRecorder.isInitialized() || !Probes.CACHE_EVICTION.isEnabled()) return;
+        CacheEvictionEvent event = new CacheEvictionEvent();
+        event.function = function;
+        event.capacity = capacity;
+        event.commit();
+    }
+
+    private static String truncate(String source) {
+        return source.length() <= MAX_SOURCE_LENGTH ? source : source.substring(0, MAX_SOURCE_LENGTH - 3) + "...";
+    }
+
+    private static final class Probes {
+        private static final CompileEvent COMPILE = new CompileEvent();
+        private static final EvaluateEvent EVALUATE = new EvaluateEvent();
+        private static final SlowFunctionCallEvent SLOW_CALL = new SlowFunctionCallEvent();
+        private static final CacheEvictionEvent CACHE_EVICTION = new CacheEvictionEvent();
+    }
+
+    /**
+     * Measures the bytes allocated by the current thread, initialized only once an event is enabled
+     * so evaluations without recording do not load the management classes.
+     */
+    private static final class Allocations {
+        @Nullable
+        private static final com.sun.management.ThreadMXBean THREADS = lookup();
+
+        @Nullable
+        private static com.sun.management.ThreadMXBean lookup() {
+            try {
+                if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                        && threads.isThreadAllocatedMemorySupported()
+                        && threads.isThreadAllocatedMemoryEnabled()) {
+                    return threads;
+                }
+            } catch (LinkageError ignored) { // java.management is not available
+            }
+            return null;
+        }
+
+        static long current() {
+            return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+        }
+
+        /**
+         * @return the bytes allocated since the given measurement, or 0 if it could not be measured
+         */
+        static long since(long start) {
+            return THREADS != null ? Math.max(0, THREADS.getCurrentThreadAllocatedBytes() - start) : 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+
+/**
+ * Receives measurements of parsing, compiling and evaluating expressions, attached to an {@link ExecutionEnv}
+ * with {@link ExecutionEnv#setMetrics(ExpressionMetrics)}. Without one, measuring costs nothing but a null check.
+ * <p>
+ * Callbacks are invoked on the thread doing the work, in the middle of evaluations, so implementations must be
+ * thread safe and fast. All methods do nothing by default, see {@link MetricsRecorder} for an implementation.
+ */
+public interface ExpressionMetrics {
+
+    /**
+     * Called after an expression was parsed and evaluated by the tokenizer.
+     *
+     * @param nanos the wall clock time it took
+     */
+    default void onParse(long nanos) {}
+
+    /**
+     * Called after an expression was compiled.
+     *
+     * @param nanos the wall clock time it took
+     */
+    default void onCompile(long nanos) {}
+
+    /**
+     * Called after a compiled expression was evaluated for a single row of parameters.
+     *
+     * @param nanos the wall clock time it took
+     */
+    default void onEvaluate(long nanos) {}
+
+    /**
+     * Called when a function is invoked.
+     *
+     * @param function the function
+     * @param count    the number of invocations, more than one when evaluating a batch of rows
+     */
+    default void onFunctionCall(FunctionCallSite function, int count) {}
+
+    /**
+     * Called when a memoized function finds its result in its {@link me.fourteendoggo.mathexpressionparser.function.MemoCache}.
+     *
+     * @param function the name of the function
+     */
+    default void onCacheHit(String function) {}
+
+    /**
+     * Called when a memoized function has to compute its result.
+     *
+     * @param function the name of the function
+     */
+    default void onCacheMiss(String function) {}
+
+    /**
+     * Called when parsing, compiling or evaluating failed, right before the error is thrown to the caller.
+     *
+     * @param error the error, f.e. a {@link me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException}
+     */
+    default void onError(RuntimeException error) {}
+}
@@ -0,0 +1,145 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ExpressionMetrics} keeping everything in memory: latency histograms of parsing, compiling and evaluating,
+ * and counters of function calls, cache hits and misses and errors.
+ * All counters are {@link LongAdder}s, so recording from many threads at once does not contend.
+ * <p>
+ * Functions are counted by name, errors by their class.
+ */
+public final class MetricsRecorder implements ExpressionMetrics {
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram compileLatency = new LatencyHistogram();
+    private final LatencyHistogram evaluateLatency = new LatencyHistogram();
+    private final Map<String, LongAdder> functionCalls = new ConcurrentHashMap<>();
+    private final Map<Class<?>, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    @Override
+    public void onParse(long nanos) {
+        parseLatency.record(nanos);
+    }
+
+    @Override
+    public void onCompile(long nanos) {
+        compileLatency.record(nanos);
+    }
+
+    @Override
+    public void onEvaluate(long nanos) {
+        evaluateLatency.record(nanos);
+    }
+
+    @Override
+    public void onFunctionCall(FunctionCallSite function, int count) {
+        counter(functionCalls, function.getName()).add(count);
+    }
+
+    @Override
+    public void onCacheHit(String function) {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void onCacheMiss(String function) {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public void onError(RuntimeException error) {
+        counter(errors, error.getClass()).increment();
+    }
+
+    private static <K> LongAdder counter(Map<K, LongAdder> counters, K key) {
+        // a plain get does not lock, unlike computeIfAbsent on a present key
+        LongAdder counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    public LatencyHistogram getParseLatency() {
+        return parseLatency;
+    }
+
+    public LatencyHistogram getCompileLatency() {
+        return compileLatency;
+    }
+
+    public LatencyHistogram getEvaluateLatency() {
+        return evaluateLatency;
+    }
+
+    /**
+     * @return the amount of calls of the function with the given name
+     */
+    public long getFunctionCalls(String name) {
+        LongAdder counter = functionCalls.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return the amount of calls of every function called at least once, sorted by name
+     */
+    public Map<String, Long> getFunctionCalls() {
+        Map<String, Long> calls = new TreeMap<>();
+        functionCalls.forEach((name, counter) -> calls.put(name, counter.sum()));
+        return calls;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return the amount of errors of exactly the given class, subclasses are counted separately
+     */
+    public long getErrors(Class<? extends RuntimeException> kind) {
+        LongAdder counter = errors.get(kind);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return the amount of errors per kind, keyed by the simple name of their class
+     */
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new TreeMap<>();
+        errors.forEach((kind, counter) -> counts.merge(kind.getSimpleName(), counter.sum(), Long::sum));
+        return counts;
+    }
+
+    /**
+     * Resets all histograms and counters.
+     */
+    public void reset() {
+        parseLatency.reset();
+        compileLatency.reset();
+        evaluateLatency.reset();
+        functionCalls.clear();
+        errors.clear();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return """
+                parse:    %s
+                compile:  %s
+                evaluate: %s
+                function calls: %s
+                cache: hits=%s, misses=%s
+                errors: %s""".formatted(parseLatency, compileLatency, evaluateLatency, getFunctionCalls(),
+                getCacheHits(), getCacheMisses(), getErrors());
+    }
+}
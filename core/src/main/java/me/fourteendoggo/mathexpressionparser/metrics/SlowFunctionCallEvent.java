@@ -0,0 +1,32 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for a function call taking longer than the threshold, 1 ms by default.
+ * Disabled by default.
+ *
+ * @see ExpressionEvents
+ */
+@Name("me.fourteendoggo.mathexpressionparser.SlowFunctionCall")
+@Label("Slow Function Call")
+@Category("Math Expression Parser")
+@Enabled(false)
+@Threshold("1 ms")
+public final class SlowFunctionCallEvent extends Event {
+    @Label("Function")
+    String function;
+
+    @Label("Arguments")
+    int arguments;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
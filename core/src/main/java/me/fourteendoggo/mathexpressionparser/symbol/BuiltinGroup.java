@@ -0,0 +1,33 @@
+package me.fourteendoggo.mathexpressionparser.symbol;
+
+/**
+ * A group of builtin symbols, an {@link ExecutionEnv} can be created with only the groups it needs,
+ * see {@link ExecutionEnv#withBuiltins(BuiltinGroup...)}.
+ * The symbols of a group are only created the first time an environment containing it is requested.
+ */
+public enum BuiltinGroup {
+    /**
+     * sin, cos, tan, asin, acos, atan, sinh, cosh and tanh.
+     */
+    TRIGONOMETRY,
+    /**
+     * sqrt, cbrt, signum, pow, log, log10, rad, floor, ceil, abs, int, round, clamp, gcd and lcm.
+     */
+    MATH,
+    /**
+     * and, nand, or, xor, not, nor, xnor and bool.
+     */
+    BOOLEAN,
+    /**
+     * min, max, avg, sum, variance, stddev, median and percentile.
+     */
+    AGGREGATES,
+    /**
+     * The variables pi, e, tau, true and false.
+     */
+    CONSTANTS,
+    /**
+     * now and rand.
+     */
+    UTILITY
+}
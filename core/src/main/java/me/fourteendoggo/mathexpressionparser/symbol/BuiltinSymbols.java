@@ -1,23 +1,60 @@
 package me.fourteendoggo.mathexpressionparser.symbol;
 
 import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.Aggregates;
 import me.fourteendoggo.mathexpressionparser.utils.Assert;
 import me.fourteendoggo.mathexpressionparser.utils.Utility;
 
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A utility class used to create an {@link ExecutionEnv}, filled with all default functions.
+ * A utility class holding the builtin symbols, see {@link BuiltinGroup}.
+ * <p>
+ * For every combination of groups, the symbols are inserted into a {@link SymbolLookup} only once, the first time it is requested.
+ * That table is then shared by all environments created with those groups, without copying it.
+ * It must never be modified afterwards, {@link ExecutionEnv} copies a builtin function into its own lookup before changing it.
  */
 abstract class BuiltinSymbols {
+    private static final Map<Set<BuiltinGroup>, SymbolLookup> TABLES = new ConcurrentHashMap<>();
 
     /**
-     * @return an {@link ExecutionEnv}, filled with all default functions.
+     * @return the shared table containing all builtin symbols.
      */
-    static ExecutionEnv createExecutionEnv() {
+    static SymbolLookup defaultTable() {
+        return DefaultTableHolder.TABLE;
+    }
+
+    /**
+     * @return the shared table containing the symbols of the given groups, created if this is the first request for them.
+     */
+    static SymbolLookup table(Set<BuiltinGroup> groups) {
+        SymbolLookup table = TABLES.get(groups);
+        if (table != null) return table;
+        // copy the key, the caller might modify its set later
+        return TABLES.computeIfAbsent(EnumSet.copyOf(groups), BuiltinSymbols::createTable);
+    }
+
+    private static SymbolLookup createTable(Set<BuiltinGroup> groups) {
+        // fill a temporary environment so the usual insert helpers can be used, then keep its lookup
         ExecutionEnv env = ExecutionEnv.empty();
+        for (BuiltinGroup group : groups) {
+            switch (group) {
+                case TRIGONOMETRY -> insertTrigonometry(env);
+                case MATH -> insertMath(env);
+                case BOOLEAN -> insertBoolean(env);
+                case AGGREGATES -> insertAggregates(env);
+                case CONSTANTS -> insertConstants(env);
+                case UTILITY -> insertUtility(env);
+            }
+        }
+        return env.symbolLookup;
+    }
 
-        // trigonometric
+    private static void insertTrigonometry(ExecutionEnv env) {
         env.insertFunction("sin", Math::sin);
         env.insertFunction("cos", Math::cos);
         env.insertFunction("tan", Math::tan);
@@ -27,10 +64,22 @@ abstract class BuiltinSymbols {
         env.insertFunction("sinh", Math::sinh);
         env.insertFunction("cosh", Math::cosh);
         env.insertFunction("tanh", Math::tanh);
+
+        env.setDerivative("sin", Math::cos);
+        env.setDerivative("cos", x -> -Math.sin(x));
+        env.setDerivative("tan", x -> 1 / (Math.cos(x) * Math.cos(x)));
+        env.setDerivative("asin", x -> 1 / Math.sqrt(1 - x * x));
+        env.setDerivative("acos", x -> -1 / Math.sqrt(1 - x * x));
+        env.setDerivative("atan", x -> 1 / (1 + x * x));
+        env.setDerivative("sinh", Math::cosh);
+        env.setDerivative("cosh", Math::sinh);
+        env.setDerivative("tanh", x -> 1 - Math.tanh(x) * Math.tanh(x));
+    }
+
+    private static void insertMath(ExecutionEnv env) {
         env.insertFunction("sqrt", Math::sqrt);
         env.insertFunction("cbrt", Math::cbrt);
         env.insertFunction("signum", Math::signum);
-
         env.insertFunction("pow", Math::pow);
         env.insertFunction("log", Math::log);
         env.insertFunction("log10", Math::log10);
@@ -39,7 +88,55 @@ abstract class BuiltinSymbols {
         env.insertFunction("ceil", Math::ceil);
         env.insertFunction("abs", Math::abs);
         env.insertFunction("int", d -> (int) d);
-        // boolean
+        env.insertFunction("clamp", (value, min, max) -> {
+            Assert.isTrue(max >= min, "clamp: max must be greater than or equal to min");
+            return (value > max) ? max : Math.max(value, min);
+        });
+        env.insertFunction("round", 1, 2, ctx -> {
+            if (ctx.size() == 1) {
+                return Math.round(ctx.getDouble(0));
+            }
+            double value = ctx.getDouble(0);
+            int places = ctx.getInt(1);
+            double factor = Utility.getPowerOfTen(places);
+
+            return Math.round(value * factor) / factor;
+        });
+        env.insertFunction("gcd", 2, ctx -> {
+            int a = ctx.getInt(0);
+            int b = ctx.getInt(1);
+            return Utility.gcd(a, b);
+        });
+        env.insertFunction("lcm", 2, ctx -> {
+            int a = ctx.getInt(0);
+            int b = ctx.getInt(1);
+            return Utility.lcm(a, b);
+        });
+
+        env.setDerivative("sqrt", x -> 0.5 / Math.sqrt(x));
+        env.setDerivative("cbrt", x -> 1 / (3 * Math.cbrt(x) * Math.cbrt(x)));
+        env.setDerivative("pow", (args, index) -> index == 0
+                ? args[1] * Math.pow(args[0], args[1] - 1)
+                : Math.pow(args[0], args[1]) * Math.log(args[0]));
+        env.setDerivative("log", x -> 1 / x);
+        env.setDerivative("log10", x -> 1 / (x * Math.log(10)));
+        env.setDerivative("rad", x -> Math.PI / 180);
+        env.setDerivative("abs", Math::signum);
+        // piecewise constant
+        for (String name : new String[]{"signum", "floor", "ceil", "int", "round", "gcd", "lcm"}) {
+            env.setDerivative(name, (args, index) -> 0);
+        }
+        env.setDerivative("clamp", (args, index) -> {
+            double value = args[0], min = args[1], max = args[2];
+            return switch (index) {
+                case 0 -> value <= max && value >= min ? 1 : 0;
+                case 1 -> value <= max && value < min ? 1 : 0;
+                default -> value > max ? 1 : 0;
+            };
+        });
+    }
+
+    private static void insertBoolean(ExecutionEnv env) {
         env.insertFunction("and", Utility::boolAnd);
         env.insertFunction("nand", (a, b) -> a != 0 && b != 0 ? 0 : 1);
         env.insertFunction("or", Utility::boolOr);
@@ -50,67 +147,50 @@ abstract class BuiltinSymbols {
         // no idea what this one is useful for, doubles are already representable as booleans
         // maybe to transform a double to either 1 or 0
         env.insertFunction("bool", d -> d == 0 ? 0 : 1);
-        // time-related
-        env.insertFunction("now", () -> (double) System.currentTimeMillis()); // we are good for a while
-        // constants
+
+        // piecewise constant
+        for (String name : new String[]{"bool", "not", "and", "nand", "or", "xor", "nor", "xnor"}) {
+            env.setDerivative(name, (args, index) -> 0);
+        }
+    }
+
+    private static void insertAggregates(ExecutionEnv env) {
+        // theoretical limit of Integer.MAX_VALUE parameters
+        env.insertFunction("min", 2, Integer.MAX_VALUE, Aggregates::min);
+        env.insertFunction("max", 2, Integer.MAX_VALUE, Aggregates::max);
+        env.insertFunction("avg", 2, Integer.MAX_VALUE, Aggregates::average);
+        env.insertFunction("sum", 2, Integer.MAX_VALUE, Aggregates::sum);
+        env.insertFunction("variance", 1, Integer.MAX_VALUE, Aggregates::variance);
+        env.insertFunction("stddev", 1, Integer.MAX_VALUE, Aggregates::stddev);
+        env.insertFunction("median", 1, Integer.MAX_VALUE, Aggregates::median);
+        // percentile(p, values...), with p between 0 and 100
+        env.insertFunction("percentile", 2, Integer.MAX_VALUE, Aggregates::percentile);
+
+        // only the argument that is picked, the first one on ties
+        env.setDerivative("min", (args, index) -> indexOf(args, Aggregates.min(args, 0, args.length)) == index ? 1 : 0);
+        env.setDerivative("max", (args, index) -> indexOf(args, Aggregates.max(args, 0, args.length)) == index ? 1 : 0);
+        env.setDerivative("sum", (args, index) -> 1);
+        env.setDerivative("avg", (args, index) -> 1.0 / args.length);
+        env.setDerivative("variance", (args, index) -> {
+            double mean = Aggregates.average(args, 0, args.length);
+            return 2 * (args[index] - mean) / args.length;
+        });
+        env.setDerivative("stddev", (args, index) -> {
+            double mean = Aggregates.average(args, 0, args.length);
+            return (args[index] - mean) / (args.length * Aggregates.stddev(args, 0, args.length));
+        });
+    }
+
+    private static void insertConstants(ExecutionEnv env) {
         env.insertVariable("pi", Math.PI);
         env.insertVariable("e", Math.E);
         env.insertVariable("tau", 6.283185307179586);
         env.insertVariable("true", 1);
         env.insertVariable("false", 0);
+    }
 
-        // theoretical limit of Integer.MAX_VALUE parameters
-        env.insertFunction("min", 2, Integer.MAX_VALUE, ctx -> {
-            double min = ctx.getDouble(0);
-            for (int i = 1; i < ctx.size(); i++) {
-                double val = ctx.getDouble(i);
-                if (val < min) {
-                    min = val;
-                }
-            }
-            return min;
-        });
-        env.insertFunction("max", 2, Integer.MAX_VALUE, ctx -> {
-            double max = ctx.getDouble(0);
-            for (int i = 1; i < ctx.size(); i++) {
-                double val = ctx.getDouble(i);
-                if (val > max) {
-                    max = val;
-                }
-            }
-            return max;
-        });
-        env.insertFunction("clamp", 3, ctx -> {
-            double value = ctx.getDouble(0);
-            double min = ctx.getDouble(1);
-            double max = ctx.getDouble(2);
-            Assert.isTrue(max >= min, "clamp: max must be greater than or equal to min");
-            return (value > max) ? max : Math.max(value, min);
-        });
-        env.insertFunction("avg", 2, Integer.MAX_VALUE, ctx -> {
-            double sum = 0;
-            for (int i = 0; i < ctx.size(); i++) {
-                sum += ctx.getDouble(i);
-            }
-            return sum / ctx.size();
-        });
-        env.insertFunction("sum", 2, Integer.MAX_VALUE, ctx -> {
-            double sum = ctx.getDouble(0);
-            for (int i = 1; i < ctx.size(); i++) {
-                sum += ctx.getDouble(i);
-            }
-            return sum;
-        });
-        env.insertFunction("round", 1, 2, ctx -> {
-            if (ctx.size() == 1) {
-                return Math.round(ctx.getDouble(0));
-            }
-            double value = ctx.getDouble(0);
-            int places = ctx.getInt(1);
-            double factor = Utility.getPowerOfTen(places);
-
-            return Math.round(value * factor) / factor;
-        });
+    private static void insertUtility(ExecutionEnv env) {
+        env.insertFunction("now", () -> (double) System.currentTimeMillis()); // we are good for a while
         env.insertFunction("rand", 0, 2, ctx -> {
             try {
                 return switch (ctx.size()) {
@@ -123,18 +203,17 @@ abstract class BuiltinSymbols {
                 throw new SyntaxException(e.getMessage());
             }
         });
-        env.insertFunction("gcd", 2, ctx -> {
-            int a = ctx.getInt(0);
-            int b = ctx.getInt(1);
-            return Utility.gcd(a, b);
-        });
-        env.insertFunction("lcm", 2, ctx -> {
-            int a = ctx.getInt(0);
-            int b = ctx.getInt(1);
-            return Utility.lcm(a, b);
-        });
+    }
+
+    private static int indexOf(double[] values, double value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
 
-        return env;
+    private static class DefaultTableHolder {
+        private static final SymbolLookup TABLE = table(EnumSet.allOf(BuiltinGroup.class));
     }
 
     static class RandomHolder {
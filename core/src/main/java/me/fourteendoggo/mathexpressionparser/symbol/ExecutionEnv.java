@@ -1,12 +1,37 @@
 package me.fourteendoggo.mathexpressionparser.symbol;
 
+import me.fourteendoggo.mathexpressionparser.compiler.DefinedFunction;
+import me.fourteendoggo.mathexpressionparser.compiler.ExpressionCompiler;
 import me.fourteendoggo.mathexpressionparser.exceptions.SymbolNotFoundException;
 import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.AsyncFunction;
+import me.fourteendoggo.mathexpressionparser.function.AsyncFunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.function.BatchFunction;
+import me.fourteendoggo.mathexpressionparser.function.CallProfile;
+import me.fourteendoggo.mathexpressionparser.function.Derivative;
+import me.fourteendoggo.mathexpressionparser.function.DoubleTernaryOperator;
+import me.fourteendoggo.mathexpressionparser.function.FixedArityFunctionCallSite;
 import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
 import me.fourteendoggo.mathexpressionparser.function.FunctionContext;
+import me.fourteendoggo.mathexpressionparser.function.MemoCache;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionMetrics;
+import me.fourteendoggo.mathexpressionparser.utils.Utility;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.DoubleSupplier;
 import java.util.function.DoubleUnaryOperator;
@@ -22,9 +47,36 @@ public class ExecutionEnv {
     private static final Pattern INVERSE_IDENTIFIER_PATTERN = Pattern.compile("[^a-zA-Z_0-9]");
     @VisibleForTesting
     final SymbolLookup symbolLookup;
+    /**
+     * Read-only variables restored from a snapshot, consulted when {@link #symbolLookup} has no match.
+     */
+    @Nullable
+    private final SymbolSnapshot snapshot;
+    /**
+     * Builtin symbols shared with other environments, consulted when {@link #symbolLookup} has no match.
+     * Never modified, a builtin function is copied into {@link #symbolLookup} before it is changed.
+     */
+    @Nullable
+    private final SymbolLookup builtins;
+    /**
+     * Names of the builtins that were removed or copied into {@link #symbolLookup}, null until there are any.
+     */
+    @Nullable
+    private Set<String> hiddenBuiltins;
+    // by the name of the function they memoize
+    private final Map<String, MemoCache> memoCaches = new HashMap<>();
+    @Nullable
+    private ExpressionMetrics metrics;
+    private boolean profiling;
 
     private ExecutionEnv() {
-        symbolLookup = new SymbolLookup();
+        this(null, null);
+    }
+
+    private ExecutionEnv(@Nullable SymbolSnapshot snapshot, @Nullable SymbolLookup builtins) {
+        this.symbolLookup = new SymbolLookup();
+        this.snapshot = snapshot;
+        this.builtins = builtins;
     }
 
     /**
@@ -35,11 +87,62 @@ public class ExecutionEnv {
     }
 
     /**
+     * The default symbols are created once, and shared by all environments instead of being copied into each of them.
+     * Removing or modifying a default symbol only affects this environment.
+     *
      * @return a {@link ExecutionEnv} populated with all default symbols.
      */
     public static ExecutionEnv defaulted() {
         // delegate to BuiltinSymbols to not clutter up this class
-        return BuiltinSymbols.createExecutionEnv();
+        return new ExecutionEnv(null, BuiltinSymbols.defaultTable());
+    }
+
+    /**
+     * Creates an environment with only some groups of default symbols,
+     * the symbols of a group are not created until an environment containing it is requested.
+     *
+     * @param groups the groups to include
+     * @return a {@link ExecutionEnv} populated with the default symbols of the given groups.
+     * @see #defaulted()
+     */
+    public static ExecutionEnv withBuiltins(BuiltinGroup... groups) {
+        if (groups.length == 0) {
+            return empty();
+        }
+        return new ExecutionEnv(null, BuiltinSymbols.table(EnumSet.of(groups[0], groups)));
+    }
+
+    /**
+     * Restores an {@link ExecutionEnv} from a snapshot written by {@link #writeSnapshot(Path)}.
+     * The file is memory mapped and its variables are looked up straight from the mapped region.
+     * Restoring only scans the name table once to check its structure, without creating any objects per variable,
+     * a variable is only created when it is first looked up.
+     * Variables from the snapshot cannot be removed, other symbols can be inserted on top as usual.
+     *
+     * @param path the snapshot file
+     * @return an {@link ExecutionEnv} containing all variables of the snapshot, and nothing else.
+     * @throws IOException if the file could not be read or is not a valid snapshot.
+     */
+    public static ExecutionEnv fromSnapshot(Path path) throws IOException {
+        return new ExecutionEnv(SymbolSnapshot.map(path), null);
+    }
+
+    /**
+     * Writes all {@link Variable}s of this environment to a compact binary file,
+     * which can be restored with {@link #fromSnapshot(Path)}.
+     * Functions and {@link LazyVariable}s cannot be represented and are not included.
+     *
+     * @param path the file to write to, overwritten if it already exists.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeSnapshot(Path path) throws IOException {
+        List<Variable> variables = snapshot != null ? snapshot.variables() : new ArrayList<>();
+        forEachSymbol(symbol -> {
+            if (symbol instanceof Variable variable) {
+                variables.add(variable);
+            }
+        });
+        SymbolSnapshot.write(variables, path);
     }
 
     public void insertVariable(String name, double value) {
@@ -53,34 +156,53 @@ public class ExecutionEnv {
         return insertSymbolIfAbsent(new Variable(name, value));
     }
 
+    /**
+     * Inserts a variable whose value is only computed when an expression references it.
+     * The supplier is called at most once per evaluation, regardless of how many times the variable is referenced.
+     *
+     * @param name     the variable name
+     * @param supplier the supplier of the value
+     * @see LazyVariable
+     */
+    public void insertLazyVariable(String name, DoubleSupplier supplier) {
+        insertSymbol(new LazyVariable(name, supplier));
+    }
+
+    /**
+     * @see #insertSymbolIfAbsent(Symbol)
+     */
+    public Symbol insertLazyVariableIfAbsent(String name, DoubleSupplier supplier) {
+        return insertSymbolIfAbsent(new LazyVariable(name, supplier));
+    }
+
     // region functions
 
     /**
      * @see #insertFunction(String, int, int, ToDoubleFunction)
      */
     public void insertFunction(String name, DoubleSupplier fn) {
-        insertSymbol(new FunctionCallSite(name, 0, ctx -> fn.getAsDouble()));
+        insertSymbol(new FixedArityFunctionCallSite.Nullary(name, fn));
     }
 
     /**
      * @see #insertFunction(String, int, int, ToDoubleFunction)
      */
     public void insertFunction(String name, DoubleUnaryOperator fn) {
-        insertSymbol(new FunctionCallSite(name, 1, ctx -> {
-            double first = ctx.getDouble(0);
-            return fn.applyAsDouble(first);
-        }));
+        insertSymbol(new FixedArityFunctionCallSite.Unary(name, fn));
     }
 
     /**
      * @see #insertFunction(String, int, int, ToDoubleFunction)
      */
     public void insertFunction(String name, DoubleBinaryOperator fn) {
-        insertSymbol(new FunctionCallSite(name, 2, ctx -> {
-            double first = ctx.getDouble(0);
-            double second = ctx.getDouble(1);
-            return fn.applyAsDouble(first, second);
-        }));
+        insertSymbol(new FixedArityFunctionCallSite.Binary(name, fn));
+    }
+
+    /**
+     * @see #insertFunction(String, int, int, ToDoubleFunction)
+     */
+    public void insertFunction(String name, DoubleTernaryOperator fn) {
+        insertSymbol(new FixedArityFunctionCallSite.Ternary(name, fn));
     }
 
     /**
@@ -102,32 +224,334 @@ public class ExecutionEnv {
         insertSymbol(new FunctionCallSite(name, minArgs, maxArgs, fn));
     }
 
+    /**
+     * Inserts a function which can also be evaluated for a whole batch of rows at once,
+     * used by {@link me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression#evaluateBatch(double[][], double[])}.
+     *
+     * @param fn      the function, called when evaluating a single row
+     * @param batchFn the batch variant of the function, must compute the same results as {@code fn}
+     * @see #insertFunction(String, int, int, ToDoubleFunction)
+     */
+    public void insertFunction(String name, int minArgs, int maxArgs, ToDoubleFunction<FunctionContext> fn, BatchFunction batchFn) {
+        Objects.requireNonNull(batchFn, "batch function was null");
+        insertSymbol(new FunctionCallSite(name, minArgs, maxArgs, fn, batchFn));
+    }
+
+    /**
+     * Inserts a pure function whose results are cached, for functions that are expensive to compute
+     * and are often called with the same arguments.
+     *
+     * @param name  the function name
+     * @param fn    the function, must always return the same result for the same arguments
+     * @param cache the cache to store results in, which also holds the hit and miss statistics of this function
+     * @throws IllegalArgumentException if the cache is already used by another function
+     */
+    public void insertFunction(String name, DoubleUnaryOperator fn, MemoCache cache) {
+        insertMemoized(new FixedArityFunctionCallSite.Unary(name, cache.memoize(name, fn)), cache);
+    }
+
+    /**
+     * @see #insertFunction(String, DoubleUnaryOperator, MemoCache)
+     */
+    public void insertFunction(String name, DoubleBinaryOperator fn, MemoCache cache) {
+        insertMemoized(new FixedArityFunctionCallSite.Binary(name, cache.memoize(name, fn)), cache);
+    }
+
+    /**
+     * @see #insertFunction(String, DoubleUnaryOperator, MemoCache)
+     */
+    public void insertFunction(String name, DoubleTernaryOperator fn, MemoCache cache) {
+        insertMemoized(new FixedArityFunctionCallSite.Ternary(name, cache.memoize(name, fn)), cache);
+    }
+
+    /**
+     * @see #insertFunction(String, DoubleUnaryOperator, MemoCache)
+     * @see #insertFunction(String, int, int, ToDoubleFunction)
+     */
+    public void insertFunction(String name, int minArgs, int maxArgs, ToDoubleFunction<FunctionContext> fn, MemoCache cache) {
+        insertMemoized(new FunctionCallSite(name, minArgs, maxArgs, cache.memoizeVariadic(name, fn)), cache);
+    }
+
+    private void insertMemoized(FunctionCallSite function, MemoCache cache) {
+        try {
+            insertSymbol(function);
+        } catch (RuntimeException e) {
+            // so the cache can still be used for another function
+            cache.unbind(function.getName());
+            throw e;
+        }
+        cache.setMetrics(metrics);
+        memoCaches.put(function.getName(), cache);
+    }
+
+    /**
+     * Inserts a function whose result becomes available later.
+     *
+     * @param name    the function name
+     * @param minArgs the minimum amount of arguments
+     * @param maxArgs the maximum amount of arguments
+     * @param fn      the function
+     * @see AsyncFunctionCallSite
+     */
+    public void insertAsyncFunction(String name, int minArgs, int maxArgs, AsyncFunction fn) {
+        insertSymbol(new AsyncFunctionCallSite(name, minArgs, maxArgs, fn));
+    }
+
+    /**
+     * Defines a function from expression source, f.e. {@code hyp(a, b) = sqrt(a*a + b*b)}.
+     * The body can use the parameters and any symbol already present in this environment, but not the function itself.
+     * It is compiled once, and inlined into compiled expressions calling it.
+     *
+     * @param definition the definition, of the form {@code name(a, b) = body}
+     * @throws SyntaxException if the definition is invalid, calls the function itself,
+     *                         or a symbol with the same name is already inserted
+     * @see DefinedFunction
+     */
+    public void defineFunction(String definition) {
+        insertSymbol(ExpressionCompiler.compileDefinition(definition, this));
+    }
+
+    /**
+     * Hints how expensive one call of an inserted function is.
+     *
+     * @param name  the function name
+     * @param nanos the estimated cost of one call in nanoseconds
+     * @throws SymbolNotFoundException if no function with the given name is inserted
+     * @see FunctionCallSite#setCostHint(long)
+     */
+    public void setCostHint(String name, long nanos) {
+        lookupFunctionForUpdate(name).setCostHint(nanos);
+    }
+
+    /**
+     * Sets the partial derivatives of an inserted function, so compiled expressions calling it can be differentiated.
+     *
+     * @param name       the function name
+     * @param derivative the derivative
+     * @throws SymbolNotFoundException if no function with the given name is inserted
+     * @see FunctionCallSite#setDerivative(Derivative)
+     */
+    public void setDerivative(String name, Derivative derivative) {
+        lookupFunctionForUpdate(name).setDerivative(derivative);
+    }
+
+    /**
+     * Sets the derivative of an inserted function taking one argument.
+     *
+     * @see #setDerivative(String, Derivative)
+     */
+    public void setDerivative(String name, DoubleUnaryOperator derivative) {
+        setDerivative(name, (args, index) -> derivative.applyAsDouble(args[0]));
+    }
+
+    /**
+     * Attaches metrics, which are notified of parsing, compiling and evaluating expressions using this environment,
+     * of function calls and of hits and misses of memoized functions.
+     * Expressions compiled before keep reporting to the metrics attached at the time they were compiled.
+     *
+     * @param metrics the metrics, or null to detach them
+     * @see me.fourteendoggo.mathexpressionparser.metrics.MetricsRecorder
+     */
+    public void setMetrics(@Nullable ExpressionMetrics metrics) {
+        this.metrics = metrics;
+        for (MemoCache cache : memoCaches.values()) {
+            cache.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * @return the attached metrics, or null if none are attached
+     */
+    @Nullable
+    public ExpressionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables or disables profiling of all functions in this environment, including those inserted later.
+     * Every call of a profiled function is counted, and about one in {@value CallProfile#SAMPLE_INTERVAL} calls is timed.
+     * Disabling profiling discards the collected profiles.
+     *
+     * @see #getProfile(String)
+     * @see #profileReport(int)
+     */
+    public void setProfiling(boolean enabled) {
+        profiling = enabled;
+        if (enabled && builtins != null) {
+            // profiles are per environment, so builtins must be copied first
+            List<FunctionCallSite> shared = new ArrayList<>();
+            forEachBuiltin(symbol -> {
+                if (symbol instanceof FunctionCallSite function) {
+                    shared.add(function);
+                }
+            });
+            shared.forEach(this::detach);
+        }
+        symbolLookup.forEach(symbol -> {
+            if (symbol instanceof FunctionCallSite function) {
+                attachProfile(function);
+            }
+        });
+    }
+
+    private void attachProfile(FunctionCallSite function) {
+        if (!profiling) {
+            function.setProfile(null);
+        } else if (function.getProfile() == null) {
+            function.setProfile(new CallProfile());
+        }
+    }
+
+    /**
+     * @param name the function name
+     * @return the profile of the function, or null if profiling is disabled
+     * @throws SymbolNotFoundException if no function with the given name is inserted
+     */
+    @Nullable
+    public CallProfile getProfile(String name) {
+        return lookupFunction(name).getProfile();
+    }
+
+    /**
+     * @param limit the maximum amount of functions to return
+     * @return the profiled functions that were called at least once,
+     * the ones with the highest estimated total time first
+     */
+    public List<FunctionCallSite> getHottestFunctions(int limit) {
+        List<FunctionCallSite> functions = new ArrayList<>();
+        symbolLookup.forEach(symbol -> {
+            if (symbol instanceof FunctionCallSite function && function.getProfile() != null
+                    && function.getProfile().getInvocations() > 0) {
+                functions.add(function);
+            }
+        });
+        functions.sort(Comparator.comparingLong((FunctionCallSite function) -> function.getProfile().getTotalNanos())
+                .thenComparingLong(function -> function.getProfile().getInvocations())
+                .reversed());
+        return functions.subList(0, Math.min(limit, functions.size()));
+    }
+
+    /**
+     * @param limit the maximum amount of functions to list
+     * @return a table of the {@link #getHottestFunctions(int) hottest functions}, with their call counts,
+     * mean and max call duration, estimated total time and the amount of calls per argument count
+     */
+    public String profileReport(int limit) {
+        StringBuilder report = new StringBuilder("%-16s %12s %10s %10s %12s  %s%n".formatted(
+                "function", "calls", "mean ns", "max ns", "total ms", "calls per argument count"));
+        for (FunctionCallSite function : getHottestFunctions(limit)) {
+            CallProfile profile = function.getProfile();
+            StringBuilder arguments = new StringBuilder();
+            long[] counts = profile.getArgumentCounts();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) continue;
+                if (!arguments.isEmpty()) arguments.append(", ");
+                arguments.append(i).append(i == CallProfile.MAX_TRACKED_ARGS ? "+" : "").append(": ").append(counts[i]);
+            }
+            report.append("%-16s %12d %10.0f %10d %12.3f  %s%n".formatted(function.getName(), profile.getInvocations(),
+                    profile.getMeanNanos(), profile.getMaxNanos(), profile.getTotalNanos() / 1e6, arguments));
+        }
+        return report.toString();
+    }
+
+    private FunctionCallSite lookupFunction(String name) {
+        // the lookup indexes its nodes by character, which only works for valid names
+        if (!Utility.isValidIdentifierName(name)) {
+            throw new SymbolNotFoundException(name);
+        }
+        Symbol symbol = symbolLookup.lookup(name.toCharArray(), 0);
+        if (symbol == null) {
+            symbol = lookupBuiltin(name);
+        }
+        if (!(symbol instanceof FunctionCallSite function) || !function.getName().equals(name)) {
+            throw new SymbolNotFoundException(name);
+        }
+        return function;
+    }
+
+    /**
+     * Looks up a function to modify it, a shared builtin is replaced by a copy owned by this environment first.
+     */
+    private FunctionCallSite lookupFunctionForUpdate(String name) {
+        FunctionCallSite function = lookupFunction(name);
+        if (function == lookupBuiltin(name)) {
+            return detach(function);
+        }
+        return function;
+    }
+
+    private FunctionCallSite detach(FunctionCallSite builtin) {
+        FunctionCallSite copy = builtin.copy();
+        hideBuiltin(builtin.getName());
+        insertSymbol(copy);
+        return copy;
+    }
+
+    /**
+     * @return the builtin with the given name, or null if there is none or it was hidden from this environment
+     */
+    @Nullable
+    private Symbol lookupBuiltin(String name) {
+        if (builtins == null || !Utility.isValidIdentifierName(name) || isHiddenBuiltin(name)) {
+            return null;
+        }
+        return builtins.lookup(name.toCharArray(), 0);
+    }
+
+    private boolean isHiddenBuiltin(String name) {
+        return hiddenBuiltins != null && hiddenBuiltins.contains(name);
+    }
+
+    private void hideBuiltin(String name) {
+        if (hiddenBuiltins == null) {
+            hiddenBuiltins = new HashSet<>();
+        }
+        hiddenBuiltins.add(name);
+    }
+
+    private void forEachBuiltin(Consumer<? super Symbol> action) {
+        if (builtins == null) return;
+        builtins.forEach(symbol -> {
+            if (!isHiddenBuiltin(symbol.getName())) {
+                action.accept(symbol);
+            }
+        });
+    }
+
+    /**
+     * Performs the given action for every symbol visible in this environment, except for variables restored from a snapshot.
+     */
+    private void forEachSymbol(Consumer<? super Symbol> action) {
+        forEachBuiltin(action);
+        symbolLookup.forEach(action);
+    }
+
     /**
      * @see #insertSymbolIfAbsent(Symbol)
      */
     public Symbol insertFunctionIfAbsent(String name, DoubleSupplier fn) {
-        return insertSymbolIfAbsent(new FunctionCallSite(name, 0, ctx -> fn.getAsDouble()));
+        return insertSymbolIfAbsent(new FixedArityFunctionCallSite.Nullary(name, fn));
     }
 
     /**
      * @see #insertSymbolIfAbsent(Symbol)
      */
     public Symbol insertFunctionIfAbsent(String name, DoubleUnaryOperator fn) {
-        return insertSymbolIfAbsent(new FunctionCallSite(name, 1, ctx -> {
-            double first = ctx.getDouble(0);
-            return fn.applyAsDouble(first);
-        }));
+        return insertSymbolIfAbsent(new FixedArityFunctionCallSite.Unary(name, fn));
     }
 
     /**
      * @see #insertSymbolIfAbsent(Symbol)
      */
     public Symbol insertFunctionIfAbsent(String name, DoubleBinaryOperator fn) {
-        return insertSymbolIfAbsent(new FunctionCallSite(name, 2, ctx -> {
-            double first = ctx.getDouble(0);
-            double second = ctx.getDouble(1);
-            return fn.applyAsDouble(first, second);
-        }));
+        return insertSymbolIfAbsent(new FixedArityFunctionCallSite.Binary(name, fn));
+    }
+
+    /**
+     * @see #insertSymbolIfAbsent(Symbol)
+     */
+    public Symbol insertFunctionIfAbsent(String name, DoubleTernaryOperator fn) {
+        return insertSymbolIfAbsent(new FixedArityFunctionCallSite.Ternary(name, fn));
     }
 
     /**
@@ -144,6 +568,21 @@ public class ExecutionEnv {
         return insertSymbolIfAbsent(new FunctionCallSite(name, minArgs, maxArgs, fn));
     }
 
+    /**
+     * @see #insertSymbolIfAbsent(Symbol)
+     */
+    public Symbol insertFunctionIfAbsent(String name, int minArgs, int maxArgs, ToDoubleFunction<FunctionContext> fn, BatchFunction batchFn) {
+        Objects.requireNonNull(batchFn, "batch function was null");
+        return insertSymbolIfAbsent(new FunctionCallSite(name, minArgs, maxArgs, fn, batchFn));
+    }
+
+    /**
+     * @see #insertSymbolIfAbsent(Symbol)
+     */
+    public Symbol insertAsyncFunctionIfAbsent(String name, int minArgs, int maxArgs, AsyncFunction fn) {
+        return insertSymbolIfAbsent(new AsyncFunctionCallSite(name, minArgs, maxArgs, fn));
+    }
+
     // endregion
 
     /**
@@ -153,25 +592,62 @@ public class ExecutionEnv {
      * @throws SyntaxException if the symbol was already inserted, either as a function or as a variable.
      */
     public void insertSymbol(Symbol symbol) {
+        if (snapshot != null && snapshot.contains(symbol.getName()) || lookupBuiltin(symbol.getName()) != null) {
+            throw new SyntaxException("symbol %s is already inserted", symbol.getName());
+        }
         symbolLookup.insert(symbol);
+        if (profiling && symbol instanceof FunctionCallSite function) {
+            attachProfile(function);
+        }
     }
 
     /**
      * Inserts a symbol into this environment, if it is not already present.
+     * A default function is returned as a copy owned by this environment, modifying it does not affect other environments.
      *
      * @return the previously inserted symbol, or null.
      */
     public Symbol insertSymbolIfAbsent(Symbol symbol) {
-        return symbolLookup.insertIfAbsent(symbol);
+        if (snapshot != null) {
+            char[] name = symbol.getName().toCharArray();
+            Symbol present = snapshot.lookup(name, 0);
+            if (present != null) return present;
+        }
+        Symbol builtin = lookupBuiltin(symbol.getName());
+        if (builtin instanceof FunctionCallSite function) return detach(function);
+        if (builtin != null) return builtin;
+        Symbol present = symbolLookup.insertIfAbsent(symbol);
+        if ((present == null || present == symbol) && profiling && symbol instanceof FunctionCallSite function) {
+            attachProfile(function);
+        }
+        return present;
     }
 
     /**
-     * Removes a {@link Symbol} from this environment.
+     * Removes a {@link Symbol} from this environment, variables restored from a snapshot are never removed.
+     * Removing a default symbol does not affect other environments, a removed default function is returned as a copy.
      * @param name the name, not validated.
      * @return the removed symbol, or null.
      */
     public Symbol removeSymbol(String name) {
-        return symbolLookup.remove(name);
+        Symbol removed = symbolLookup.remove(name);
+        MemoCache cache = memoCaches.remove(name);
+        if (cache != null) {
+            // so the cache can be used for another function
+            cache.setMetrics(null);
+            cache.unbind(name);
+        }
+        if (removed == null) {
+            removed = lookupBuiltin(name);
+            if (removed != null) {
+                hideBuiltin(name);
+            }
+            if (removed instanceof FunctionCallSite function) {
+                // the shared instance must never be modified
+                removed = function.copy();
+            }
+        }
+        return removed;
     }
 
     /**
@@ -185,6 +661,15 @@ public class ExecutionEnv {
     @ApiStatus.Internal
     public Symbol lookupSymbol(char[] buf, int pos) {
         Symbol symbol = symbolLookup.lookup(buf, pos);
+        if (symbol == null && builtins != null) {
+            symbol = builtins.lookup(buf, pos);
+            if (symbol != null && isHiddenBuiltin(symbol.getName())) {
+                symbol = null;
+            }
+        }
+        if (symbol == null && snapshot != null) {
+            symbol = snapshot.lookup(buf, pos);
+        }
         if (symbol == null) {
             String bufAsStr = new String(buf, pos, buf.length - pos);
             String symbolName = INVERSE_IDENTIFIER_PATTERN.split(bufAsStr, 2)[0];
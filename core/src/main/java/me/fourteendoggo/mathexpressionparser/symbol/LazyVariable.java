@@ -0,0 +1,31 @@
+package me.fourteendoggo.mathexpressionparser.symbol;
+
+import me.fourteendoggo.mathexpressionparser.utils.Assert;
+
+import java.util.Objects;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A variable whose value is computed on demand.
+ * The supplier is only invoked when an expression actually references this variable, and at most once per evaluation,
+ * every other reference within that same evaluation reuses the resolved value.
+ */
+public record LazyVariable(String getName, DoubleSupplier supplier) implements Symbol {
+
+    public LazyVariable {
+        Assert.isValidIdentifierName(getName);
+        Objects.requireNonNull(supplier, "supplier was null");
+    }
+
+    @Override
+    public SymbolType getType() {
+        return SymbolType.LAZY_VARIABLE;
+    }
+
+    /**
+     * Invokes the supplier, this does not do any caching.
+     */
+    public double resolve() {
+        return supplier.getAsDouble();
+    }
+}
@@ -8,6 +8,7 @@ import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
  * A symbol insertable in a {@link SymbolLookup}.
  *
  * @see Variable
+ * @see LazyVariable
  * @see FunctionCallSite
  */
 public interface Symbol {
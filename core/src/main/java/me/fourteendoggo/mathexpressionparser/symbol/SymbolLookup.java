@@ -8,6 +8,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * An efficient lookup tree for {@link Symbol}s.
@@ -157,6 +158,28 @@ public class SymbolLookup {
         return null;
     }
 
+    /**
+     * Performs the given action for every {@link Symbol} in this lookup, in no particular order.
+     */
+    public void forEach(Consumer<? super Symbol> action) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node instanceof ValueHoldingNode valueNode) {
+                action.accept(valueNode.symbol);
+            }
+            if (!node.hasChildren()) continue;
+
+            for (Node child : node.children) {
+                if (child != null) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "SymbolLookup{root=" + root + '}';
@@ -0,0 +1,229 @@
+package me.fourteendoggo.mathexpressionparser.symbol;
+
+import me.fourteendoggo.mathexpressionparser.utils.Utility;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A read-only table of {@link Variable}s, backed by a memory mapped file.
+ * Mapping only checks the structure of the file, no objects are created per variable.
+ * Lookups binary search the mapped region directly, a {@link Variable} is only created on the first lookup of its name
+ * and is cached from then on, so later lookups of it do not allocate.
+ * <p>File layout, all values big endian:
+ * <pre>
+ * | magic (4) | version (4) | count (4) | reserved (4) |
+ * | values: count * double                           |
+ * | name offsets: (count + 1) * int, into names      |
+ * | names: ascii bytes, sorted, not separated         |
+ * </pre>
+ * Name {@code i} spans {@code [offsets[i], offsets[i + 1])} of the names region.
+ */
+final class SymbolSnapshot {
+    private static final int MAGIC = 0x4d455053; // "MEPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer buf;
+    private final int count;
+    private final int offsetsStart;
+    private final int namesStart;
+    // by index, in the order of the file, each created on its first lookup
+    private final Variable[] variables;
+
+    private SymbolSnapshot(ByteBuffer buf, int count) {
+        this.buf = buf;
+        this.count = count;
+        this.offsetsStart = HEADER_SIZE + count * Double.BYTES;
+        this.namesStart = offsetsStart + (count + 1) * Integer.BYTES;
+        this.variables = new Variable[count];
+    }
+
+    /**
+     * Writes all {@link Variable}s to the given file, other symbols cannot be represented and are skipped.
+     *
+     * @param variables the variables to write, names are assumed to be valid identifiers.
+     * @param path      the file to write to, truncated if it already exists.
+     */
+    static void write(List<Variable> variables, Path path) throws IOException {
+        List<Variable> sorted = new ArrayList<>(variables);
+        sorted.sort(Comparator.comparing(Variable::getName));
+
+        try (OutputStream fileOut = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            out.writeInt(0);
+
+            for (Variable variable : sorted) {
+                out.writeDouble(variable.value());
+            }
+            int offset = 0;
+            for (Variable variable : sorted) {
+                out.writeInt(offset);
+                offset += variable.getName().length();
+            }
+            out.writeInt(offset);
+            for (Variable variable : sorted) {
+                // identifiers are ascii only
+                out.write(variable.getName().getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    /**
+     * Memory maps a snapshot written by {@link #write(List, Path)}.
+     *
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    static SymbolSnapshot map(Path path) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("not a symbol snapshot: " + path);
+        }
+        int version = buf.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version + ", expected " + VERSION);
+        }
+
+        int count = buf.getInt(8);
+        long namesStart = HEADER_SIZE + (long) count * Double.BYTES + (long) (count + 1) * Integer.BYTES;
+        if (count < 0 || namesStart > buf.limit()) {
+            throw new IOException("truncated symbol snapshot: " + path);
+        }
+        SymbolSnapshot snapshot = new SymbolSnapshot(buf, count);
+        if (snapshot.nameOffset(0) != 0 || namesStart + snapshot.nameOffset(count) != buf.limit()) {
+            throw new IOException("truncated symbol snapshot: " + path);
+        }
+        for (int i = 0; i < count; i++) {
+            // lookups binary search the names, so they must be in bounds, non-empty and strictly ascending
+            int start = snapshot.nameOffset(i);
+            int end = snapshot.nameOffset(i + 1);
+            if (end <= start || end > buf.limit() - namesStart) {
+                throw new IOException("invalid name offsets in symbol snapshot: " + path);
+            }
+            if (i > 0 && snapshot.compareNames(i - 1, i) >= 0) {
+                throw new IOException("unsorted names in symbol snapshot: " + path);
+            }
+        }
+        return snapshot;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Looks up a variable in the given char buffer, the identifier extends as far as valid identifier chars follow.
+     *
+     * @return the variable, or null if not contained in this snapshot.
+     */
+    @Nullable
+    Variable lookup(char[] chars, int pos) {
+        int end = pos;
+        while (end < chars.length && Utility.isValidIdentifierChar(chars[end])) {
+            end++;
+        }
+        int idx = indexOf(chars, pos, end);
+        if (idx < 0) return null;
+        Variable variable = variables[idx];
+        if (variable == null) {
+            // racing lookups may both create it, the variables are equal and safely published by their final fields
+            variable = variables[idx] = new Variable(new String(chars, pos, end - pos), value(idx));
+        }
+        return variable;
+    }
+
+    boolean contains(String name) {
+        return indexOf(name.toCharArray(), 0, name.length()) >= 0;
+    }
+
+    List<Variable> variables() {
+        List<Variable> variables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Variable variable = this.variables[i];
+            if (variable == null) {
+                int start = nameOffset(i);
+                byte[] name = new byte[nameOffset(i + 1) - start];
+                buf.get(namesStart + start, name);
+                variable = new Variable(new String(name, StandardCharsets.US_ASCII), value(i));
+            }
+            variables.add(variable);
+        }
+        return variables;
+    }
+
+    private int indexOf(char[] chars, int start, int end) {
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareName(mid, chars, start, end);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // compares the names at two indices, like String#compareTo does
+    private int compareNames(int first, int second) {
+        int firstStart = namesStart + nameOffset(first);
+        int firstLen = namesStart + nameOffset(first + 1) - firstStart;
+        int secondStart = namesStart + nameOffset(second);
+        int secondLen = namesStart + nameOffset(second + 1) - secondStart;
+        int min = Math.min(firstLen, secondLen);
+
+        for (int i = 0; i < min; i++) {
+            int diff = (buf.get(firstStart + i) & 0xff) - (buf.get(secondStart + i) & 0xff);
+            if (diff != 0) return diff;
+        }
+        return firstLen - secondLen;
+    }
+
+    // compares the name at idx with the given chars, like String#compareTo does
+    private int compareName(int idx, char[] chars, int start, int end) {
+        int nameStart = namesStart + nameOffset(idx);
+        int nameLen = namesStart + nameOffset(idx + 1) - nameStart;
+        int len = end - start;
+        int min = Math.min(nameLen, len);
+
+        for (int i = 0; i < min; i++) {
+            int diff = (buf.get(nameStart + i) & 0xff) - chars[start + i];
+            if (diff != 0) return diff;
+        }
+        return nameLen - len;
+    }
+
+    private double value(int idx) {
+        return buf.getDouble(HEADER_SIZE + idx * Double.BYTES);
+    }
+
+    private int nameOffset(int idx) {
+        return buf.getInt(offsetsStart + idx * Integer.BYTES);
+    }
+}
@@ -11,4 +11,8 @@ public enum SymbolType {
      * @see Variable
      */
     VARIABLE,
+    /**
+     * @see LazyVariable
+     */
+    LAZY_VARIABLE,
 }
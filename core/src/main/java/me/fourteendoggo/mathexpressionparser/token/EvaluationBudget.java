@@ -0,0 +1,77 @@
+package me.fourteendoggo.mathexpressionparser.token;
+
+import me.fourteendoggo.mathexpressionparser.EvaluationLimits;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException.Limit;
+
+/**
+ * Keeps track of the work done by one evaluation, against its {@link EvaluationLimits}.
+ * Counting is only a compare per operation, the clock is only read on function calls and every
+ * {@value #DEADLINE_CHECK_INTERVAL} operations.
+ */
+final class EvaluationBudget {
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    private final EvaluationLimits limits;
+    private final boolean hasDeadline;
+    private final long deadline;
+    private long operations;
+    private long calls;
+    private int depth;
+
+    EvaluationBudget(EvaluationLimits limits) {
+        this.limits = limits;
+        this.hasDeadline = limits.hasTimeout();
+        this.deadline = hasDeadline ? limits.deadlineFromNow() : 0;
+    }
+
+    void onOperation() {
+        if (++operations > limits.maxOperations()) {
+            throw new EvaluationLimitException(Limit.OPERATIONS, "evaluation exceeded the maximum of %s operations", limits.maxOperations());
+        }
+        if (operations % DEADLINE_CHECK_INTERVAL == 0) {
+            checkDeadline();
+        }
+    }
+
+    void onCall() {
+        if (++calls > limits.maxCalls()) {
+            throw new EvaluationLimitException(Limit.CALLS, "evaluation exceeded the maximum of %s function calls", limits.maxCalls());
+        }
+        checkDeadline();
+    }
+
+    /**
+     * Charges the work of a user-defined function body evaluated by one call, as if the body was written out in place of the call.
+     */
+    void onBody(long bodyOperations, long bodyCalls, int bodyDepth) {
+        operations += bodyOperations;
+        if (operations > limits.maxOperations()) {
+            throw new EvaluationLimitException(Limit.OPERATIONS, "evaluation exceeded the maximum of %s operations", limits.maxOperations());
+        }
+        calls += bodyCalls;
+        if (calls > limits.maxCalls()) {
+            throw new EvaluationLimitException(Limit.CALLS, "evaluation exceeded the maximum of %s function calls", limits.maxCalls());
+        }
+        if (depth + bodyDepth > limits.maxDepth()) {
+            throw new EvaluationLimitException(Limit.DEPTH, "evaluation exceeded the maximum depth of %s", limits.maxDepth());
+        }
+    }
+
+    void enter() {
+        if (++depth > limits.maxDepth()) {
+            throw new EvaluationLimitException(Limit.DEPTH, "evaluation exceeded the maximum depth of %s", limits.maxDepth());
+        }
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    void checkDeadline() {
+        // subtracting, nanoTime() may overflow
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw EvaluationLimitException.deadlineExceeded(limits.timeoutNanos());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package me.fourteendoggo.mathexpressionparser.token;
+
+import me.fourteendoggo.mathexpressionparser.EvaluationLimits;
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.function.ArgumentStack;
+import me.fourteendoggo.mathexpressionparser.function.EvaluationScope;
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
+
+import java.util.Arrays;
+
+/**
+ * State that lives for exactly one evaluation, shared between a {@link Tokenizer} and all of its sub-tokenizers.
+ */
+class EvaluationContext implements EvaluationScope {
+    // expressions rarely reference more than a handful of lazy variables, a linear scan beats hashing here
+    private LazyVariable[] resolvedLazies;
+    private double[] resolvedValues;
+    private int numResolved;
+    private ArgumentStack arguments;
+    // null if the evaluation is not limited
+    private final EvaluationBudget budget;
+
+    EvaluationContext(EvaluationLimits limits) {
+        // limits are records, an equal instance is just as unlimited
+        budget = EvaluationLimits.NONE.equals(limits) ? null : new EvaluationBudget(limits);
+    }
+
+    void onOperation() {
+        if (budget != null) {
+            budget.onOperation();
+        }
+    }
+
+    void onCall() {
+        if (budget != null) {
+            budget.onCall();
+        }
+    }
+
+    @Override
+    public void checkDeadline() {
+        if (budget != null) {
+            budget.checkDeadline();
+        }
+    }
+
+    /**
+     * Called before a user-defined function evaluates its compiled body, which the tokenizer does not see.
+     */
+    void onBody(CompiledExpression body) {
+        if (budget != null) {
+            budget.onBody(body.getNumOperations(), body.getNumCalls(), body.getDepth());
+        }
+    }
+
+    /**
+     * Called when a (sub-)tokenizer starts reading, which happens for every nested level of the expression.
+     */
+    void enter() {
+        if (budget != null) {
+            budget.enter();
+        }
+    }
+
+    void exit() {
+        if (budget != null) {
+            budget.exit();
+        }
+    }
+
+    /**
+     * @return the stack holding the arguments of all pending variadic function calls, created on first use.
+     */
+    ArgumentStack arguments() {
+        if (arguments == null) {
+            arguments = new ArgumentStack();
+            // user-defined functions resolve the lazy variables of their body through this context
+            arguments.setScope(this);
+        }
+        return arguments;
+    }
+
+    /**
+     * Returns the value of a lazy variable, invoking its supplier only the first time it is requested.
+     */
+    @Override
+    public double resolve(LazyVariable variable) {
+        for (int i = 0; i < numResolved; i++) {
+            // identity comparison, two distinct lazy variables may well be equal records
+            if (resolvedLazies[i] == variable) {
+                return resolvedValues[i];
+            }
+        }
+
+        double value = variable.resolve();
+        if (resolvedLazies == null) {
+            resolvedLazies = new LazyVariable[4];
+            resolvedValues = new double[4];
+        } else if (numResolved == resolvedLazies.length) {
+            resolvedLazies = Arrays.copyOf(resolvedLazies, numResolved * 2);
+            resolvedValues = Arrays.copyOf(resolvedValues, numResolved * 2);
+        }
+        resolvedLazies[numResolved] = variable;
+        resolvedValues[numResolved++] = value;
+        return value;
+    }
+}
@@ -108,7 +108,8 @@ public class Expression {
                 LinkedCalculation next = current.next;
                 if (next != null) {
                     // we can only solve 'current' if its operator priority is higher than or equal to the next's operator priority
-                    if (!current.canExecuteFirst()) continue;
+                    // and a left neighbour with the same or a higher priority does not have to be solved before us
+                    if (!current.canExecuteFirst() || current.mustWaitForPrev()) continue;
                     // unlink current
                     LinkedCalculation prev = current.prev;
                     double solved = current.solve();
@@ -124,7 +125,7 @@ public class Expression {
                         prev.right.setValue(solved);
                         prev.next = next;
                     }
-                } else if (current.prev != null) {
+                } else if (current.prev != null && !current.mustWaitForPrev()) {
                     // current refers to the tail
                     // append our value to prev.right
                     current.prev.right.setValue(current.solve());
@@ -187,6 +188,11 @@ public class Expression {
             return operator.getPriority() >= next.operator.getPriority();
         }
 
+        // operators with the same priority are left associative, f.e. 1-2*3+4 must not solve 3+4 before 1-6
+        public boolean mustWaitForPrev() {
+            return prev != null && prev.operator.getPriority() >= operator.getPriority();
+        }
+
         /**
          * Pushes a token to this calculation object.
          * The caller should check {@link #isComplete()} before, to ensure they don't overwrite the same fields again,
@@ -1,5 +1,7 @@
 package me.fourteendoggo.mathexpressionparser.token;
 
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+
 import java.util.function.DoubleBinaryOperator;
 
 import static me.fourteendoggo.mathexpressionparser.utils.Utility.*;
@@ -71,6 +73,57 @@ public enum Operator implements Token {
         return func.applyAsDouble(first, second);
     }
 
+    /**
+     * Applies this operator to two 64-bit integers, used by expressions compiled in integer mode.
+     * Arithmetic fails on overflow instead of wrapping around, shifts are bitwise operations and do wrap.
+     * Division truncates towards zero, like integer division in Java does.
+     *
+     * @throws SyntaxException if the result overflows a long, when dividing by zero,
+     * or when shifting by a negative amount or by 64 bits or more
+     */
+    public long applyAsLong(long first, long second) {
+        try {
+            return switch (this) {
+                case POWER -> powExact(first, second);
+                case MULTIPLICATION -> Math.multiplyExact(first, second);
+                case DIVISION -> divideExact(first, second);
+                case MODULO -> first % second;
+                case ADDITION -> Math.addExact(first, second);
+                case SUBTRACTION -> Math.subtractExact(first, second);
+                case LEFT_SHIFT -> first << requireShiftDistance(second);
+                case RIGHT_SHIFT -> first >> requireShiftDistance(second);
+                case LESS_THAN -> first < second ? 1 : 0;
+                case GREATER_THAN -> first > second ? 1 : 0;
+                case LESS_THAN_OR_EQUAL -> first <= second ? 1 : 0;
+                case GREATER_THAN_OR_EQUAL -> first >= second ? 1 : 0;
+                case EQUALS -> first == second ? 1 : 0;
+                case NOT_EQUALS -> first != second ? 1 : 0;
+                case BITWISE_AND -> first & second;
+                case BITWISE_OR -> first | second;
+                case LOGICAL_AND -> first != 0 && second != 0 ? 1 : 0;
+                case LOGICAL_OR -> first != 0 || second != 0 ? 1 : 0;
+            };
+        } catch (ArithmeticException e) { // thrown on overflow and division by zero
+            throw new SyntaxException("%s in %s %s %s", e.getMessage(), first, symbol, second);
+        }
+    }
+
+    private static long divideExact(long first, long second) {
+        // the only quotient that does not fit, java would silently wrap it to Long.MIN_VALUE
+        if (first == Long.MIN_VALUE && second == -1) {
+            throw new ArithmeticException("long overflow");
+        }
+        return first / second;
+    }
+
+    private static long requireShiftDistance(long distance) {
+        // java would silently take the distance modulo 64
+        if (distance < 0 || distance >= Long.SIZE) {
+            throw new SyntaxException("shift distance must be between 0 and 63, got %s", distance);
+        }
+        return distance;
+    }
+
     @Override
     public String toString() {
         return symbol;
@@ -1,9 +1,19 @@
 package me.fourteendoggo.mathexpressionparser.token;
 
+import me.fourteendoggo.mathexpressionparser.EvaluationLimits;
+import me.fourteendoggo.mathexpressionparser.compiler.DefinedFunction;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
 import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
 import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.ArgumentStack;
+import me.fourteendoggo.mathexpressionparser.function.CallProfile;
+import me.fourteendoggo.mathexpressionparser.function.FixedArityFunctionCallSite;
 import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
 import me.fourteendoggo.mathexpressionparser.function.FunctionContext;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionEvents;
+import me.fourteendoggo.mathexpressionparser.metrics.ExpressionMetrics;
+import me.fourteendoggo.mathexpressionparser.metrics.SlowFunctionCallEvent;
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
 import me.fourteendoggo.mathexpressionparser.symbol.Symbol;
 import me.fourteendoggo.mathexpressionparser.symbol.Variable;
 import me.fourteendoggo.mathexpressionparser.utils.Assert;
@@ -19,6 +29,8 @@ public class Tokenizer {
     // indicates whether we should keep processing characters
     // e.g. to implement sub-tokenizers
     private final IntPredicate loopCondition;
+    // shared with all sub-tokenizers
+    private final EvaluationContext context;
     private int pos;
 
     public Tokenizer(char[] source, ExecutionEnv env) {
@@ -26,9 +38,21 @@ public class Tokenizer {
     }
 
     public Tokenizer(char[] source, ExecutionEnv env, IntPredicate loopCondition) {
+        this(source, env, loopCondition, new EvaluationContext(EvaluationLimits.NONE));
+    }
+
+    /**
+     * Creates a tokenizer whose evaluation aborts with an {@link EvaluationLimitException} once it exceeds the given limits.
+     */
+    public Tokenizer(char[] source, ExecutionEnv env, EvaluationLimits limits) {
+        this(source, env, current -> true, new EvaluationContext(limits));
+    }
+
+    private Tokenizer(char[] source, ExecutionEnv env, IntPredicate loopCondition, EvaluationContext context) {
         this.source = source;
         this.env = env;
         this.loopCondition = loopCondition;
+        this.context = context;
     }
 
     /*
@@ -36,86 +60,88 @@ public class Tokenizer {
      */
 
     public Expression readTokens() {
+        context.enter();
         while (hasRemaining()) {
             char current = advance();
             switch (current) {
                 case ' ', '\r', '\t' -> {} // no-op
                 case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> pushOperand(current);
-                case '*' -> expr.pushToken(Operator.MULTIPLICATION);
-                case '/' -> expr.pushToken(Operator.DIVISION);
-                case '+' -> expr.pushToken(Operator.ADDITION);
-                case '%' -> expr.pushToken(Operator.MODULO);
+                case '*' -> pushOperator(Operator.MULTIPLICATION);
+                case '/' -> pushOperator(Operator.DIVISION);
+                case '+' -> pushOperator(Operator.ADDITION);
+                case '%' -> pushOperator(Operator.MODULO);
                 // TODO: revert back pow() and ^ design decision
                 case '^' -> {
                     // one of the highest priority operators, can be solved immediately
                     // TODO: solve this here rather than pushing an Operator
-                    expr.pushToken(Operator.POWER);
+                    pushOperator(Operator.POWER);
                 }
                 case '-' -> {
                     switch (expr.getLastType()) {
-                        case OPERAND -> expr.pushToken(Operator.SUBTRACTION);
+                        case OPERAND -> pushOperator(Operator.SUBTRACTION);
                         case OPERATOR -> pushNegativeOperand();
                     }
                 }
                 case '<' -> {
                     switch (advanceOrThrow()) {
-                        case '<' -> expr.pushToken(Operator.LEFT_SHIFT);
-                        case '=' -> expr.pushToken(Operator.LESS_THAN_OR_EQUAL);
+                        case '<' -> pushOperator(Operator.LEFT_SHIFT);
+                        case '=' -> pushOperator(Operator.LESS_THAN_OR_EQUAL);
                         default -> {
-                            expr.pushToken(Operator.LESS_THAN);
+                            pushOperator(Operator.LESS_THAN);
                             pos--; // put the character after < back
                         }
                     }
                 }
                 case '>' -> {
                     switch (advanceOrThrow()) {
-                        case '>' -> expr.pushToken(Operator.RIGHT_SHIFT);
-                        case '=' -> expr.pushToken(Operator.GREATER_THAN_OR_EQUAL);
+                        case '>' -> pushOperator(Operator.RIGHT_SHIFT);
+                        case '=' -> pushOperator(Operator.GREATER_THAN_OR_EQUAL);
                         default -> {
-                            expr.pushToken(Operator.GREATER_THAN);
+                            pushOperator(Operator.GREATER_THAN);
                             pos--; // put the character after > back
                         }
                     }
                 }
                 case '=' -> {
                     matchOrThrow('=', "expected another '=' for comparison");
-                    expr.pushToken(Operator.EQUALS);
+                    pushOperator(Operator.EQUALS);
                 }
                 case 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
                      'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z', '_' -> {
                     // support for things like 2cos(1) -> 2 * cos(1)
                     if (expr.getLastType() == TokenType.OPERAND) {
-                        expr.pushToken(Operator.MULTIPLICATION);
+                        pushOperator(Operator.MULTIPLICATION);
                     }
                     expr.pushToken(readSymbol());
                 }
                 case '&' -> {
                     if (match('&')) { // already standing on the second '&' then
-                        expr.pushToken(Operator.LOGICAL_AND);
+                        pushOperator(Operator.LOGICAL_AND);
                     } else {
-                        expr.pushToken(Operator.BITWISE_AND);
+                        pushOperator(Operator.BITWISE_AND);
                     }
                 }
                 case '|' -> {
                     if (match('|')) {
-                        expr.pushToken(Operator.LOGICAL_OR);
+                        pushOperator(Operator.LOGICAL_OR);
                     } else {
-                        expr.pushToken(Operator.BITWISE_OR);
+                        pushOperator(Operator.BITWISE_OR);
                     }
                 }
                 case '(' -> {
                     // support for things like 2(1 + 1) -> 2 * (1 + 1)
                     if (expr.getLastType() == TokenType.OPERAND) {
-                        expr.pushToken(Operator.MULTIPLICATION);
+                        pushOperator(Operator.MULTIPLICATION);
                     }
                     expr.pushToken(readBrackets());
                 }
                 case '!' -> {
                     if (currentOrThrow("expected an operand") == '=') {
                         advance();
-                        expr.pushToken(Operator.NOT_EQUALS);
+                        pushOperator(Operator.NOT_EQUALS);
                     } else { // one of the highest priority operators, can be solved immediately
                         // TODO: outline
+                        context.onOperation();
                         Tokenizer tokenizer = branchOff(loopCondition, pos);
                         double toBeNegated = tokenizer.readTokens().solve();
                         pos = tokenizer.pos;
@@ -124,6 +150,7 @@ public class Tokenizer {
                 }
                 case '~' -> { // one of the highest priority operators, can be solved immediately
                     // TODO: outline
+                    context.onOperation();
                     Tokenizer tokenizer = branchOff(loopCondition, pos);
                     int input = Utility.requireInt(tokenizer.readTokens().solve());
                     pos = tokenizer.pos;
@@ -132,9 +159,15 @@ public class Tokenizer {
                 default -> throw new SyntaxException("unexpected character " + current);
             }
         }
+        context.exit();
         return expr;
     }
 
+    private void pushOperator(Operator operator) {
+        context.onOperation();
+        expr.pushToken(operator);
+    }
+
     private void pushNegativeOperand() {
         double value = -readDouble('0', false);
         expr.pushToken(value);
@@ -301,6 +334,7 @@ public class Tokenizer {
         return switch (symbol.getType()) {
             case FUNCTION -> readFunctionCall((FunctionCallSite) symbol);
             case VARIABLE -> new Operand(((Variable) symbol).value());
+            case LAZY_VARIABLE -> new Operand(context.resolve((LazyVariable) symbol));
         };
     }
 
@@ -309,23 +343,100 @@ public class Tokenizer {
         matchOrThrow('(', "missing opening parenthesis for function %s", functionName);
 
         char maybeClosingParenthesis = currentOrThrow("missing closing parenthesis for function call %s", functionName);
-        FunctionContext parameters = desc.allocateParameters();
+        if (desc instanceof FixedArityFunctionCallSite fixedArityDesc) {
+            return new Operand(readFixedArityFunctionCall(fixedArityDesc, maybeClosingParenthesis));
+        }
+        // the arguments are pushed onto the shared stack of this evaluation, nested calls stack on top of them
+        ArgumentStack arguments = context.arguments();
+        FunctionContext parameters = arguments.open();
 
         if (maybeClosingParenthesis != ')') { // parameters were provided
             // TODO: when calling f.e. exit( ), the space gets interpreted as parameters too
             Assert.isTrue(desc.supportsArgs(), "function %s did not expect any parameters", functionName);
 
-            // TODO: can we reuse the tokenizer and avoid an extra allocation per parameter?
-            Tokenizer paramTokenizer = this;
             do {
-                paramTokenizer = paramTokenizer.branchOff(Utility::isValidArgument, paramTokenizer.pos);
-                parameters.add(paramTokenizer.readTokens().solve());
-            } while (paramTokenizer.match(','));
-            pos = paramTokenizer.pos; // move to ')' (or something else if there's an error)
+                double argument = readArgument();
+                parameters.add(argument);
+            } while (match(','));
         }
         matchOrThrow(')', "missing closing parenthesis for function %s", functionName);
 
-        return new Operand(desc.apply(parameters));
+        context.onCall();
+        if (desc instanceof DefinedFunction defined) {
+            context.onBody(defined.getBody());
+        }
+        reportCall(desc);
+        CallProfile profile = desc.getProfile();
+        long start = profile != null ? profile.begin() : 0;
+        SlowFunctionCallEvent event = ExpressionEvents.beginCall();
+        double result = desc.apply(parameters);
+        if (event != null) {
+            ExpressionEvents.commit(event, desc, parameters.size());
+        }
+        if (profile != null) {
+            profile.end(parameters.size(), start);
+        }
+        arguments.close(parameters);
+        return new Operand(result);
+    }
+
+    /**
+     * Reads the arguments of a function with a fixed arity into locals and invokes it directly,
+     * without going through a {@link FunctionContext}.
+     */
+    private double readFixedArityFunctionCall(FixedArityFunctionCallSite desc, char maybeClosingParenthesis) {
+        double first = 0, second = 0, third = 0;
+        int numArgs = 0;
+
+        if (maybeClosingParenthesis != ')') {
+            if (!desc.supportsArgs()) {
+                throw new SyntaxException("function %s did not expect any parameters", desc.getName());
+            }
+            do {
+                double arg = readArgument();
+                switch (numArgs++) {
+                    case 0 -> first = arg;
+                    case 1 -> second = arg;
+                    case 2 -> third = arg;
+                    // too many arguments, only counted to be reported below
+                }
+            } while (match(','));
+        }
+        if (!match(')')) {
+            throw new SyntaxException("missing closing parenthesis for function %s", desc.getName());
+        }
+        desc.checkArity(numArgs);
+        context.onCall();
+        reportCall(desc);
+        CallProfile profile = desc.getProfile();
+        long start = profile != null ? profile.begin() : 0;
+        SlowFunctionCallEvent event = ExpressionEvents.beginCall();
+        double result = desc.apply(first, second, third);
+        if (event != null) {
+            ExpressionEvents.commit(event, desc, numArgs);
+        }
+        if (profile != null) {
+            profile.end(numArgs, start);
+        }
+        return result;
+    }
+
+    private void reportCall(FunctionCallSite desc) {
+        ExpressionMetrics metrics = env.getMetrics();
+        if (metrics != null) {
+            metrics.onFunctionCall(desc, 1);
+        }
+    }
+
+    /**
+     * Reads one function argument, leaves pos at the ',' or ')' following it (or something else if there's an error).
+     */
+    private double readArgument() {
+        // TODO: can we reuse the tokenizer and avoid an extra allocation per parameter?
+        Tokenizer tokenizer = branchOff(Utility::isValidArgument, pos);
+        double result = tokenizer.readTokens().solve();
+        pos = tokenizer.pos;
+        return result;
     }
 
     private boolean hasRemaining() {
@@ -366,7 +477,7 @@ public class Tokenizer {
     }
 
     private Tokenizer branchOff(IntPredicate newLoopCondition, int newPos) {
-        Tokenizer tokenizer = new Tokenizer(source, env, newLoopCondition);
+        Tokenizer tokenizer = new Tokenizer(source, env, newLoopCondition, context);
         tokenizer.pos = newPos;
         return tokenizer;
     }
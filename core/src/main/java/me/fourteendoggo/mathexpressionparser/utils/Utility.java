@@ -1,5 +1,7 @@
 package me.fourteendoggo.mathexpressionparser.utils;
 
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+
 public class Utility {
     private static final int[] COMMON_POWERS_OF_TEN = {
             1, 10, 100, 1000, 10_000, 100_000, 1_000_000,
@@ -29,6 +31,35 @@ public class Utility {
         return intVal;
     }
 
+    public static long requireLong(double x) {
+        // (long) saturates, 2^63 itself would pass the equality check
+        Assert.isTrue(x == (long) x && x != 0x1p63, "an integer is required");
+        return (long) x;
+    }
+
+    /**
+     * Raises an integer to an integer power, by repeated squaring.
+     * @throws ArithmeticException if the result overflows a long
+     * @throws SyntaxException if the exponent is negative, and the result is not an integer
+     */
+    public static long powExact(long base, long exponent) {
+        if (exponent < 0) {
+            Assert.isTrue(base == 1 || base == -1, "integer power with a negative exponent, %s ^ %s", base, exponent);
+            return (exponent & 1) == 0 ? 1 : base;
+        }
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = Math.multiplyExact(result, base);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                base = Math.multiplyExact(base, base);
+            }
+        }
+        return result;
+    }
+
     public static boolean isValidIdentifierFirstChar(char c) {
         return c >= 'a' && c <= 'z' || c == '_';
     }
@@ -0,0 +1,120 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledLongExpression;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.DoubleSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the number of bytes allocated per call on the hot paths, measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ * Every scenario is warmed up first, so the JIT had the chance to eliminate allocations, and the minimum of a few
+ * rounds is taken. Budgets leave a little headroom, an increase beyond that is a regression worth looking at.
+ */
+class AllocationBudgetTest {
+    private static final int WARMUP_CALLS = 50_000;
+    private static final int MEASURED_CALLS = 20_000;
+    private static final int ROUNDS = 5;
+    // reading the allocation counter itself may allocate a few bytes, independent of the amount of calls
+    private static final long COUNTER_ALLOWANCE = 256;
+
+    private static com.sun.management.ThreadMXBean threadBean;
+    private ExecutionEnv env;
+    // written to, so the JIT cannot drop the measured calls
+    private double sink;
+
+    @BeforeAll
+    static void checkSupported() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "thread allocation counters are not available");
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported(), "thread allocation counters are not supported");
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.defaulted();
+    }
+
+    @Test
+    void testCompiledArithmeticDoesNotAllocate() {
+        CompiledExpression expr = ExpressionParser.compile("a * b + c", env, "a", "b", "c");
+        double[] args = {1, 2, 3};
+        assertBudget("compiled a * b + c", () -> expr.evaluate(args), 0);
+
+        CompiledExpression calls = ExpressionParser.compile("sqrt(a * a + b * b) + pow(c, 2)", env, "a", "b", "c");
+        assertBudget("compiled fixed arity calls", () -> calls.evaluate(args), 0);
+
+        CompiledLongExpression longExpr = ExpressionParser.compileLong("(x << 4) | y", env, "x", "y");
+        long[] longArgs = {1, 2};
+        assertBudget("compiled long", () -> longExpr.evaluate(longArgs), 0);
+    }
+
+    @Test
+    void testCompiledExpressionsWithFrame() {
+        env.insertLazyVariable("seed", () -> 3);
+        double[] args = {1, 2, 3};
+
+        CompiledExpression variadic = ExpressionParser.compile("max(a, b, c) + a", env, "a", "b", "c");
+        assertBudget("compiled variadic call", () -> variadic.evaluate(args), 512);
+
+        CompiledExpression lazy = ExpressionParser.compile("a * seed", env, "a", "b", "c");
+        assertBudget("compiled lazy variable", () -> lazy.evaluate(args), 128);
+    }
+
+    @Test
+    void testFloatBatchReusesColumnsBetweenBlocks() {
+        CompiledExpression expr = ExpressionParser.compile("a * b + sqrt(c) * 2", env, "a", "b", "c");
+        int rows = 4 * 1024;
+        float[][] columns = {new float[rows], new float[rows], new float[rows]};
+        float[] out = new float[rows];
+        assertBudget("float batch", () -> {
+            expr.evaluateBatch(columns, out);
+            return out[0];
+        }, 70_000); // 3 input, 1 output and 4 scratch columns of one block, allocating per block would need twice that
+    }
+
+    @Test
+    void testParsing() {
+        assertBudget("parse 1+2*3", () -> ExpressionParser.parse("1+2*3", env), 320);
+        assertBudget("parse nested", () -> ExpressionParser.parse("((1 + 2) * (3 + 4)) / 5", env), 800);
+        assertBudget("parse calls", () -> ExpressionParser.parse("sqrt(16) + max(1, 2, 3) * pi", env), 1400);
+    }
+
+    private void assertBudget(String scenario, DoubleSupplier call, long maxBytesPerCall) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            sink += call.getAsDouble();
+        }
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            allocated = Math.min(allocated, measure(call));
+        }
+        // compare totals, so an occasional allocation is not rounded away
+        assertThat(allocated)
+                .withFailMessage("%s allocates %s bytes in %s calls, the budget is %s bytes per call",
+                        scenario, allocated, MEASURED_CALLS, maxBytesPerCall)
+                .isLessThanOrEqualTo(maxBytesPerCall * MEASURED_CALLS + COUNTER_ALLOWANCE);
+    }
+
+    /**
+     * @return the bytes allocated by all measured calls together
+     */
+    private long measure(DoubleSupplier call) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            sink += call.getAsDouble();
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+}
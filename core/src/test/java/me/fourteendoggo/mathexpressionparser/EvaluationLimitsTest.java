@@ -0,0 +1,142 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException.Limit;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EvaluationLimitsTest {
+    private ExecutionEnv env;
+    private AtomicInteger slowCalls;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.defaulted();
+        slowCalls = new AtomicInteger();
+        env.insertFunction("slow", x -> {
+            slowCalls.incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return x;
+        });
+        env.setCostHint("slow", 20_000_000);
+    }
+
+    @Test
+    void testOperationLimit() {
+        EvaluationLimits limits = EvaluationLimits.NONE.withMaxOperations(3);
+        assertThat(ExpressionParser.parse("1 + 2 * 3 - 4", env, limits)).isEqualTo(3);
+        assertLimitExceeded(() -> ExpressionParser.parse("1 + 2 * 3 - 4 + 5", env, limits), Limit.OPERATIONS);
+        // implicit multiplications and unary operators count too
+        assertLimitExceeded(() -> ExpressionParser.parse("2(3) + !4 - 1", env, limits), Limit.OPERATIONS);
+
+        CompiledExpression expr = ExpressionParser.compile("x * 2 + (3 * 4 + 5) - x", env, "x");
+        assertThat(expr.evaluate(limits, 2)).isEqualTo(19); // 3 * 4 + 5 was folded
+        assertLimitExceeded(() -> expr.evaluate(limits.withMaxOperations(2), 2), Limit.OPERATIONS);
+    }
+
+    @Test
+    void testCallLimit() {
+        EvaluationLimits limits = EvaluationLimits.NONE.withMaxCalls(2);
+        assertThat(ExpressionParser.parse("max(1, abs(-2)) + pi", env, limits)).isEqualTo(2 + Math.PI);
+        assertLimitExceeded(() -> ExpressionParser.parse("max(1, abs(-2), sqrt(4))", env, limits), Limit.CALLS);
+        assertLimitExceeded(() -> ExpressionParser.compile("max(1, abs(-2), sqrt(x))", env, "x").evaluate(limits, 4), Limit.CALLS);
+    }
+
+    @Test
+    void testDepthLimit() {
+        EvaluationLimits limits = EvaluationLimits.NONE.withMaxDepth(4);
+        assertThat(ExpressionParser.parse("((1 + (2)))", env, limits)).isEqualTo(3);
+        assertThat(ExpressionParser.parse("abs(abs(abs(-1)))", env, limits)).isEqualTo(1);
+        assertLimitExceeded(() -> ExpressionParser.parse("(((1 + (2))))", env, limits), Limit.DEPTH);
+        assertLimitExceeded(() -> ExpressionParser.parse("abs(abs(abs(abs(-1))))", env, limits), Limit.DEPTH);
+
+        CompiledExpression expr = ExpressionParser.compile("abs(abs(abs(x)))", env, "x");
+        assertThat(expr.evaluate(limits, -1)).isEqualTo(1);
+        assertLimitExceeded(() -> expr.evaluate(limits.withMaxDepth(3), -1), Limit.DEPTH);
+
+        // would otherwise overflow the stack of the recursive descent
+        String deeplyNested = "(".repeat(100_000) + "1" + ")".repeat(100_000);
+        assertLimitExceeded(() -> ExpressionParser.parse(deeplyNested, env, EvaluationLimits.NONE.withMaxDepth(100)), Limit.DEPTH);
+    }
+
+    @Test
+    void testDeadline() {
+        EvaluationLimits limits = EvaluationLimits.NONE.withTimeout(Duration.ofMillis(30));
+        assertThat(ExpressionParser.parse("slow(1) + 1", env, limits)).isEqualTo(2);
+
+        assertLimitExceeded(() -> ExpressionParser.parse("slow(1) + slow(2) + slow(3) + slow(4)", env, limits), Limit.DEADLINE);
+        assertThat(slowCalls).hasValueLessThan(1 + 4);
+
+        slowCalls.set(0);
+        CompiledExpression expr = ExpressionParser.compile("slow(x) + slow(2) * slow(3) + slow(4)", env, "x");
+        assertLimitExceeded(() -> expr.evaluate(limits, 1), Limit.DEADLINE);
+        assertThat(slowCalls).hasValueLessThan(4);
+
+        // forked subtrees share the deadline
+        CompiledExpression parallel = expr.parallel(ForkJoinPool.commonPool(), 1);
+        assertThat(parallel).isNotSameAs(expr);
+        assertLimitExceeded(() -> parallel.evaluate(limits.withTimeout(Duration.ofNanos(1)), 1), Limit.DEADLINE);
+    }
+
+    @Test
+    void testSubMillisecondTimeoutIsReported() {
+        EvaluationLimits limits = EvaluationLimits.NONE.withTimeout(Duration.ofNanos(500_000));
+        assertThatThrownBy(() -> ExpressionParser.parse("slow(1) + slow(2)", env, limits))
+                .isInstanceOf(EvaluationLimitException.class)
+                .hasMessage("evaluation exceeded its timeout of 0.5ms");
+    }
+
+    @Test
+    void testDeadlineIsCheckedInInterpretedDefinedFunctions() {
+        env.defineFunction("slowly(x) = slow(x) + slow(x) + slow(x) + slow(x)");
+        EvaluationLimits limits = EvaluationLimits.NONE.withTimeout(Duration.ofMillis(30));
+
+        assertLimitExceeded(() -> ExpressionParser.parse("slowly(1)", env, limits), Limit.DEADLINE);
+        assertThat(slowCalls).hasValueLessThan(4);
+    }
+
+    @Test
+    void testInterpretedDefinedFunctionsCountTheirBody() {
+        env.defineFunction("poly(x) = x * x + 2 * x + 1");
+        env.defineFunction("twice(x) = abs(x) + abs(x)");
+        env.defineFunction("nested(x) = abs(abs(x))");
+
+        assertThat(ExpressionParser.parse("poly(3)", env, EvaluationLimits.NONE.withMaxOperations(4))).isEqualTo(16);
+        assertLimitExceeded(() -> ExpressionParser.parse("poly(3)", env, EvaluationLimits.NONE.withMaxOperations(3)), Limit.OPERATIONS);
+
+        assertThat(ExpressionParser.parse("twice(-1)", env, EvaluationLimits.NONE.withMaxCalls(3))).isEqualTo(2);
+        assertLimitExceeded(() -> ExpressionParser.parse("twice(-1)", env, EvaluationLimits.NONE.withMaxCalls(2)), Limit.CALLS);
+
+        assertThat(ExpressionParser.parse("nested(-1)", env, EvaluationLimits.NONE.withMaxDepth(3))).isEqualTo(1);
+        assertLimitExceeded(() -> ExpressionParser.parse("nested(-1)", env, EvaluationLimits.NONE.withMaxDepth(2)), Limit.DEPTH);
+    }
+
+    @Test
+    void testInvalidLimits() {
+        assertThatThrownBy(() -> EvaluationLimits.NONE.withMaxOperations(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EvaluationLimits.NONE.withMaxDepth(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EvaluationLimits.NONE.withTimeout(Duration.ZERO)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(EvaluationLimits.NONE.hasTimeout()).isFalse();
+    }
+
+    private static void assertLimitExceeded(Runnable evaluation, Limit limit) {
+        assertThatThrownBy(evaluation::run)
+                .isInstanceOfSatisfying(EvaluationLimitException.class, e -> {
+                    assertThat(e.getLimit()).isEqualTo(limit);
+                    assertThat(e.getStackTrace()).isEmpty();
+                });
+    }
+}
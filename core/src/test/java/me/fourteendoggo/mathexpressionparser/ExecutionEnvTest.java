@@ -1,8 +1,12 @@
 package me.fourteendoggo.mathexpressionparser;
 
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
 import me.fourteendoggo.mathexpressionparser.exceptions.SymbolNotFoundException;
+import me.fourteendoggo.mathexpressionparser.function.CallProfile;
 import me.fourteendoggo.mathexpressionparser.function.FunctionCallSite;
+import me.fourteendoggo.mathexpressionparser.symbol.BuiltinGroup;
 import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import me.fourteendoggo.mathexpressionparser.symbol.LazyVariable;
 import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
 import me.fourteendoggo.mathexpressionparser.symbol.Symbol;
 import me.fourteendoggo.mathexpressionparser.symbol.Variable;
@@ -12,6 +16,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
@@ -215,6 +220,53 @@ public class ExecutionEnvTest {
         assertThat(ExpressionParser.parse("a()", env)).isEqualTo(1);
     }
 
+    @ParameterizedTest
+    @MethodSource("provideEnvironments")
+    void testLazyVariableIsOnlyResolvedWhenReferenced(ExecutionEnv env) {
+        AtomicInteger calls = new AtomicInteger();
+        env.insertLazyVariable("lazy", () -> {
+            calls.incrementAndGet();
+            return 3;
+        });
+        env.insertVariable("eager", 2);
+
+        assertThat(ExpressionParser.parse("eager * 2", env)).isEqualTo(4);
+        assertThat(calls).hasValue(0);
+
+        assertThat(ExpressionParser.parse("lazy + eager", env)).isEqualTo(5);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void testLazyVariableIsResolvedOncePerEvaluation() {
+        ExecutionEnv env = ExecutionEnv.defaulted();
+        AtomicInteger calls = new AtomicInteger();
+        env.insertLazyVariable("x", () -> calls.incrementAndGet() * 10);
+
+        // references inside brackets and function arguments share the same evaluation
+        assertThat(ExpressionParser.parse("x + (x * 2) + max(x, 1, -x) + 2x", env)).isEqualTo(60);
+        assertThat(calls).hasValue(1);
+
+        // a new evaluation resolves the variable again
+        assertThat(ExpressionParser.parse("x", env)).isEqualTo(20);
+        assertThat(calls).hasValue(2);
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideEnvironments")
+    void insertIfAbsentOnPresentLazyVariable(ExecutionEnv env) {
+        env.insertLazyVariable("a", () -> 1);
+
+        Symbol sym = env.insertLazyVariableIfAbsent("a", () -> 2);
+        assertThat(sym).isInstanceOf(LazyVariable.class).matches(s -> s.getName().equals("a"));
+        assertThat(ExpressionParser.parse("a", env)).isEqualTo(1);
+
+        assertThatThrownBy(() -> env.insertLazyVariable("a", () -> 3)).isInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> env.insertLazyVariable("1a", () -> 3))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("invalid identifier name");
+    }
+
     // TODO: some more tests on removing
 
     @Test
@@ -250,4 +302,94 @@ public class ExecutionEnvTest {
             assertThat(env.insertFunctionIfAbsent(ident, () -> 2)).isNull();
         }
     }
+
+    @Test
+    void testProfiling() {
+        env.insertFunction("sq", x -> x * x);
+        env.setProfiling(true);
+        env.insertFunction("sum", 0, 10, ctx -> ctx.size());
+        env.insertFunction("unused", () -> 0);
+
+        ExpressionParser.parse("sq(2) + sum(1, 2, 3)", env);
+        CompiledExpression expr = ExpressionParser.compile("sq(x) + sq(sum(x))", env, "x");
+        for (int i = 0; i < 100; i++) {
+            expr.evaluate(i);
+        }
+
+        CallProfile profile = env.getProfile("sq");
+        assertThat(profile).isNotNull();
+        assertThat(profile.getInvocations()).isEqualTo(201);
+        assertThat(profile.getArgumentCounts()[1]).isEqualTo(201);
+        assertThat(env.getProfile("sum").getArgumentCounts()).startsWith(0, 100, 0, 1);
+        assertThat(env.getHottestFunctions(10)).extracting(FunctionCallSite::getName).containsExactlyInAnyOrder("sq", "sum");
+        assertThat(env.getHottestFunctions(1)).hasSize(1);
+        assertThat(env.profileReport(10)).contains("sq", "201", "1: 201").doesNotContain("unused");
+
+        env.setProfiling(false);
+        assertThat(env.getProfile("sq")).isNull();
+        assertThat(env.getHottestFunctions(10)).isEmpty();
+    }
+
+    @Test
+    void testBuiltinsAreSharedUntilModified() {
+        ExecutionEnv first = ExecutionEnv.defaulted();
+        ExecutionEnv second = ExecutionEnv.defaulted();
+        Symbol sin = first.lookupSymbol("sin".toCharArray(), 0);
+        assertThat(second.lookupSymbol("sin".toCharArray(), 0)).isSameAs(sin);
+
+        first.setCostHint("sin", 500);
+        FunctionCallSite copy = (FunctionCallSite) first.lookupSymbol("sin".toCharArray(), 0);
+        assertThat(copy).isNotSameAs(sin);
+        assertThat(copy.getCostHint()).isEqualTo(500);
+        assertThat(copy.getDerivative()).isNotNull();
+        assertThat(((FunctionCallSite) sin).getCostHint()).isZero();
+        assertThat(ExpressionParser.parse("sin(0) + cos(0)", first)).isEqualTo(1);
+
+        first.removeSymbol("cos");
+        assertThatThrownBy(() -> first.lookupSymbol("cos".toCharArray(), 0)).isInstanceOf(SymbolNotFoundException.class);
+        assertThat(ExpressionParser.parse("cos(0)", second)).isEqualTo(1);
+
+        second.setProfiling(true);
+        ExpressionParser.parse("sqrt(4)", second);
+        assertThat(second.getProfile("sqrt").getInvocations()).isEqualTo(1);
+        assertThat(first.getProfile("sqrt")).isNull();
+        assertThat(ExecutionEnv.defaulted().getProfile("sqrt")).isNull();
+    }
+
+    @Test
+    void testReturnedBuiltinsAreDetached() {
+        ExecutionEnv env = ExecutionEnv.defaulted();
+        FunctionCallSite shared = (FunctionCallSite) ExecutionEnv.defaulted().lookupSymbol("sin".toCharArray(), 0);
+
+        FunctionCallSite removed = (FunctionCallSite) env.removeSymbol("sin");
+        assertThat(removed).isNotSameAs(shared);
+        removed.setCostHint(1000);
+        assertThat(shared.getCostHint()).isZero();
+
+        FunctionCallSite present = (FunctionCallSite) env.insertSymbolIfAbsent(new FunctionCallSite("tan", 1, 1, ctx -> 0));
+        present.setCostHint(1000);
+        assertThat(env.lookupSymbol("tan".toCharArray(), 0)).isSameAs(present);
+        assertThat(((FunctionCallSite) ExecutionEnv.defaulted().lookupSymbol("tan".toCharArray(), 0)).getCostHint()).isZero();
+        assertThat(ExpressionParser.parse("tan(0)", env)).isZero();
+    }
+
+    @Test
+    void testBuiltinGroups() {
+        ExecutionEnv env = ExecutionEnv.withBuiltins(BuiltinGroup.TRIGONOMETRY, BuiltinGroup.CONSTANTS);
+        assertThat(ExpressionParser.parse("sin(pi / 2) + cos(0)", env)).isEqualTo(2);
+        assertThatThrownBy(() -> ExpressionParser.parse("sqrt(4)", env)).isInstanceOf(SymbolNotFoundException.class);
+        assertThatThrownBy(() -> env.insertVariable("pi", 3)).isInstanceOf(SyntaxException.class);
+        assertThat(env.insertVariableIfAbsent("e", 3)).isInstanceOf(Variable.class);
+
+        env.insertFunction("sqrt", x -> -1);
+        assertThat(ExpressionParser.parse("sqrt(4)", env)).isEqualTo(-1);
+        assertThat(ExpressionParser.parse("sqrt(4)")).isEqualTo(2);
+
+        // groups are only looked at as a set
+        Symbol sin = env.lookupSymbol("sin".toCharArray(), 0);
+        ExecutionEnv reordered = ExecutionEnv.withBuiltins(BuiltinGroup.CONSTANTS, BuiltinGroup.TRIGONOMETRY, BuiltinGroup.CONSTANTS);
+        assertThat(reordered.lookupSymbol("sin".toCharArray(), 0)).isSameAs(sin);
+        assertThatThrownBy(() -> ExecutionEnv.withBuiltins().lookupSymbol("sin".toCharArray(), 0))
+                .isInstanceOf(SymbolNotFoundException.class);
+    }
 }
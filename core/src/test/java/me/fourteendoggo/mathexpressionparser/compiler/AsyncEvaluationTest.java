@@ -0,0 +1,120 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncEvaluationTest {
+    private ExecutionEnv env;
+    private ExecutorService executor;
+    // futures handed out by the 'pending' function, completed by the test itself
+    private final List<CompletableFuture<Double>> pending = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.empty();
+        executor = Executors.newFixedThreadPool(4);
+        env.insertAsyncFunction("pending", 1, 1, ctx -> {
+            CompletableFuture<Double> future = new CompletableFuture<>();
+            synchronized (pending) {
+                pending.add(future);
+            }
+            return future;
+        });
+        env.insertAsyncFunction("twice", 1, 1, ctx -> CompletableFuture.completedFuture(ctx.getDouble(0) * 2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testIndependentCallsAreStartedAtOnce() {
+        CompiledExpression expr = ExpressionParser.compile("pending(1) + pending(2) * pending(3)", env);
+        CompletableFuture<Double> result = expr.evaluateAsync(Runnable::run);
+
+        assertThat(pending).hasSize(3);
+        assertThat(result).isNotDone();
+        pending.get(2).complete(4.0);
+        pending.get(0).complete(1.0);
+        assertThat(result).isNotDone();
+        pending.get(1).complete(3.0);
+        assertThat(result).isCompletedWithValue(13.0);
+    }
+
+    @Test
+    void testBlockingCallsRunConcurrently() {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        env.insertAsyncFunction("blocking", 1, 1, ctx -> {
+            double arg = ctx.getDouble(0);
+            allStarted.countDown();
+            try {
+                // only succeeds if all three calls are running at the same time
+                assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return CompletableFuture.completedFuture(arg);
+        });
+
+        CompletableFuture<Double> result = ExpressionParser.parseAsync("blocking(1) + blocking(2) + blocking(3)", env, executor);
+        assertThat(result.join()).isEqualTo(6);
+    }
+
+    @Test
+    void testDependentCalls() {
+        CompiledExpression expr = ExpressionParser.compile("twice(pending(x) + 1) - x", env, "x");
+        CompletableFuture<Double> result = expr.evaluateAsync(Runnable::run, 10);
+
+        assertThat(pending).hasSize(1);
+        pending.get(0).complete(2.0);
+        assertThat(result).isCompletedWithValue(-4.0);
+    }
+
+    @Test
+    void testSynchronousEvaluationBlocks() {
+        env.insertAsyncFunction("slow", 0, 0, ctx -> CompletableFuture.supplyAsync(() -> 5.0, executor));
+
+        assertThat(ExpressionParser.parse("slow() + twice(2)", env)).isEqualTo(9);
+        assertThat(ExpressionParser.compile("slow() * x", env, "x").evaluate(3)).isEqualTo(15);
+        assertThat(ExpressionParser.parseAsync("1 + 2", env, executor)).isCompletedWithValue(3.0);
+    }
+
+    @Test
+    void testFailures() {
+        env.insertAsyncFunction("fail", 0, 0, ctx -> CompletableFuture.failedFuture(new SyntaxException("no value")));
+
+        assertThatThrownBy(() -> ExpressionParser.parse("1 + fail()", env))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessage("no value");
+        assertThatThrownBy(() -> ExpressionParser.parseAsync("twice(1) + fail()", env, executor).join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(SyntaxException.class);
+        // without async calls, errors still come back in the future
+        env.insertFunction("reject", 2, 2, ctx -> {
+            throw new SyntaxException("an integer is required");
+        });
+        CompletableFuture<Double> sync = ExpressionParser.compile("reject(x, 2)", env, "x").evaluateAsync(executor, 1.5);
+        assertThatThrownBy(sync::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> ExpressionParser.compile("twice(1, 2)", env))
+                .isInstanceOf(SyntaxException.class);
+    }
+}
@@ -0,0 +1,123 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledDecimalExpressionTest {
+    private ExecutionEnv env;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.defaulted();
+    }
+
+    @Test
+    void testLiteralsAreExact() {
+        assertThat(ExpressionParser.compileDecimal("0.1 + 0.2", env, MathContext.DECIMAL128).evaluate()).isEqualTo("0.3");
+        assertThat(ExpressionParser.compileDecimal("0.1 + 0.2 == 0.3", env, MathContext.DECIMAL128).evaluate()).isEqualTo("1");
+        // more digits than a long holds
+        CompiledDecimalExpression expr = ExpressionParser.compileDecimal("123456789012345678901234567890.5 + x", env, MathContext.UNLIMITED, "x");
+        assertThat(expr.evaluate(new BigDecimal("0.25"))).isEqualTo("123456789012345678901234567890.75");
+        assertThat(ExpressionParser.compileDecimal("-1.50 * 2", env, MathContext.DECIMAL64).evaluate()).isEqualTo("-3.00");
+    }
+
+    @Test
+    void testOverflowPromotesToBigDecimal() {
+        CompiledDecimalExpression expr = ExpressionParser.compileDecimal("x * x + y", env, MathContext.UNLIMITED, "x", "y");
+        BigDecimal x = new BigDecimal("3037000499.97605");
+        BigDecimal y = new BigDecimal("0.000001");
+        assertThat(expr.evaluate(x, y)).isEqualTo(x.multiply(x).add(y));
+        assertThat(ExpressionParser.compileDecimal("x - 1", env, MathContext.UNLIMITED, "x").evaluate(BigDecimal.valueOf(Long.MIN_VALUE)))
+                .isEqualTo(BigDecimal.valueOf(Long.MIN_VALUE).subtract(BigDecimal.ONE));
+    }
+
+    @Test
+    void testMatchesBigDecimalArithmetic() {
+        MathContext mc = new MathContext(12, RoundingMode.HALF_EVEN);
+        CompiledDecimalExpression expr = ExpressionParser.compileDecimal("(a + b) * c - a / c + (a > b) + c % 7", env, mc, "a", "b", "c");
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            BigDecimal a = BigDecimal.valueOf(random.nextLong() >> random.nextInt(64), random.nextInt(12));
+            BigDecimal b = BigDecimal.valueOf(random.nextLong() >> random.nextInt(64), random.nextInt(12));
+            BigDecimal c = BigDecimal.valueOf((random.nextInt() >> random.nextInt(32)) | 1, random.nextInt(6));
+
+            BigDecimal expected = a.add(b, mc).multiply(c, mc)
+                    .subtract(a.divide(c, mc), mc)
+                    .add(a.compareTo(b) > 0 ? BigDecimal.ONE : BigDecimal.ZERO, mc)
+                    .add(c.remainder(BigDecimal.valueOf(7), mc), mc);
+            assertThat(expr.evaluate(a, b, c)).isEqualByComparingTo(expected);
+        }
+    }
+
+    @Test
+    void testMathContextRounds() {
+        MathContext mc = new MathContext(5, RoundingMode.HALF_UP);
+        CompiledDecimalExpression expr = ExpressionParser.compileDecimal("x / 3", env, mc, "x");
+        assertThat(expr.getMathContext()).isSameAs(mc);
+        assertThat(expr.evaluate(BigDecimal.ONE)).isEqualTo("0.33333");
+        // the result is rounded too
+        assertThat(ExpressionParser.compileDecimal("x", env, mc, "x").evaluate(new BigDecimal("1.234567"))).isEqualTo("1.2346");
+        assertThat(ExpressionParser.compileDecimal("1.5 ^ 3", env, mc).evaluate()).isEqualTo("3.375");
+        assertThat(ExpressionParser.compileDecimal("2 ^ -2", env, mc).evaluate()).isEqualTo("0.25");
+    }
+
+    @Test
+    void testFunctionsAndLocals() {
+        env.insertVariable("rate", 0.05);
+        env.defineFunction("gross(a) = a + a * rate");
+        CompiledDecimalExpression expr = ExpressionParser.compileDecimal("gross(x + 0.1) + sqrt(16) + (x << 2)", env, MathContext.DECIMAL64, "x");
+        // 2.1 + 0.105 + 4 + 8
+        assertThat(expr.evaluate(BigDecimal.valueOf(2))).isEqualByComparingTo("14.205");
+        assertThat(expr.getParameters()).containsExactly("x");
+    }
+
+    @Test
+    void testInlinedFunctionsAreFoldedWithDecimals() {
+        env.defineFunction("f(x) = x * (0.1 + 0.2)");
+        env.defineFunction("g(x) = f(x) - 0.30000000000000000001");
+        assertThat(ExpressionParser.compileDecimal("f(1)", env, MathContext.DECIMAL128).evaluate()).isEqualTo("0.3");
+        assertThat(ExpressionParser.compileDecimal("g(1)", env, MathContext.DECIMAL128).evaluate()).isEqualTo("-1E-20");
+        // double expressions still inline the body folded with doubles
+        assertThat(ExpressionParser.compile("f(1)", env).evaluate()).isEqualTo(0.1 + 0.2);
+    }
+
+    @Test
+    void testErrors() {
+        assertThatThrownBy(() -> ExpressionParser.compileDecimal("x / 3", env, MathContext.UNLIMITED, "x").evaluate(BigDecimal.ONE))
+                .isInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> ExpressionParser.compileDecimal("x / 0", env, MathContext.DECIMAL64, "x").evaluate(BigDecimal.ONE))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("division by zero");
+        assertThatThrownBy(() -> ExpressionParser.compileDecimal("x & 1", env, MathContext.DECIMAL64, "x").evaluate(new BigDecimal("1.5")))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("integer");
+        // the integer quotient does not fit in 3 digits, for compact and for big values
+        CompiledDecimalExpression remainder = ExpressionParser.compileDecimal("x % y", env, new MathContext(3), "x", "y");
+        assertThatThrownBy(() -> remainder.evaluate(new BigDecimal("1e10"), BigDecimal.valueOf(3)))
+                .isInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> remainder.evaluate(BigDecimal.valueOf(12345), BigDecimal.valueOf(7)))
+                .isInstanceOf(SyntaxException.class);
+        assertThat(remainder.evaluate(BigDecimal.valueOf(1234), BigDecimal.valueOf(7))).isEqualTo("2");
+        assertThatThrownBy(() -> ExpressionParser.compileDecimal("x", env, MathContext.DECIMAL64, "x").evaluate())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1.", "1.2.3", "-.5", "2 ^ 0.5", "1 / 0", "0.5 & 1"})
+    void testInvalidExpressions(String expression) {
+        assertThatThrownBy(() -> ExpressionParser.compileDecimal(expression, env, MathContext.DECIMAL64)).isInstanceOf(SyntaxException.class);
+    }
+}
@@ -0,0 +1,78 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledLongExpressionTest {
+    private ExecutionEnv env;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.defaulted();
+    }
+
+    @Test
+    void testBitwiseOperatorsUseAllBits() {
+        CompiledLongExpression expr = ExpressionParser.compileLong("(x << 40) | (y & 65535) | (~z) & 3", env, "x", "y", "z");
+        assertThat(expr.evaluate(3, 0x12345, 0)).isEqualTo((3L << 40) | 0x2345 | 3);
+        assertThat(ExpressionParser.compileLong("x >> 62", env, "x").evaluate(Long.MIN_VALUE)).isEqualTo(-2);
+        // the double mode narrows to an int, which only uses the lowest 5 bits of the distance
+        assertThat(ExpressionParser.compile("x << 40", env, "x").evaluate(1)).isEqualTo(256);
+    }
+
+    @Test
+    void testIntegersBeyondDoublePrecision() {
+        CompiledLongExpression expr = ExpressionParser.compileLong("9007199254740993 + x * 2", env, "x");
+        assertThat(expr.evaluate(1)).isEqualTo(9007199254740995L);
+        assertThat(ExpressionParser.compileLong("2 ^ 62 - 1 + 2 ^ 62")).hasToString("9223372036854775807");
+        assertThat(ExpressionParser.compileLong("-7 / 2 + 7 % 3 + (5 > 3 && 2 != 2)").evaluate()).isEqualTo(-2);
+    }
+
+    @Test
+    void testFunctionsAndLocals() {
+        env.insertVariable("offset", 10);
+        env.insertLazyVariable("seed", () -> 1L << 52);
+        env.defineFunction("sq(a) = a * a");
+
+        CompiledLongExpression expr = ExpressionParser.compileLong("max(abs(x), 2, 3) + sq(x + 1) + seed - offset", env, "x");
+        assertThat(expr.evaluate(-5)).isEqualTo(5 + 16 + (1L << 52) - 10);
+
+        // results must be integers again
+        CompiledLongExpression root = ExpressionParser.compileLong("sqrt(x)", env, "x");
+        assertThat(root.evaluate(16)).isEqualTo(4);
+        assertThatThrownBy(() -> root.evaluate(2))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("integer");
+    }
+
+    @Test
+    void testOverflowIsDetected() {
+        CompiledLongExpression expr = ExpressionParser.compileLong("x * x + 1", env, "x");
+        assertThat(expr.evaluate(3_000_000_000L)).isEqualTo(9_000_000_000_000_000_001L);
+        assertThatThrownBy(() -> expr.evaluate(1L << 32))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("overflow");
+        assertThatThrownBy(() -> ExpressionParser.compileLong("x / y", env, "x", "y").evaluate(1, 0))
+                .isInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> ExpressionParser.compileLong("x / y", env, "x", "y").evaluate(Long.MIN_VALUE, -1))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("overflow");
+        assertThat(ExpressionParser.compileLong("x % y", env, "x", "y").evaluate(Long.MIN_VALUE, -1)).isZero();
+        assertThatThrownBy(() -> ExpressionParser.compileLong("x << 64", env, "x").evaluate(1))
+                .isInstanceOf(SyntaxException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1.5 + x", "9223372036854775807 + 1", "92233720368547758070", "2 ^ 63", "2 ^ -1", "e * x", "1 << -1"})
+    void testInvalidExpressions(String expression) {
+        assertThatThrownBy(() -> ExpressionParser.compileLong(expression, env, "x")).isInstanceOf(SyntaxException.class);
+    }
+}
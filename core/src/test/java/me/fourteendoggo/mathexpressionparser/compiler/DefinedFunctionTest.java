@@ -0,0 +1,123 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DefinedFunctionTest {
+    private ExecutionEnv env;
+    private AtomicInteger ticks;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.defaulted();
+        ticks = new AtomicInteger();
+        env.insertFunction("tick", () -> ticks.incrementAndGet());
+        env.defineFunction("hyp(a, b) = sqrt(a*a + b*b)");
+        env.defineFunction("sq(a) = a * a");
+    }
+
+    @Test
+    void testCallingDefinedFunctions() {
+        assertThat(ExpressionParser.parse("hyp(3, 4) + 1", env)).isEqualTo(6);
+        assertThat(ExpressionParser.compile("hyp(x, y)", env, "x", "y").evaluate(6, 8)).isEqualTo(10);
+
+        env.defineFunction("quad( a ) = sq(sq(a))");
+        env.defineFunction("answer() = 42");
+        assertThat(ExpressionParser.parse("quad(2) - answer()", env)).isEqualTo(-26);
+        assertThat(ExpressionParser.compile("quad(x - 1) - answer()", env, "x").evaluate(3)).isEqualTo(-26);
+    }
+
+    @Test
+    void testBodyIsInlined() {
+        assertThat(ExpressionParser.compile("hyp(x, 4)", env, "x")).hasToString("sqrt[((x * x) + 16.0)]");
+        assertThat(ExpressionParser.compile("sq(3) + x", env, "x")).hasToString("(9.0 + x)");
+
+        env.defineFunction("cube(a) = a * a * a");
+        assertThat(ExpressionParser.compile("cube(2 * 3)", env)).hasToString("216.0");
+    }
+
+    @Test
+    void testArgumentsAreEvaluatedOnce() {
+        CompiledExpression expr = ExpressionParser.compile("sq(tick() + x)", env, "x");
+        assertThat(expr.toString()).startsWith("let(");
+
+        assertThat(expr.evaluate(1)).isEqualTo(4);
+        assertThat(ticks).hasValue(1);
+        assertThat(ExpressionParser.parse("sq(tick())", env)).isEqualTo(4);
+        assertThat(ticks).hasValue(2);
+
+        double[] out = new double[3];
+        ExpressionParser.compile("sq(x - 1) + sq(sq(x))", env, "x").evaluateBatch(new double[][]{{1, 2, 3}}, out);
+        assertThat(out).containsExactly(1, 17, 85);
+    }
+
+    @Test
+    void testLazyVariablesInBody() {
+        AtomicInteger resolved = new AtomicInteger();
+        env.insertLazyVariable("rate", () -> resolved.incrementAndGet() * 2);
+        env.defineFunction("scaled(a) = a * rate");
+
+        CompiledExpression expr = ExpressionParser.compile("scaled(x) + rate + scaled(1)", env, "x");
+        assertThat(expr.evaluate(3)).isEqualTo(6 + 2 + 2);
+        assertThat(resolved).hasValue(1);
+    }
+
+    @Test
+    void testInterpretedCallsReuseTheirState() {
+        AtomicInteger resolved = new AtomicInteger();
+        env.insertLazyVariable("rate", () -> resolved.incrementAndGet());
+        env.defineFunction("scaled(a, b) = max(a, b, 0) * rate");
+        // nested calls of different functions at the same and at different depths
+        assertThat(ExpressionParser.parse("scaled(hyp(3, 4), scaled(1, 2)) + sq(3) + scaled(sq(2), 1)", env))
+                .isEqualTo(5 + 9 + 4);
+        assertThat(resolved).hasValue(1);
+        assertThat(ExpressionParser.parse("scaled(1, 2)", env)).isEqualTo(2 * 2);
+    }
+
+    @Test
+    void testInterpretedBodiesResolveLazyVariablesOncePerEvaluation() {
+        AtomicInteger resolved = new AtomicInteger();
+        env.insertLazyVariable("seed", () -> resolved.incrementAndGet());
+        env.defineFunction("f(x) = x + seed");
+
+        assertThat(ExpressionParser.parse("f(1) + f(2) + seed", env)).isEqualTo(6);
+        assertThat(resolved).hasValue(1);
+        assertThat(ExpressionParser.compile("f(1) + f(2) + seed", env).evaluate()).isEqualTo(3 + 4 + 2);
+        assertThat(resolved).hasValue(2);
+    }
+
+    @Test
+    void testAsyncArguments() {
+        env.insertAsyncFunction("later", 1, 1, ctx -> CompletableFuture.completedFuture(ctx.getDouble(0) + 1));
+
+        assertThat(ExpressionParser.parseAsync("sq(later(2)) + hyp(later(2), 4)", env, Runnable::run))
+                .isCompletedWithValue(14.0);
+    }
+
+    @Test
+    void testRecursionIsRejected() {
+        assertThatThrownBy(() -> env.defineFunction("fact(n) = n * fact(n - 1)"))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("recursion");
+        assertThatThrownBy(() -> env.defineFunction("sq(a) = a ^ 2"))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("already inserted");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "f", "f(x) == x", "f(x x) = x", "f(x, x) = x", "f(x,) = x", "(x) = x", "f x = x", "f(x) = y", "f(x) = "})
+    void testInvalidDefinitions(String definition) {
+        assertThatThrownBy(() -> env.defineFunction(definition)).isInstanceOf(SyntaxException.class);
+    }
+}
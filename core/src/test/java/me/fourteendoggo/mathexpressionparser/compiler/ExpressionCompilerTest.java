@@ -0,0 +1,183 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.FunctionContext;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExpressionCompilerTest {
+    private ExecutionEnv env;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.empty();
+    }
+
+    @ParameterizedTest
+    @CsvFileSource(resources = "/positive-input.csv")
+    void testSameResultAsParsing(String expression, String expectedResult) {
+        double expected = ExpressionParser.parse(expectedResult);
+        double result = ExpressionParser.compile(expression).evaluate();
+        assertThat(result)
+                .withFailMessage("%s: got %f instead of %f", expression, result, expected)
+                .isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @CsvFileSource(resources = "/negative-input.csv")
+    void testNegativeTestCases(String expression) {
+        assertThatThrownBy(() -> ExpressionParser.compile(expression).evaluate())
+                .withFailMessage(expression)
+                .isInstanceOf(SyntaxException.class);
+    }
+
+    @Test
+    void testParameters() {
+        env.insertVariable("x", 100);
+        env.insertFunction("sq", x -> x * x);
+        CompiledExpression expr = ExpressionParser.compile("2x + sq(y) - z", env, "x", "y", "z");
+
+        assertThat(expr.evaluate(1, 2, 3)).isEqualTo(3);
+        assertThat(expr.evaluate(-1, 0.5, 0)).isEqualTo(-1.75);
+        assertThat(expr.getParameters()).containsExactly("x", "y", "z");
+        assertThatThrownBy(() -> expr.evaluate(1, 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ExpressionParser.compile("1", env, "1x")).isInstanceOf(SyntaxException.class);
+    }
+
+    @Test
+    void testErrorsAreReportedWhenCompiling() {
+        env.insertFunction("neg", x -> -x);
+        env.insertFunction("sum", 1, 3, ctx -> 0);
+
+        assertThatThrownBy(() -> ExpressionParser.compile("neg(x, 1)", env, "x"))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessage("too many arguments provided (max 1, got 2)");
+        assertThatThrownBy(() -> ExpressionParser.compile("sum()", env))
+                .isInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> ExpressionParser.compile("x + y", env, "x"))
+                .isInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> ExpressionParser.compile("x +", env, "x"))
+                .isInstanceOf(SyntaxException.class);
+    }
+
+    @Test
+    void testConstantsAreFolded() {
+        assertThat(ExpressionParser.compile("2 * 3 + x", env, "x")).hasToString("(6.0 + x)");
+        assertThat(ExpressionParser.compile("1 - 2 * 3 + 4", env)).hasToString("-1.0");
+    }
+
+    @Test
+    void testLazyVariableIsResolvedOncePerEvaluation() {
+        AtomicInteger calls = new AtomicInteger();
+        env.insertLazyVariable("lazy", () -> calls.incrementAndGet() * 10);
+        CompiledExpression expr = ExpressionParser.compile("lazy + lazy * x", env, "x");
+
+        assertThat(expr.evaluate(2)).isEqualTo(30);
+        assertThat(calls).hasValue(1);
+        assertThat(expr.evaluate(2)).isEqualTo(60);
+        assertThat(calls).hasValue(2);
+
+        expr.evaluateBatch(new double[][]{{1, 2, 3}}, new double[3]);
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void testNestedVariadicCalls() {
+        env.insertFunction("sum", 0, Integer.MAX_VALUE, ExpressionCompilerTest::sum);
+        CompiledExpression expr = ExpressionParser.compile("sum(x, sum(1, sum(x, 2), 3), sum())", env, "x");
+
+        assertThat(expr.evaluate(1)).isEqualTo(8);
+        assertThat(expr.evaluate(10)).isEqualTo(26);
+    }
+
+    @Test
+    void testBatchMatchesScalarEvaluation() {
+        env.insertFunction("sum", 1, Integer.MAX_VALUE, ExpressionCompilerTest::sum);
+        env.insertFunction("hyp", (a, b) -> Math.sqrt(a * a + b * b));
+        CompiledExpression expr = ExpressionParser.compile("hyp(x, y) * 2 - sum(x, y, 1) % 3 + (x > y)", env, "x", "y");
+
+        double[] xs = {0, 1, 2.5, -3, 4, 100};
+        double[] ys = {0, -1, 7, 3, 4.5, 0.25, 999}; // longer than the batch, should be ignored
+        double[] out = new double[xs.length];
+        expr.evaluateBatch(new double[][]{xs, ys}, out);
+
+        for (int i = 0; i < xs.length; i++) {
+            assertThat(out[i]).isEqualTo(expr.evaluate(xs[i], ys[i]));
+        }
+        assertThatThrownBy(() -> expr.evaluateBatch(new double[][]{xs}, out)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> expr.evaluateBatch(new double[][]{xs, {1}}, out)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testFloatBatchSpansMultipleBlocks() {
+        AtomicInteger resolved = new AtomicInteger();
+        env.insertLazyVariable("scale", () -> {
+            resolved.incrementAndGet();
+            return 0.5;
+        });
+        env.insertFunction("sin", Math::sin);
+        CompiledExpression expr = ExpressionParser.compile("sin(x) * scale + y / 3", env, "x", "y");
+
+        int rows = 2500;
+        float[] xs = new float[rows];
+        float[] ys = new float[rows];
+        for (int i = 0; i < rows; i++) {
+            xs[i] = i * 0.01f;
+            ys[i] = rows - i;
+        }
+        float[] out = new float[rows];
+        expr.evaluateBatch(new float[][]{xs, ys}, out);
+        assertThat(resolved).hasValue(1); // once for the whole batch, not per block
+
+        for (int i = 0; i < rows; i++) {
+            assertThat(out[i]).isEqualTo((float) expr.evaluate(xs[i], ys[i]));
+        }
+        assertThatThrownBy(() -> expr.evaluateBatch(new float[][]{xs, {1}}, out)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testBatchFunctionIsPreferred() {
+        AtomicInteger scalarCalls = new AtomicInteger();
+        AtomicInteger batchCalls = new AtomicInteger();
+        env.insertFunction("sum", 1, 4, ctx -> {
+            scalarCalls.incrementAndGet();
+            return sum(ctx);
+        }, (args, length, out) -> {
+            batchCalls.incrementAndGet();
+            for (int row = 0; row < length; row++) {
+                double sum = 0;
+                for (double[] column : args) {
+                    sum += column[row];
+                }
+                out[row] = sum;
+            }
+        });
+        CompiledExpression expr = ExpressionParser.compile("sum(x, 2x, 10)", env, "x");
+
+        double[] out = new double[4];
+        expr.evaluateBatch(new double[][]{{1, 2, 3, 4}}, out);
+        assertThat(out).containsExactly(13, 16, 19, 22);
+        assertThat(batchCalls).hasValue(1);
+        assertThat(scalarCalls).hasValue(0);
+
+        assertThat(expr.evaluate(1)).isEqualTo(13);
+        assertThat(scalarCalls).hasValue(1);
+    }
+
+    private static double sum(FunctionContext ctx) {
+        double sum = 0;
+        for (int i = 0; i < ctx.size(); i++) {
+            sum += ctx.getDouble(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,86 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class GradientTest {
+    private ExecutionEnv env;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.defaulted();
+    }
+
+    @Test
+    void testOperators() {
+        CompiledExpression expr = ExpressionParser.compile("x * y + x / y - y ^ 3 + 2 ^ x + (x > y)", env, "x", "y");
+        double x = 1.5, y = 2;
+        double[] gradient = new double[2];
+
+        assertThat(expr.evaluateGradient(gradient, x, y)).isEqualTo(expr.evaluate(x, y));
+        assertThat(gradient[0]).isCloseTo(y + 1 / y + Math.pow(2, x) * Math.log(2), within(1e-12));
+        assertThat(gradient[1]).isCloseTo(x - x / (y * y) - 3 * y * y, within(1e-12));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "sin(x) * cos(y) + tan(x / 4)", "sqrt(x * y) + cbrt(y) - log(x) * log10(y)", "pow(x, y) + exp(x)",
+            "atan(x - y) + asin(x / 10) + acos(y / 10)", "sinh(x) - cosh(y) * tanh(x)", "abs(x - y) + max(x, y, 1) + min(x, 2y)",
+            "avg(x, y, 3) * sum(x, x, y) + variance(x, y, 1) + stddev(x, y, 0)", "clamp(x, 1, y) + rad(y) + round(x) * 0",
+            "x % y + hyp(x, y)", "hyp(sin(x), y * y) * x"
+    })
+    void testMatchesFiniteDifferences(String expression) {
+        env.insertFunction("exp", Math::exp);
+        env.setDerivative("exp", Math::exp);
+        env.defineFunction("hyp(a, b) = sqrt(a * a + b * b)");
+        CompiledExpression expr = ExpressionParser.compile(expression, env, "x", "y");
+
+        double[] point = {1.3, 2.7};
+        double[] gradient = new double[2];
+        expr.evaluateGradient(gradient, point);
+
+        for (int i = 0; i < point.length; i++) {
+            double h = 1e-6;
+            double[] up = point.clone();
+            double[] down = point.clone();
+            up[i] += h;
+            down[i] -= h;
+            double expected = (expr.evaluate(up) - expr.evaluate(down)) / (2 * h);
+            assertThat(gradient[i]).as("d/d%s of %s", expr.getParameters()[i], expression).isCloseTo(expected, within(1e-5));
+        }
+    }
+
+    @Test
+    void testFunctionsWithoutDerivative() {
+        env.insertFunction("f", x -> x * x);
+        CompiledExpression expr = ExpressionParser.compile("f(x) + f(2)", env, "x");
+        double[] gradient = new double[1];
+        assertThatThrownBy(() -> expr.evaluateGradient(gradient, 3))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("f");
+
+        env.setDerivative("f", x -> 2 * x);
+        // the derivative is looked up when evaluating
+        assertThat(expr.evaluateGradient(gradient, 3)).isEqualTo(13);
+        assertThat(gradient).containsExactly(6);
+    }
+
+    @Test
+    void testConstantExpression() {
+        env.insertLazyVariable("seed", () -> 4);
+        double[] gradient = {5, 5};
+        assertThat(ExpressionParser.compile("seed * 2 + now() * 0", env, "x", "y").evaluateGradient(gradient, 1, 2)).isEqualTo(8);
+        assertThat(gradient).containsExactly(0, 0);
+        assertThatThrownBy(() -> ExpressionParser.compile("x", env, "x", "y").evaluateGradient(new double[1], 1, 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,132 @@
+package me.fourteendoggo.mathexpressionparser.compiler;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SymbolNotFoundException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParallelEvaluationTest {
+    private static final long THRESHOLD = 1_000_000;
+    private ExecutionEnv env;
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.defaulted();
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void testCheapExpressionsAreNotParallelized() {
+        env.insertFunction("sim", x -> x);
+        env.setCostHint("sim", THRESHOLD - 1);
+
+        CompiledExpression expr = ExpressionParser.compile("max(sim(1), sim(x)) + sim(2) * x", env, "x");
+        assertThat(expr.parallel(pool, THRESHOLD)).isSameAs(expr);
+    }
+
+    @Test
+    void testExpensiveArgumentsRunConcurrently() {
+        CountDownLatch allStarted = new CountDownLatch(4);
+        env.insertFunction("sim", x -> {
+            allStarted.countDown();
+            try {
+                // only succeeds if all four calls are running at the same time
+                assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return x * 10;
+        });
+        env.setCostHint("sim", THRESHOLD);
+
+        CompiledExpression expr = ExpressionParser.compile("max(sim(1), 2, sim(x), sim(3), sim(4)) - 1", env, "x");
+        CompiledExpression parallel = expr.parallel(pool, THRESHOLD);
+        assertThat(parallel).isNotSameAs(expr).hasToString(expr.toString());
+        assertThat(parallel.evaluate(5)).isEqualTo(49);
+    }
+
+    @Test
+    void testSameResultsAsSequential() {
+        AtomicInteger lazyCalls = new AtomicInteger();
+        env.insertLazyVariable("lazy", () -> lazyCalls.incrementAndGet() * 100);
+        env.insertFunction("sim", 1, 3, ctx -> ctx.stream().sum() + ctx.size());
+        env.setCostHint("sim", THRESHOLD);
+
+        CompiledExpression expr = ExpressionParser.compile(
+                "sim(lazy, x) * sim(sim(1, 2), sim(x, lazy, 3)) - !sim(x) + ~sim(1)", env, "x");
+        CompiledExpression parallel = expr.parallel(pool, THRESHOLD);
+        assertThat(parallel).isNotSameAs(expr);
+
+        for (int x = -3; x < 3; x++) {
+            lazyCalls.set(0);
+            double expected = expr.evaluate(x);
+            lazyCalls.set(0);
+            assertThat(parallel.evaluate(x)).isEqualTo(expected);
+            assertThat(lazyCalls).hasValue(1);
+        }
+        lazyCalls.set(0);
+        double[] out = new double[2];
+        parallel.evaluateBatch(new double[][]{{1, 2}}, out);
+        assertThat(lazyCalls).hasValue(1);
+        lazyCalls.set(0);
+        double first = expr.evaluate(1);
+        lazyCalls.set(0);
+        assertThat(out).containsExactly(first, expr.evaluate(2));
+    }
+
+    @Test
+    void testFailureWaitsForForkedSubtrees() {
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+        env.insertFunction("slow", x -> {
+            started.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            finished.incrementAndGet();
+            return x;
+        });
+        env.insertFunction("fail", x -> {
+            throw new IllegalStateException("failed");
+        });
+        env.setCostHint("slow", THRESHOLD);
+        env.setCostHint("fail", THRESHOLD);
+
+        for (String source : new String[]{"slow(x) + fail(x)", "max(slow(x), slow(x), fail(x))"}) {
+            CompiledExpression parallel = ExpressionParser.compile(source, env, "x").parallel(pool, THRESHOLD);
+            assertThatThrownBy(() -> parallel.evaluate(1)).isInstanceOf(IllegalStateException.class);
+            // forked calls were either cancelled before starting or awaited
+            assertThat(finished).hasValue(started.get());
+        }
+    }
+
+    @Test
+    void testInvalidUsage() {
+        env.insertFunction("sim", x -> x);
+        assertThatThrownBy(() -> env.setCostHint("si", 10)).isInstanceOf(SymbolNotFoundException.class);
+        assertThatThrownBy(() -> env.setCostHint("pi", 10)).isInstanceOf(SymbolNotFoundException.class);
+        assertThatThrownBy(() -> env.setCostHint("", 10)).isInstanceOf(SymbolNotFoundException.class);
+        assertThatThrownBy(() -> env.setCostHint("sim~", 10)).isInstanceOf(SymbolNotFoundException.class);
+
+        CompiledExpression expr = ExpressionParser.compile("sim(1)", env);
+        assertThatThrownBy(() -> expr.parallel(pool, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
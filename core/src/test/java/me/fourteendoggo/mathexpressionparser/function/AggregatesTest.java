@@ -0,0 +1,86 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class AggregatesTest {
+
+    @Test
+    void testCompensatedSum() {
+        double[] values = new double[10_001];
+        Arrays.fill(values, 0.1);
+        values[0] = 1e16;
+        // a naive sum loses every 0.1 against 1e16
+        assertThat(Aggregates.sum(values, 0, values.length)).isEqualTo(1e16 + 1000);
+        assertThat(Aggregates.sum(new double[]{1, 1e100, 1, -1e100}, 0, 4)).isEqualTo(2);
+        assertThat(Aggregates.sum(new double[]{1, Double.POSITIVE_INFINITY, 1}, 0, 3)).isEqualTo(Double.POSITIVE_INFINITY);
+        assertThat(ExpressionParser.parse("sum(0.1, 0.2, 0.3)")).isEqualTo(0.6);
+    }
+
+    @Test
+    void testMinMaxOverRanges() {
+        double[] values = {9, 4, 7, -2, 8, 3, 11, 0, 5};
+        for (int from = 0; from < values.length; from++) {
+            for (int to = from + 1; to <= values.length; to++) {
+                double[] range = Arrays.copyOfRange(values, from, to);
+                assertThat(Aggregates.min(values, from, to)).isEqualTo(Arrays.stream(range).min().orElseThrow());
+                assertThat(Aggregates.max(values, from, to)).isEqualTo(Arrays.stream(range).max().orElseThrow());
+            }
+        }
+        assertThat(Aggregates.max(new double[]{1, 2, Double.NaN, 3, 4}, 0, 5)).isNaN();
+    }
+
+    @Test
+    void testVarianceOfLargeValues() {
+        // the textbook formula cancels out completely here
+        double[] values = {1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16};
+        assertThat(Aggregates.variance(values, 0, 4)).isEqualTo(22.5);
+        assertThat(Aggregates.stddev(new double[]{5}, 0, 1)).isZero();
+    }
+
+    @Test
+    void testPercentileMatchesSorting() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int n = 1; n < 60; n++) {
+            // few distinct values, so there are plenty of duplicates
+            double[] values = random.doubles(n, 0, 10).map(Math::floor).toArray();
+            double[] original = values.clone();
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+
+            for (double p = 0; p <= 100; p += 12.5) {
+                double rank = p / 100 * (n - 1);
+                int lower = (int) rank;
+                double expected = lower + 1 < n
+                        ? sorted[lower] + (rank - lower) * (sorted[lower + 1] - sorted[lower])
+                        : sorted[lower];
+                assertThat(Aggregates.percentile(values, 0, n, p)).isCloseTo(expected, within(1e-12));
+            }
+            assertThat(values).containsExactly(original);
+        }
+        assertThat(Aggregates.percentile(new double[]{1, Double.NaN, 3}, 0, 3, 50)).isNaN();
+    }
+
+    @Test
+    void testAggregatesOverArgumentBuffer() {
+        // nested calls share the argument buffer, the kernels must only see their own window
+        assertThat(ExpressionParser.parse("sum(1, 2, median(10, 30, 20), max(4, min(5, 6, 7)), 3)")).isEqualTo(31);
+        assertThat(ExpressionParser.parse("percentile(50, 1, avg(2, 4), 100) + variance(1, 3)")).isEqualTo(4);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"percentile(101, 1, 2)", "percentile(-1, 1, 2)", "percentile(50)", "variance()", "median()"})
+    void testInvalidArguments(String expression) {
+        assertThatThrownBy(() -> ExpressionParser.parse(expression)).isInstanceOf(SyntaxException.class);
+    }
+}
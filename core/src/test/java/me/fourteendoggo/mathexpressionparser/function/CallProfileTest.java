@@ -0,0 +1,29 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CallProfileTest {
+
+    @Test
+    void testCallsAreCountedAndSampled() {
+        CallProfile profile = new CallProfile();
+        int calls = 64_000;
+        for (int i = 0; i < calls; i++) {
+            long start = profile.begin();
+            profile.end(i % 3, start);
+        }
+        profile.endBatch(10, 500);
+
+        assertThat(profile.getInvocations()).isEqualTo(calls + 500);
+        // about one in 64 calls is timed
+        assertThat(profile.getSamples()).isBetween(calls / 64 / 2L, calls / 64 * 2L);
+        assertThat(profile.getMaxNanos()).isGreaterThanOrEqualTo((long) profile.getMeanNanos());
+        assertThat(profile.getArgumentCounts()).containsExactly(21_334, 21_333, 21_333, 0, 0, 0, 0, 0, 500);
+
+        profile.reset();
+        assertThat(profile.getInvocations()).isZero();
+        assertThat(profile.getTotalNanos()).isZero();
+    }
+}
@@ -0,0 +1,71 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FixedArityFunctionCallSiteTest {
+    private ExecutionEnv env;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.empty();
+        env.insertFunction("zero", () -> 7);
+        env.insertFunction("neg", x -> -x);
+        env.insertFunction("sub", (a, b) -> a - b);
+        env.insertFunction("fma", (a, b, c) -> a * b + c);
+    }
+
+    @Test
+    void testCallsWithMatchingArity() {
+        assertThat(ExpressionParser.parse("zero()", env)).isEqualTo(7);
+        assertThat(ExpressionParser.parse("neg(2 + 1)", env)).isEqualTo(-3);
+        assertThat(ExpressionParser.parse("sub(10, neg(2))", env)).isEqualTo(12);
+        assertThat(ExpressionParser.parse("fma(2, 3, sub(5, 1)) * 2", env)).isEqualTo(20);
+        assertThat(ExpressionParser.parse("2fma(1, 1, 1)", env)).isEqualTo(4);
+    }
+
+    @Test
+    void testArityIsChecked() {
+        assertThatThrownBy(() -> ExpressionParser.parse("zero(1)", env))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("did not expect any parameters");
+        assertThatThrownBy(() -> ExpressionParser.parse("neg()", env))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessage("not enough arguments provided (expected 1, got 0)");
+        assertThatThrownBy(() -> ExpressionParser.parse("sub(1)", env))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessage("not enough arguments provided (expected 2, got 1)");
+        assertThatThrownBy(() -> ExpressionParser.parse("fma(1, 2, 3, 4, 5)", env))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessage("too many arguments provided (max 3, got 5)");
+        assertThatThrownBy(() -> ExpressionParser.parse("sub(1, 2", env))
+                .isInstanceOf(SyntaxException.class)
+                .hasMessageContaining("missing closing parenthesis");
+    }
+
+    @Test
+    void testInvokingThroughFunctionContext() {
+        FunctionCallSite site = new FixedArityFunctionCallSite.Ternary("f", (a, b, c) -> a + b * c);
+        FunctionContext ctx = site.allocateParameters();
+        ctx.add(1);
+        ctx.add(2);
+        assertThatThrownBy(() -> site.apply(ctx)).isInstanceOf(SyntaxException.class);
+
+        ctx.add(3);
+        assertThat(site.apply(ctx)).isEqualTo(7);
+        assertThat(site.getMinArgs()).isEqualTo(3);
+        assertThat(site.getMaxArgs()).isEqualTo(3);
+    }
+
+    @Test
+    void testNullFunctionIsRejected() {
+        assertThatThrownBy(() -> new FixedArityFunctionCallSite.Unary("f", null))
+                .isInstanceOf(NullPointerException.class);
+    }
+}
@@ -1,10 +1,15 @@
 package me.fourteendoggo.mathexpressionparser.function;
 
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
 import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -83,4 +88,33 @@ class FunctionContextTest {
     void testEmptyStream() {
         assertThat(ctx.stream().toArray()).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testNestedVariadicCallsShareOneStack() {
+        ExecutionEnv env = ExecutionEnv.defaulted();
+        assertThat(ExpressionParser.parse("max(1, min(5, 2, sum(1, 2, 3)), 3)", env)).isEqualTo(3);
+        assertThat(ExpressionParser.parse("sum(1, sum(2, sum(3, 4), 5), avg(6, max(7, 8, 9)))", env)).isEqualTo(22.5);
+
+        String args = IntStream.rangeClosed(1, 200)
+                .mapToObj(i -> i % 50 == 0 ? "sum(" + i + ", min(0, " + i + "))" : String.valueOf(i))
+                .collect(Collectors.joining(", "));
+        assertThat(ExpressionParser.parse("sum(" + args + ")", env)).isEqualTo(200 * 201 / 2);
+        assertThat(ExpressionParser.parse("max(" + args + ") + min(" + args + ")", env)).isEqualTo(201);
+    }
+
+    @Test
+    void testContextMustNotEscapeFunctionCall() {
+        AtomicReference<FunctionContext> escaped = new AtomicReference<>();
+        ExecutionEnv env = ExecutionEnv.empty();
+        env.insertFunction("leak", 1, 3, ctx -> {
+            escaped.set(ctx);
+            return ctx.getDouble(0);
+        });
+
+        assertThat(ExpressionParser.parse("leak(1, 2)", env)).isOne();
+        // assertions are enabled during tests
+        assertThatThrownBy(() -> escaped.get().getDouble(0))
+                .isInstanceOf(AssertionError.class)
+                .hasMessageContaining("after its function call returned");
+    }
+}
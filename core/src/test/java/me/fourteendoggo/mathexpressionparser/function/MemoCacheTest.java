@@ -0,0 +1,156 @@
+package me.fourteendoggo.mathexpressionparser.function;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.metrics.MetricsRecorder;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoCacheTest {
+    private ExecutionEnv env;
+    private AtomicInteger calls;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.empty();
+        calls = new AtomicInteger();
+    }
+
+    @Test
+    void testResultsAreCached() {
+        MemoCache cache = new MemoCache(64);
+        env.insertFunction("slow", x -> {
+            calls.incrementAndGet();
+            return x * 2;
+        }, cache);
+
+        assertThat(ExpressionParser.parse("slow(3) + slow(3) + slow(4)", env)).isEqualTo(20);
+        assertThat(ExpressionParser.parse("slow(3)", env)).isEqualTo(6);
+        assertThat(calls).hasValue(2);
+        assertThat(cache.getHits()).isEqualTo(2);
+        assertThat(cache.getMisses()).isEqualTo(2);
+        assertThat(cache.getHitRate()).isEqualTo(0.5);
+
+        cache.clear();
+        assertThat(ExpressionParser.parse("slow(3)", env)).isEqualTo(6);
+        assertThat(calls).hasValue(3);
+        assertThat(cache.getHits()).isZero();
+    }
+
+    @Test
+    void testArgumentTuplesAreDistinguished() {
+        MemoCache binaryCache = new MemoCache(64);
+        MemoCache ternaryCache = new MemoCache(64);
+        env.insertFunction("sub", (a, b) -> a - b, binaryCache);
+        env.insertFunction("fma", (a, b, c) -> a * b + c, ternaryCache);
+
+        assertThat(ExpressionParser.parse("sub(1, 2)", env)).isEqualTo(-1);
+        assertThat(ExpressionParser.parse("sub(2, 1)", env)).isEqualTo(1);
+        assertThat(ExpressionParser.parse("fma(1, 2, 3) + fma(1, 3, 2)", env)).isEqualTo(10);
+        assertThat(binaryCache.getMisses()).isEqualTo(2);
+        assertThat(ternaryCache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void testVariadicFunction() {
+        MemoCache cache = new MemoCache(16);
+        env.insertFunction("sum", 0, 8, ctx -> {
+            calls.incrementAndGet();
+            return ctx.stream().sum();
+        }, cache);
+
+        assertThat(ExpressionParser.parse("sum(1, 2) + sum(1, 2) + sum(1, 2, 0) + sum()", env)).isEqualTo(9);
+        assertThat(calls).hasValue(3);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        MemoCache cache = new MemoCache(5);
+        assertThat(cache.getCapacity()).isEqualTo(8);
+
+        CountingFunction fn = new CountingFunction();
+        DoubleUnaryOperator memoized = cache.memoize("f", fn);
+        IntStream.range(0, 1000).forEach(memoized::applyAsDouble);
+        IntStream.range(0, 1000).forEach(memoized::applyAsDouble);
+        // at most 8 of the 1000 distinct arguments can still be cached
+        assertThat(cache.getHits()).isLessThanOrEqualTo(8);
+        assertThat(fn.calls).isGreaterThanOrEqualTo(2000 - 8);
+    }
+
+    @Test
+    void testConcurrentUse() {
+        MemoCache cache = new MemoCache(128);
+        env.insertFunction("sq", x -> x * x, cache);
+
+        IntStream.range(0, 10_000).parallel().forEach(i -> {
+            int x = i % 100;
+            assertThat(ExpressionParser.parse("sq(" + x + ")", env)).isEqualTo(x * x);
+        });
+        assertThat(cache.getHits() + cache.getMisses()).isEqualTo(10_000);
+    }
+
+    @Test
+    void testInvalidUsage() {
+        MemoCache cache = new MemoCache(8);
+        env.insertFunction("f", x -> x, cache);
+        assertThatThrownBy(() -> env.insertFunction("g", x -> x, cache))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("f");
+        assertThatThrownBy(() -> new MemoCache(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testFailedInsertDoesNotBindTheCache() {
+        MemoCache cache = new MemoCache(8);
+        env.insertFunction("f", x -> x);
+        assertThatThrownBy(() -> env.insertFunction("f", x -> x, cache)).isInstanceOf(SyntaxException.class);
+        env.insertFunction("g", x -> x + 1, cache);
+        assertThat(ExpressionParser.parse("g(1)", env)).isEqualTo(2);
+        assertThat(cache.toString()).contains("function=g");
+    }
+
+    @Test
+    void testRemovingTheFunctionFreesTheCache() {
+        MetricsRecorder metrics = new MetricsRecorder();
+        env.setMetrics(metrics);
+        MemoCache cache = new MemoCache(8);
+        env.insertFunction("f", x -> x * 2, cache);
+        assertThat(ExpressionParser.parse("f(3)", env)).isEqualTo(6);
+        assertThat(metrics.getCacheMisses()).isEqualTo(1);
+
+        env.removeSymbol("f");
+        env.insertFunction("g", x -> x * 3, cache);
+        // the results of f are gone
+        assertThat(ExpressionParser.parse("g(3)", env)).isEqualTo(9);
+        assertThat(cache.toString()).contains("function=g");
+
+        // only the cache of g is still attached
+        MetricsRecorder replaced = new MetricsRecorder();
+        env.setMetrics(replaced);
+        ExpressionParser.parse("g(3)", env);
+        assertThat(replaced.getCacheHits()).isEqualTo(1);
+        env.removeSymbol("g");
+        env.setMetrics(metrics);
+        cache.memoize("h", x -> x).applyAsDouble(1);
+        assertThat(metrics.getCacheMisses()).isEqualTo(2);
+    }
+
+    private static class CountingFunction implements DoubleUnaryOperator {
+        int calls;
+
+        @Override
+        public double applyAsDouble(double operand) {
+            calls++;
+            return operand;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.function.MemoCache;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpressionEventsTest {
+    private static final String PREFIX = "me.fourteendoggo.mathexpressionparser.";
+
+    @TempDir
+    Path dir;
+    private ExecutionEnv env;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.empty();
+        env.insertFunction("slow", x -> {
+            long end = System.nanoTime() + 2_000_000;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            return x;
+        });
+        env.insertFunction("cached", x -> x + 1, new MemoCache(1));
+    }
+
+    @Test
+    void testEventsAreRecordedWhenEnabled() throws IOException {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(PREFIX + "Compile");
+            recording.enable(PREFIX + "Evaluate");
+            recording.enable(PREFIX + "SlowFunctionCall");
+            recording.enable(PREFIX + "CacheEviction");
+            recording.start();
+            run();
+            recording.stop();
+            events = dump(recording);
+        }
+
+        assertThat(named(events, "Compile")).singleElement().satisfies(event -> {
+            assertThat(event.getString("source")).isEqualTo("slow(x) + 1");
+            assertThat(event.getInt("sourceHash")).isEqualTo("slow(x) + 1".hashCode());
+            assertThat(event.getInt("environment")).isEqualTo(System.identityHashCode(env));
+        });
+        List<RecordedEvent> evaluations = named(events, "Evaluate");
+        assertThat(evaluations).hasSize(2);
+        assertThat(evaluations).filteredOn(event -> event.getBoolean("compiled")).singleElement()
+                .satisfies(event -> assertThat(event.getDuration()).isGreaterThanOrEqualTo(Duration.ofMillis(2)));
+        assertThat(evaluations).filteredOn(event -> !event.getBoolean("compiled")).singleElement()
+                .satisfies(event -> assertThat(event.getString("source")).startsWith("cached(1)").endsWith("...").hasSize(128));
+        // the slow function was called once when evaluating the compiled expression
+        assertThat(named(events, "SlowFunctionCall"))
+                .filteredOn(event -> event.getString("function").equals("slow"))
+                .singleElement()
+                .satisfies(event -> assertThat(event.getInt("arguments")).isEqualTo(1));
+        // a cache of one slot evicts 1 when caching 2, and 2 again when caching 1
+        assertThat(named(events, "CacheEviction")).hasSize(2)
+                .allSatisfy(event -> assertThat(event.getString("function")).isEqualTo("cached"));
+    }
+
+    @Test
+    void testEventsAreDisabledByDefault() throws IOException {
+        try (Recording recording = new Recording()) {
+            recording.start();
+            run();
+            recording.stop();
+            assertThat(dump(recording)).noneMatch(event -> event.getEventType().getName().startsWith(PREFIX));
+        }
+    }
+
+    private void run() {
+        CompiledExpression expr = ExpressionParser.compile("slow(x) + 1", env, "x");
+        expr.evaluate(1);
+        ExpressionParser.parse("cached(1) + cached(2) + cached(1)" + " + 0".repeat(50), env);
+    }
+
+    private List<RecordedEvent> dump(Recording recording) throws IOException {
+        Path file = dir.resolve("recording.jfr");
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(PREFIX + name)).toList();
+    }
+}
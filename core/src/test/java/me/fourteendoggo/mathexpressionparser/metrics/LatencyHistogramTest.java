@@ -0,0 +1,43 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsCoverAllValues() {
+        long previousBound = -1;
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long bound = LatencyHistogram.bucketUpperBound(index);
+            assertThat(bound).isGreaterThanOrEqualTo(value).isGreaterThanOrEqualTo(previousBound);
+            // within 12.5%
+            assertThat((double) bound - value).isLessThanOrEqualTo(value / 8.0);
+            previousBound = bound;
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getPercentile(99)).isZero();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.getMean()).isEqualTo(500_500);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000);
+        assertThat(histogram.getPercentile(50)).isBetween(500_000L, 562_500L);
+        assertThat(histogram.getPercentile(99)).isBetween(990_000L, 1_000_000L);
+        assertThat(histogram.getPercentile(100)).isEqualTo(1_000_000);
+        assertThatThrownBy(() -> histogram.getPercentile(101)).isInstanceOf(IllegalArgumentException.class);
+
+        histogram.reset();
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMax()).isZero();
+    }
+}
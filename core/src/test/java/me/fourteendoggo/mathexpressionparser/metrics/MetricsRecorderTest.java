@@ -0,0 +1,112 @@
+package me.fourteendoggo.mathexpressionparser.metrics;
+
+import me.fourteendoggo.mathexpressionparser.EvaluationLimits;
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.exceptions.EvaluationLimitException;
+import me.fourteendoggo.mathexpressionparser.exceptions.SymbolNotFoundException;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.function.MemoCache;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MetricsRecorderTest {
+    private ExecutionEnv env;
+    private MetricsRecorder metrics;
+
+    @BeforeEach
+    void setUp() {
+        env = ExecutionEnv.empty();
+        env.insertFunction("sq", x -> x * x);
+        env.insertFunction("sum", 0, Integer.MAX_VALUE, ctx -> ctx.size());
+        metrics = new MetricsRecorder();
+        env.setMetrics(metrics);
+    }
+
+    @Test
+    void testParsing() {
+        assertThat(ExpressionParser.parse("sq(2) + sq(3) + sum(1, 2)", env)).isEqualTo(15);
+
+        assertThat(metrics.getParseLatency().getCount()).isEqualTo(1);
+        assertThat(metrics.getFunctionCalls()).containsExactly(Map.entry("sq", 2L), Map.entry("sum", 1L));
+    }
+
+    @Test
+    void testCompiledEvaluation() {
+        CompiledExpression expr = ExpressionParser.compile("sq(x) + sum(x, 1)", env, "x");
+        assertThat(metrics.getCompileLatency().getCount()).isEqualTo(1);
+
+        expr.evaluate(1);
+        expr.evaluate(2);
+        expr.evaluateBatch(new double[][]{{1, 2, 3}}, new double[3]);
+
+        assertThat(metrics.getEvaluateLatency().getCount()).isEqualTo(2);
+        assertThat(metrics.getFunctionCalls("sq")).isEqualTo(5);
+        assertThat(metrics.getFunctionCalls("sum")).isEqualTo(5);
+        assertThat(metrics.getFunctionCalls("unknown")).isZero();
+    }
+
+    @Test
+    void testCacheHitsAndMisses() {
+        MemoCache cache = new MemoCache(16);
+        env.insertFunction("cube", x -> x * x * x, cache);
+        ExpressionParser.parse("cube(2) + cube(2) + cube(3)", env);
+
+        assertThat(metrics.getCacheHits()).isEqualTo(1);
+        assertThat(metrics.getCacheMisses()).isEqualTo(2);
+
+        env.setMetrics(null);
+        ExpressionParser.parse("cube(2)", env);
+        assertThat(metrics.getCacheHits()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(2);
+    }
+
+    @Test
+    void testErrorsAreCountedByKind() {
+        assertThatThrownBy(() -> ExpressionParser.parse("1 +", env)).isInstanceOf(SyntaxException.class);
+        assertThatThrownBy(() -> ExpressionParser.parse("unknown(1)", env)).isInstanceOf(SymbolNotFoundException.class);
+        assertThatThrownBy(() -> ExpressionParser.compile("1 / ", env)).isInstanceOf(SyntaxException.class);
+
+        assertThat(metrics.getErrors(SyntaxException.class)).isEqualTo(2);
+        assertThat(metrics.getErrors(SymbolNotFoundException.class)).isEqualTo(1);
+        assertThat(metrics.getErrors()).containsEntry("SyntaxException", 2L);
+        assertThat(metrics.getParseLatency().getCount()).isZero();
+    }
+
+    @Test
+    void testLimitedEvaluationsAreObserved() {
+        CompiledExpression expr = ExpressionParser.compile("sq(x) + 1", env, "x");
+        EvaluationLimits limits = EvaluationLimits.NONE.withTimeout(Duration.ofSeconds(10));
+        assertThat(expr.evaluate(limits, 2)).isEqualTo(5);
+        assertThat(expr.evaluate(limits.withMaxCalls(5), 2)).isEqualTo(5);
+        assertThatThrownBy(() -> expr.evaluate(limits.withMaxOperations(0), 2)).isInstanceOf(EvaluationLimitException.class);
+
+        assertThat(metrics.getEvaluateLatency().getCount()).isEqualTo(2);
+        assertThat(metrics.getErrors(EvaluationLimitException.class)).isEqualTo(1);
+    }
+
+    @Test
+    void testDetachedMetricsAreNotNotified() {
+        CompiledExpression expr = ExpressionParser.compile("sq(x)", env, "x");
+        env.setMetrics(null);
+        CompiledExpression unmetered = ExpressionParser.compile("sq(x)", env, "x");
+        ExpressionParser.parse("sq(2)", env);
+        unmetered.evaluate(1);
+        assertThat(metrics.getFunctionCalls()).isEmpty();
+
+        // captured when compiling
+        expr.evaluate(1);
+        assertThat(metrics.getFunctionCalls("sq")).isEqualTo(1);
+
+        metrics.reset();
+        assertThat(metrics.getFunctionCalls()).isEmpty();
+        assertThat(metrics.getEvaluateLatency().getCount()).isZero();
+    }
+}
@@ -0,0 +1,146 @@
+package me.fourteendoggo.mathexpressionparser.symbol;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.exceptions.SymbolNotFoundException;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SymbolSnapshotTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRoundTrip() throws IOException {
+        ExecutionEnv env = ExecutionEnv.empty();
+        String[] names = {"x", "xy", "xyz", "_a", "b_2", "zB9", "a"};
+        for (int i = 0; i < names.length; i++) {
+            env.insertVariable(names[i], i * 1.5);
+        }
+        env.insertFunction("f", () -> 3);
+        env.insertLazyVariable("lazy", () -> 4);
+
+        Path file = tempDir.resolve("env.bin");
+        env.writeSnapshot(file);
+        ExecutionEnv restored = ExecutionEnv.fromSnapshot(file);
+
+        for (int i = 0; i < names.length; i++) {
+            assertThat(ExpressionParser.parse(names[i], restored)).isEqualTo(i * 1.5);
+        }
+        assertThat(ExpressionParser.parse("xy * 2 + x", restored)).isEqualTo(3);
+        // functions and lazy variables are not part of the snapshot
+        assertThatThrownBy(() -> ExpressionParser.parse("f()", restored)).isInstanceOf(SymbolNotFoundException.class);
+        assertThatThrownBy(() -> ExpressionParser.parse("lazy", restored)).isInstanceOf(SymbolNotFoundException.class);
+        assertThatThrownBy(() -> ExpressionParser.parse("xyzw", restored))
+                .isInstanceOf(SymbolNotFoundException.class)
+                .hasMessageContaining("xyzw");
+    }
+
+    @Test
+    void testInsertingOnTopOfSnapshot() throws IOException {
+        ExecutionEnv env = ExecutionEnv.empty();
+        env.insertVariable("a", 1);
+
+        Path file = tempDir.resolve("env.bin");
+        env.writeSnapshot(file);
+        ExecutionEnv restored = ExecutionEnv.fromSnapshot(file);
+
+        assertThatThrownBy(() -> restored.insertVariable("a", 2)).isInstanceOf(SyntaxException.class);
+        assertThat(restored.insertVariableIfAbsent("a", 2)).isEqualTo(new Variable("a", 1));
+        assertThat(restored.removeSymbol("a")).isNull();
+
+        restored.insertVariable("b", 2);
+        restored.insertFunction("twice", x -> x * 2);
+        assertThat(ExpressionParser.parse("twice(a + b)", restored)).isEqualTo(6);
+
+        // a snapshot of a restored env contains both layers
+        Path second = tempDir.resolve("second.bin");
+        restored.writeSnapshot(second);
+        assertThat(ExpressionParser.parse("a + b", ExecutionEnv.fromSnapshot(second))).isEqualTo(3);
+    }
+
+    @Test
+    void testEmptySnapshot() throws IOException {
+        Path file = tempDir.resolve("empty.bin");
+        ExecutionEnv.empty().writeSnapshot(file);
+
+        ExecutionEnv restored = ExecutionEnv.fromSnapshot(file);
+        assertThatThrownBy(() -> ExpressionParser.parse("a", restored)).isInstanceOf(SymbolNotFoundException.class);
+    }
+
+    @Test
+    void testInvalidFilesAreRejected() throws IOException {
+        Path garbage = Files.write(tempDir.resolve("garbage.bin"), new byte[]{1, 2, 3});
+        assertThatThrownBy(() -> ExecutionEnv.fromSnapshot(garbage)).isInstanceOf(IOException.class);
+
+        ExecutionEnv env = ExecutionEnv.empty();
+        env.insertVariable("abc", 1);
+        Path file = tempDir.resolve("env.bin");
+        env.writeSnapshot(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = Files.write(tempDir.resolve("truncated.bin"), Arrays.copyOf(bytes, bytes.length - 1));
+        assertThatThrownBy(() -> ExecutionEnv.fromSnapshot(truncated))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("truncated");
+    }
+
+    @Test
+    void testCorruptNamesAreRejected() throws IOException {
+        ExecutionEnv env = ExecutionEnv.empty();
+        env.insertVariable("ab", 1);
+        env.insertVariable("cd", 2);
+        Path file = tempDir.resolve("env.bin");
+        env.writeSnapshot(file);
+
+        // header (16), two values (16), three name offsets (12), then the names
+        byte[] bytes = Files.readAllBytes(file);
+        int offsets = 16 + 2 * Double.BYTES;
+        int names = offsets + 3 * Integer.BYTES;
+
+        byte[] outOfBounds = bytes.clone();
+        ByteBuffer.wrap(outOfBounds).putInt(offsets + Integer.BYTES, 5);
+        assertInvalid(outOfBounds, "invalid name offsets");
+
+        byte[] decreasing = bytes.clone();
+        ByteBuffer.wrap(decreasing).putInt(offsets + Integer.BYTES, 0);
+        assertInvalid(decreasing, "invalid name offsets");
+
+        byte[] unsorted = bytes.clone();
+        System.arraycopy("cdab".getBytes(StandardCharsets.US_ASCII), 0, unsorted, names, 4);
+        assertInvalid(unsorted, "unsorted");
+
+        byte[] duplicate = bytes.clone();
+        System.arraycopy("abab".getBytes(StandardCharsets.US_ASCII), 0, duplicate, names, 4);
+        assertInvalid(duplicate, "unsorted");
+    }
+
+    @Test
+    void testLookupReturnsTheMappedVariable() throws IOException {
+        ExecutionEnv env = ExecutionEnv.empty();
+        env.insertVariable("a", 1);
+        Path file = tempDir.resolve("env.bin");
+        env.writeSnapshot(file);
+
+        SymbolSnapshot snapshot = SymbolSnapshot.map(file);
+        Variable first = snapshot.lookup("a + 1".toCharArray(), 0);
+        assertThat(first).isEqualTo(new Variable("a", 1));
+        assertThat(snapshot.lookup("1 + a".toCharArray(), 4)).isSameAs(first);
+    }
+
+    private void assertInvalid(byte[] bytes, String message) throws IOException {
+        Path file = Files.write(tempDir.resolve("invalid.bin"), bytes);
+        assertThatThrownBy(() -> ExecutionEnv.fromSnapshot(file))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(message);
+    }
+}
@@ -0,0 +1,231 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates expressions, one per line, on a pool of worker threads and writes one result per line, in input order.
+ * <p>
+ * The calling thread reads lines into chunks, workers evaluate whole chunks and format their results
+ * into the buffer of the chunk, and a writer thread copies those buffers to the output in order.
+ * A fixed amount of chunks is recycled between them, so no more than that many chunks are ever in flight
+ * and a slow chunk only holds back the chunks behind it, up to that amount.
+ * <p>
+ * Blank lines produce a blank line, expressions that fail produce {@code error: <message>}.
+ */
+public final class BatchEvaluator {
+    static final int CHUNK_SIZE = 1024;
+    // chunks per worker, enough to keep every worker busy while the writer waits for a slow chunk
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final ExecutionEnv env;
+    private final int threads;
+
+    /**
+     * @param env     the environment all expressions are evaluated in, only read from while evaluating
+     * @param threads the amount of worker threads
+     */
+    public BatchEvaluator(ExecutionEnv env, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1, got " + threads);
+        }
+        this.env = env;
+        this.threads = threads;
+    }
+
+    /**
+     * Evaluates all lines of the given inputs, one input after the other, and writes the results to the output.
+     * The output is flushed, but not closed.
+     *
+     * @return the amount of lines that failed to evaluate
+     * @throws IOException if reading an input or writing the output failed
+     */
+    public long run(List<? extends Reader> inputs, Writer out) throws IOException, InterruptedException {
+        int window = threads * CHUNKS_PER_THREAD;
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(window);
+        for (int i = 0; i < window; i++) {
+            free.add(new Chunk());
+        }
+        ReorderBuffer ordered = new ReorderBuffer(window);
+        OutputWriter writer = new OutputWriter(ordered, free, out);
+        Thread writerThread = new Thread(writer, "batch-writer");
+        writerThread.start();
+
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "batch-worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sequence = 0;
+        try {
+            Chunk chunk = free.take();
+            for (Reader input : inputs) {
+                BufferedReader reader = input instanceof BufferedReader buffered ? buffered : new BufferedReader(input, READ_BUFFER_SIZE);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    chunk.lines[chunk.size++] = line;
+                    if (chunk.size == CHUNK_SIZE) {
+                        submit(workers, ordered, chunk, sequence++);
+                        chunk = free.take();
+                    }
+                }
+            }
+            if (chunk.size > 0) {
+                submit(workers, ordered, chunk, sequence++);
+                chunk = free.take();
+            }
+            // an empty chunk marks the end of the input
+            chunk.sequence = sequence;
+            ordered.put(chunk);
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            // the writer would wait for the end of the input forever
+            writerThread.interrupt();
+            throw e;
+        } finally {
+            workers.shutdown();
+        }
+        writerThread.join();
+        if (writer.failure != null) {
+            throw writer.failure;
+        }
+        return writer.errors;
+    }
+
+    private void submit(ExecutorService workers, ReorderBuffer ordered, Chunk chunk, long sequence) {
+        chunk.sequence = sequence;
+        workers.execute(() -> {
+            try {
+                evaluate(chunk);
+            } finally {
+                // even a partially evaluated chunk must be handed over, or the writer would wait for it forever
+                ordered.put(chunk);
+            }
+        });
+    }
+
+    private void evaluate(Chunk chunk) {
+        StringBuilder output = chunk.output;
+        for (int i = 0; i < chunk.size; i++) {
+            String line = chunk.lines[i];
+            chunk.lines[i] = null;
+            if (!line.isBlank()) {
+                try {
+                    output.append(ExpressionParser.parse(line, env));
+                } catch (RuntimeException | StackOverflowError e) {
+                    output.append("error: ").append(e.getMessage());
+                    chunk.errors++;
+                }
+            }
+            output.append('\n');
+        }
+    }
+
+    private static final class Chunk {
+        final String[] lines = new String[CHUNK_SIZE];
+        final StringBuilder output = new StringBuilder(CHUNK_SIZE * 24);
+        int size;
+        int errors;
+        long sequence;
+
+        void reset() {
+            output.setLength(0);
+            size = 0;
+            errors = 0;
+        }
+    }
+
+    /**
+     * Hands out chunks in sequence order. Only as many chunks as there are slots exist,
+     * so the sequences of the chunks in here never collide modulo the amount of slots.
+     */
+    private static final class ReorderBuffer {
+        private final Chunk[] slots;
+        private long next;
+
+        ReorderBuffer(int capacity) {
+            this.slots = new Chunk[capacity];
+        }
+
+        synchronized void put(Chunk chunk) {
+            slots[(int) (chunk.sequence % slots.length)] = chunk;
+            if (chunk.sequence == next) {
+                notifyAll();
+            }
+        }
+
+        synchronized Chunk take() throws InterruptedException {
+            int index = (int) (next % slots.length);
+            while (slots[index] == null) {
+                wait();
+            }
+            Chunk chunk = slots[index];
+            slots[index] = null;
+            next++;
+            return chunk;
+        }
+    }
+
+    private static final class OutputWriter implements Runnable {
+        private final ReorderBuffer ordered;
+        private final BlockingQueue<Chunk> free;
+        private final Writer out;
+        private char[] buffer = new char[CHUNK_SIZE * 24];
+        // only read after joining the writer thread
+        private IOException failure;
+        private long errors;
+
+        OutputWriter(ReorderBuffer ordered, BlockingQueue<Chunk> free, Writer out) {
+            this.ordered = ordered;
+            this.free = free;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Chunk chunk;
+                while ((chunk = ordered.take()).size > 0) {
+                    write(chunk.output);
+                    errors += chunk.errors;
+                    chunk.reset();
+                    free.put(chunk);
+                }
+                if (failure == null) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write(StringBuilder output) {
+            // keep draining after a failure, the reader would block on the free chunks otherwise
+            if (failure != null) return;
+            int length = output.length();
+            if (buffer.length < length) {
+                buffer = new char[length];
+            }
+            // copying into a reused array avoids turning every chunk into a String
+            output.getChars(0, length, buffer, 0);
+            try {
+                out.write(buffer, 0, length);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+}
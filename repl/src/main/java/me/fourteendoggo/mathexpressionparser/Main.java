@@ -2,25 +2,48 @@ package me.fourteendoggo.mathexpressionparser;
 
 import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
 
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 public class Main {
+    private static final int PROFILE_REPORT_SIZE = 10;
+    private static final String BATCH_USAGE = "usage: --batch [--threads <n>] [file...], reads from stdin if no files are given";
     private static boolean running = true;
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(runBatch(args));
+        }
         ExecutionEnv env = ExecutionEnv.defaulted();
         env.insertFunction("exit", () -> {
             running = false;
             return 0;
         });
+        env.setProfiling(true);
 
         Scanner in = new Scanner(System.in);
 
         while (running) {
-            System.out.print("Enter an expression or type exit() to exit: ");
+            System.out.print("Enter an expression, :profile to show the most expensive functions or exit() to exit: ");
             try {
                 String input = in.nextLine();
+                if (input.strip().equals(":profile")) {
+                    System.out.print(env.profileReport(PROFILE_REPORT_SIZE));
+                    continue;
+                }
                 long now = System.nanoTime();
                 double result = ExpressionParser.parse(input, env);
                 double elapsedMicros = (System.nanoTime() - now) / 1000.0;
@@ -32,4 +55,56 @@ public class Main {
             }
         }
     }
+
+    /**
+     * Evaluates every line of the given files, or of stdin, and prints one result per line in the same order.
+     *
+     * @return the exit code, 1 if any line failed to evaluate
+     */
+    static int runBatch(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--threads")) {
+                try {
+                    // a missing value is as invalid as a malformed one, and must not be taken for a file
+                    threads = i + 1 < args.length ? Integer.parseInt(args[++i]) : 0;
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println(BATCH_USAGE);
+                    return 2;
+                }
+            } else {
+                files.add(Path.of(args[i]));
+            }
+        }
+
+        List<Reader> inputs = new ArrayList<>();
+        // bypass System.out, which flushes on every newline and locks on every call
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16);
+        try {
+            if (files.isEmpty()) {
+                inputs.add(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            }
+            for (Path file : files) {
+                inputs.add(Files.newBufferedReader(file));
+            }
+            long errors = new BatchEvaluator(ExecutionEnv.defaulted(), threads).run(inputs, out);
+            return errors > 0 ? 1 : 0;
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            return 130;
+        } finally {
+            for (Reader input : inputs) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
 }
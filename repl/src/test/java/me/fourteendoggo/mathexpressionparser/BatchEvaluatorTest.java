@@ -0,0 +1,100 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+@Timeout(30)
+class BatchEvaluatorTest {
+    private final BatchEvaluator evaluator = new BatchEvaluator(ExecutionEnv.defaulted(), 8);
+
+    @Test
+    void testOutputIsInInputOrder() throws IOException, InterruptedException {
+        int lines = BatchEvaluator.CHUNK_SIZE * 50 + 7;
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            // uneven work per chunk, so chunks complete out of order
+            input.append(i % 3 == 0 ? "sqrt(" + i + " * " + i + ")" : String.valueOf(i)).append('\n');
+            expected.append((double) i).append('\n');
+        }
+
+        StringWriter out = new StringWriter();
+        assertThat(evaluator.run(List.of(new StringReader(input.toString())), out)).isZero();
+        assertThat(out.toString()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    void testInputEndingOnChunkBoundary() throws IOException, InterruptedException {
+        String input = "1 + 1\n".repeat(BatchEvaluator.CHUNK_SIZE * 2);
+
+        StringWriter out = new StringWriter();
+        assertThat(evaluator.run(List.of(new StringReader(input)), out)).isZero();
+        assertThat(out.toString()).isEqualTo("2.0\n".repeat(BatchEvaluator.CHUNK_SIZE * 2));
+    }
+
+    @Test
+    void testMultipleInputsAndBlankLines() throws IOException, InterruptedException {
+        StringWriter out = new StringWriter();
+        evaluator.run(List.of(new StringReader("1\n\n2"), new StringReader("3\n")), out);
+        assertThat(out.toString()).isEqualTo("1.0\n\n2.0\n3.0\n");
+
+        StringWriter empty = new StringWriter();
+        assertThat(evaluator.run(List.of(new StringReader("")), empty)).isZero();
+        assertThat(empty.toString()).isEmpty();
+    }
+
+    @Test
+    void testErrorsAreWrittenAndCounted() throws IOException, InterruptedException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < BatchEvaluator.CHUNK_SIZE * 3; i++) {
+            input.append(i % 100 == 0 ? "1 +" : "2").append('\n');
+        }
+
+        StringWriter out = new StringWriter();
+        long errors = evaluator.run(List.of(new StringReader(input.toString())), out);
+
+        String[] results = out.toString().split("\n");
+        assertThat(results).hasSize(BatchEvaluator.CHUNK_SIZE * 3);
+        for (int i = 0; i < results.length; i++) {
+            if (i % 100 == 0) {
+                assertThat(results[i]).startsWith("error: ");
+            } else {
+                assertThat(results[i]).isEqualTo("2.0");
+            }
+        }
+        assertThat(errors).isEqualTo((BatchEvaluator.CHUNK_SIZE * 3 + 99) / 100);
+    }
+
+    @Test
+    void testFailingWriterIsRethrown() {
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] buf, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        // more chunks than are ever in flight, the reader must not block after the writer failed
+        String input = "1\n".repeat(BatchEvaluator.CHUNK_SIZE * 100);
+
+        assertThatThrownBy(() -> evaluator.run(List.of(new StringReader(input)), failing))
+                .isInstanceOf(IOException.class)
+                .hasMessage("disk full");
+    }
+}
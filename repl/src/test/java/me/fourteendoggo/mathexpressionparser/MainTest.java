@@ -0,0 +1,14 @@
+package me.fourteendoggo.mathexpressionparser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MainTest {
+    @Test
+    void testInvalidThreadCountsPrintTheUsage() {
+        assertThat(Main.runBatch(new String[]{"--batch", "--threads"})).isEqualTo(2);
+        assertThat(Main.runBatch(new String[]{"--batch", "--threads", "0"})).isEqualTo(2);
+        assertThat(Main.runBatch(new String[]{"--batch", "--threads", "many"})).isEqualTo(2);
+    }
+}
@@ -0,0 +1,408 @@
+package me.fourteendoggo.mathexpressionparser.server;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves expression evaluation over a binary protocol on a Unix domain socket, for callers on the same host
+ * that want to evaluate many rows at once without formatting and parsing numbers.
+ * <p>
+ * All numbers are little endian. Every frame starts with an int32 holding the amount of bytes that follow it.
+ * Strings are an uint16 byte count followed by UTF-8 bytes. Requests continue with a type byte:
+ * <ul>
+ *     <li>{@link #REGISTER}: the formula, an uint16 parameter count and the parameter names.
+ *     Responds with the int32 id of the formula, valid for this connection only</li>
+ *     <li>{@link #EVALUATE}: an int32 formula id, an int32 row count and the bindings</li>
+ *     <li>{@link #EVALUATE_TEXT}: the formula, the parameters like {@link #REGISTER}, an int32 row count and the bindings</li>
+ * </ul>
+ * Bindings are doubles stored column by column: all rows of the first parameter, then all rows of the second one, etc.
+ * A request has at most {@link #MAX_ROWS} rows.
+ * <p>
+ * Responses continue with a status byte. For {@link #STATUS_OK}, a register response holds the id,
+ * an evaluate response holds the int32 row count, the results as doubles and one {@code ROW_*} code per row,
+ * the result of a failed row is NaN. Any other status is followed by an UTF-8 message up to the end of the frame.
+ * <p>
+ * Requests can be pipelined, responses are only written once no complete request is buffered anymore.
+ * Every connection is served by its own thread, using one direct buffer for input and one for output.
+ */
+public final class BinaryExpressionServer implements Closeable {
+    public static final byte REGISTER = 1;
+    public static final byte EVALUATE = 2;
+    public static final byte EVALUATE_TEXT = 3;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_MALFORMED_FRAME = 1;
+    public static final byte STATUS_UNKNOWN_FORMULA = 2;
+    public static final byte STATUS_COMPILE_ERROR = 3;
+
+    public static final byte ROW_OK = 0;
+    /**
+     * The expression rejected the arguments of this row, f.e. a non integer argument to gcd.
+     */
+    public static final byte ROW_EVALUATION_ERROR = 1;
+    public static final byte ROW_INTERNAL_ERROR = 2;
+
+    public static final int MAX_FRAME_SIZE = 64 << 20;
+    /**
+     * The maximum amount of rows of an evaluate request, so its response still fits in {@link #MAX_FRAME_SIZE}.
+     */
+    public static final int MAX_ROWS = (MAX_FRAME_SIZE - 1 - 4) / (Double.BYTES + 1);
+    public static final int MAX_FORMULAS_PER_CONNECTION = 1 << 16;
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    private final CompiledExpressionCache cache;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final ExecutorService connectionThreads;
+    private ServerSocketChannel serverChannel;
+    private Path path;
+
+    /**
+     * @param env           the environment expressions are evaluated in, must not be modified after starting the server
+     * @param cacheCapacity the maximum amount of compiled expressions to keep
+     */
+    public BinaryExpressionServer(ExecutionEnv env, int cacheCapacity) {
+        this.cache = new CompiledExpressionCache(env, cacheCapacity);
+        AtomicInteger connectionCount = new AtomicInteger();
+        this.connectionThreads = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "binary-server-connection-" + connectionCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: BinaryExpressionServer <socket path> [cache capacity]");
+            System.exit(2);
+        }
+        int cacheCapacity = args.length > 1 ? Integer.parseInt(args[1]) : ExpressionServer.DEFAULT_CACHE_CAPACITY;
+        BinaryExpressionServer server = new BinaryExpressionServer(ExecutionEnv.defaulted(), cacheCapacity);
+        server.bind(Path.of(args[0]));
+        System.out.println("Listening on " + server.path);
+        // accept on the main thread, the other threads are daemons
+        server.acceptLoop();
+    }
+
+    /**
+     * Binds to the given socket file and starts accepting connections on a background thread.
+     * The file must not exist yet, it is deleted again when closing the server.
+     *
+     * @throws IOException if the socket could not be bound
+     */
+    public void start(Path path) throws IOException {
+        bind(path);
+        Thread acceptor = new Thread(this::acceptLoop, "binary-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void bind(Path path) throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("server is already started");
+        }
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(path));
+        this.path = path;
+    }
+
+    public CompiledExpressionCache getCache() {
+        return cache;
+    }
+
+    private void acceptLoop() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                connections.add(channel);
+                connectionThreads.execute(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Failed to accept a connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            new Connection(channel).run();
+        } catch (ClosedChannelException ignored) { // closed by close()
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        } finally {
+            connections.remove(channel);
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes all open ones and deletes the socket file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (serverChannel == null) return;
+        serverChannel.close();
+        for (SocketChannel channel : connections) {
+            channel.close();
+        }
+        connectionThreads.shutdown();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Thrown to reject a single request, the connection stays open.
+     */
+    private static final class RequestException extends Exception {
+        private final byte status;
+
+        RequestException(byte status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final List<Formula> formulas = new ArrayList<>();
+        private ByteBuffer in = allocate(INITIAL_BUFFER_SIZE);
+        private ByteBuffer out = allocate(INITIAL_BUFFER_SIZE);
+        // reused between requests, grown as needed
+        private double[][] columnPool = new double[0][];
+        private double[] results = new double[0];
+        private byte[] rowCodes = new byte[0];
+        private double[] rowArgs = new double[0];
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void run() throws IOException {
+            while (true) {
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length < 1 || length > MAX_FRAME_SIZE) {
+                        // the stream cannot be resynchronized after an invalid length
+                        writeError(STATUS_MALFORMED_FRAME, "invalid frame length " + length);
+                        flush();
+                        return;
+                    }
+                    if (in.remaining() - 4 < length) break;
+                    int frameEnd = in.position() + 4 + length;
+                    in.position(in.position() + 4);
+                    ByteBuffer frame = in.slice(in.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+                    handle(frame);
+                    in.position(frameEnd);
+                }
+                int needed = in.remaining() >= 4 ? 4 + in.getInt(in.position()) : 4;
+                in.compact();
+                if (needed > in.capacity()) {
+                    in = grow(in, needed);
+                }
+                // no complete request left, answer everything handled so far in one write
+                flush();
+                if (channel.read(in) < 0) return;
+            }
+        }
+
+        private void handle(ByteBuffer frame) throws IOException {
+            try {
+                byte type = frame.get();
+                switch (type) {
+                    case REGISTER -> register(frame);
+                    case EVALUATE -> {
+                        int id = frame.getInt();
+                        if (id < 0 || id >= formulas.size()) {
+                            throw new RequestException(STATUS_UNKNOWN_FORMULA, "unknown formula id " + id);
+                        }
+                        evaluate(formulas.get(id), frame);
+                    }
+                    case EVALUATE_TEXT -> evaluate(readFormula(frame), frame);
+                    default -> throw new RequestException(STATUS_MALFORMED_FRAME, "unknown request type " + type);
+                }
+            } catch (RequestException e) {
+                writeError(e.status, e.getMessage());
+            } catch (BufferUnderflowException e) {
+                writeError(STATUS_MALFORMED_FRAME, "frame ends too early");
+            }
+        }
+
+        private void register(ByteBuffer frame) throws RequestException, IOException {
+            if (formulas.size() == MAX_FORMULAS_PER_CONNECTION) {
+                throw new RequestException(STATUS_MALFORMED_FRAME, "too many formulas registered, at most " + MAX_FORMULAS_PER_CONNECTION);
+            }
+            Formula formula = readFormula(frame);
+            if (frame.hasRemaining()) {
+                throw new RequestException(STATUS_MALFORMED_FRAME, "frame is longer than its content");
+            }
+            formulas.add(formula);
+            ensureOutput(4 + 1 + 4);
+            out.putInt(1 + 4).put(STATUS_OK).putInt(formulas.size() - 1);
+        }
+
+        private Formula readFormula(ByteBuffer frame) throws RequestException {
+            String source = readString(frame);
+            String[] parameters = new String[Short.toUnsignedInt(frame.getShort())];
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i] = readString(frame);
+            }
+            try {
+                return new Formula(cache.get(source, parameters, String.join(",", parameters)), parameters.length);
+            } catch (RuntimeException e) {
+                // f.e. a SyntaxException, or a function throwing while its call is folded
+                throw new RequestException(STATUS_COMPILE_ERROR, e.getMessage());
+            } catch (StackOverflowError e) {
+                throw new RequestException(STATUS_COMPILE_ERROR, "formula is nested too deeply");
+            }
+        }
+
+        private String readString(ByteBuffer frame) {
+            int length = Short.toUnsignedInt(frame.getShort());
+            byte[] bytes = new byte[length];
+            frame.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void evaluate(Formula formula, ByteBuffer frame) throws RequestException, IOException {
+            int rows = frame.getInt();
+            if (rows < 0 || rows > MAX_ROWS) {
+                // formulas without parameters have no bindings to check the row count against
+                throw new RequestException(STATUS_MALFORMED_FRAME, "row count %s is not between 0 and %s".formatted(rows, MAX_ROWS));
+            }
+            if ((long) rows * formula.parameters * Double.BYTES != frame.remaining()) {
+                throw new RequestException(STATUS_MALFORMED_FRAME, "expected %s rows of %s doubles, got %s bytes"
+                        .formatted(rows, formula.parameters, frame.remaining()));
+            }
+            double[][] columns = columns(formula.parameters, rows);
+            for (double[] column : columns) {
+                frame.asDoubleBuffer().get(column, 0, rows);
+                frame.position(frame.position() + rows * Double.BYTES);
+            }
+            if (results.length != rows) {
+                // the batch size is taken from the length of the output
+                results = new double[rows];
+            }
+            if (rowCodes.length < rows) {
+                rowCodes = new byte[rows];
+            }
+            try {
+                formula.expression.evaluateBatch(columns, results);
+                Arrays.fill(rowCodes, 0, rows, ROW_OK);
+            } catch (RuntimeException | StackOverflowError e) {
+                // evaluate row by row to find out which rows failed
+                evaluateRows(formula, columns, rows);
+            }
+
+            // at most MAX_FRAME_SIZE because of the row limit
+            int length = Math.toIntExact(1 + 4 + (long) rows * (Double.BYTES + 1));
+            ensureOutput(4 + length);
+            out.putInt(length).put(STATUS_OK).putInt(rows);
+            out.asDoubleBuffer().put(results, 0, rows);
+            out.position(out.position() + rows * Double.BYTES);
+            out.put(rowCodes, 0, rows);
+        }
+
+        private void evaluateRows(Formula formula, double[][] columns, int rows) {
+            if (rowArgs.length != formula.parameters) {
+                rowArgs = new double[formula.parameters];
+            }
+            for (int row = 0; row < rows; row++) {
+                for (int i = 0; i < rowArgs.length; i++) {
+                    rowArgs[i] = columns[i][row];
+                }
+                try {
+                    results[row] = formula.expression.evaluate(rowArgs);
+                    rowCodes[row] = ROW_OK;
+                } catch (SyntaxException e) {
+                    results[row] = Double.NaN;
+                    rowCodes[row] = ROW_EVALUATION_ERROR;
+                } catch (RuntimeException | StackOverflowError e) {
+                    results[row] = Double.NaN;
+                    rowCodes[row] = ROW_INTERNAL_ERROR;
+                }
+            }
+        }
+
+        /**
+         * @return columns of at least the given amount of rows, reusing the arrays of earlier requests
+         */
+        private double[][] columns(int count, int rows) {
+            if (columnPool.length < count) {
+                columnPool = Arrays.copyOf(columnPool, count);
+            }
+            double[][] columns = new double[count][];
+            for (int i = 0; i < count; i++) {
+                if (columnPool[i] == null || columnPool[i].length < rows) {
+                    columnPool[i] = new double[rows];
+                }
+                columns[i] = columnPool[i];
+            }
+            return columns;
+        }
+
+        private void writeError(byte status, String message) throws IOException {
+            byte[] bytes = (message == null ? "unknown error" : message).getBytes(StandardCharsets.UTF_8);
+            ensureOutput(4 + 1 + bytes.length);
+            out.putInt(1 + bytes.length).put(status).put(bytes);
+        }
+
+        /**
+         * Makes room for a response of the given size, writing out earlier responses or growing the buffer.
+         */
+        private void ensureOutput(int size) throws IOException {
+            if (out.remaining() >= size) return;
+            flush();
+            if (out.capacity() < size) {
+                out = allocate(size);
+            }
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+    }
+
+    private record Formula(CompiledExpression expression, int parameters) {
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @param buffer a buffer in write mode
+     * @return a larger buffer with the same contents, in write mode
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer grown = allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
@@ -0,0 +1,96 @@
+package me.fourteendoggo.mathexpressionparser.server;
+
+import me.fourteendoggo.mathexpressionparser.ExpressionParser;
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of compiled expressions, keyed by the expression text and the names of its parameters.
+ * When full, the least recently used expression is evicted. Expressions that fail to compile are not cached.
+ * <p>
+ * Compiling happens outside the lock, so a slow compilation does not hold up lookups of other expressions.
+ * Two threads missing the same expression at once may both compile it, only one result is kept.
+ */
+public final class CompiledExpressionCache {
+    private final ExecutionEnv env;
+    private final int capacity;
+    // guarded by itself, a lookup also updates the access order
+    private final Map<Key, CompiledExpression> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param env      the environment expressions are compiled in, must not be modified afterwards
+     * @param capacity the maximum amount of cached expressions
+     */
+    public CompiledExpressionCache(ExecutionEnv env, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1, got " + capacity);
+        }
+        this.env = env;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompiledExpression> eldest) {
+                return size() > CompiledExpressionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param source     the expression
+     * @param parameters the parameter names, in the order their values are passed to {@link CompiledExpression#evaluate(double...)}
+     * @param signature  the parameter names joined into one string, so the key does not need to copy the array
+     * @return the cached or newly compiled expression
+     * @throws SyntaxException if the expression does not compile
+     */
+    CompiledExpression get(String source, String[] parameters, String signature) {
+        Key key = new Key(source, signature);
+        CompiledExpression expression;
+        synchronized (entries) {
+            expression = entries.get(key);
+        }
+        if (expression != null) {
+            hits.increment();
+            return expression;
+        }
+        misses.increment();
+        expression = ExpressionParser.compile(source, env, parameters);
+        synchronized (entries) {
+            CompiledExpression present = entries.putIfAbsent(key, expression);
+            return present != null ? present : expression;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledExpressionCache{size=" + size() + ", capacity=" + capacity
+                + ", hits=" + getHits() + ", misses=" + getMisses() + '}';
+    }
+
+    private record Key(String source, String signature) {
+    }
+}
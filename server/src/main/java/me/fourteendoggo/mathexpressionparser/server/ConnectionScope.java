@@ -0,0 +1,70 @@
+package me.fourteendoggo.mathexpressionparser.server;
+
+import me.fourteendoggo.mathexpressionparser.compiler.CompiledExpression;
+import me.fourteendoggo.mathexpressionparser.exceptions.SyntaxException;
+import me.fourteendoggo.mathexpressionparser.utils.Utility;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The variables registered by one connection, passed to expressions as parameters.
+ * The names are kept sorted, so connections registering the same names share compiled expressions.
+ * Only used by the thread serving the connection.
+ */
+final class ConnectionScope {
+    private final Map<String, Double> variables = new TreeMap<>();
+    private final CompiledExpressionCache cache;
+    private String[] names = {};
+    private double[] values = {};
+    private String signature = "";
+
+    ConnectionScope(CompiledExpressionCache cache) {
+        this.cache = cache;
+    }
+
+    double evaluate(String source) {
+        CompiledExpression expression = cache.get(source, names, signature);
+        return expression.evaluate(values);
+    }
+
+    /**
+     * @throws SyntaxException if the name is not a valid identifier
+     */
+    void set(String name, double value) {
+        if (!Utility.isValidIdentifierName(name)) {
+            throw new SyntaxException("invalid identifier name: %s", name);
+        }
+        if (variables.put(name, value) == null) {
+            rebuild();
+        } else {
+            // same names, only the value changes
+            int index = Arrays.binarySearch(names, name);
+            values[index] = value;
+        }
+    }
+
+    /**
+     * @return whether the variable was registered
+     */
+    boolean remove(String name) {
+        if (variables.remove(name) == null) return false;
+        rebuild();
+        return true;
+    }
+
+    int size() {
+        return variables.size();
+    }
+
+    private void rebuild() {
+        names = variables.keySet().toArray(String[]::new);
+        values = new double[names.length];
+        int i = 0;
+        for (double value : variables.values()) {
+            values[i++] = value;
+        }
+        signature = String.join(",", names);
+    }
+}
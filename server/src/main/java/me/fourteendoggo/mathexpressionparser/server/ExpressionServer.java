@@ -0,0 +1,234 @@
+package me.fourteendoggo.mathexpressionparser.server;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves expression evaluation over a line based protocol on localhost, one request per line and one response per request.
+ * <p>
+ * Requests:
+ * <ul>
+ *     <li>{@code SET <name> <expression>}: registers a variable for this connection only, its value is evaluated once</li>
+ *     <li>{@code UNSET <name>}: removes a variable of this connection</li>
+ *     <li>{@code STATS}: the size, hits and misses of the compiled expression cache</li>
+ *     <li>{@code QUIT}: closes the connection</li>
+ *     <li>anything else is evaluated as an expression, identifiers cannot start with an uppercase character
+ *     so this never clashes with the commands above</li>
+ * </ul>
+ * Responses are {@code OK [result]} or {@code ERR <message>}.
+ * Variables of a connection shadow symbols of the environment with the same name.
+ * <p>
+ * Requests can be pipelined, responses are only flushed once no more requests are buffered,
+ * so a burst of requests is answered in a single write. Every connection is served by its own thread.
+ * Expressions are compiled once and cached by text, see {@link CompiledExpressionCache}.
+ */
+public final class ExpressionServer implements Closeable {
+    public static final int DEFAULT_PORT = 7878;
+    public static final int DEFAULT_CACHE_CAPACITY = 4096;
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    private final CompiledExpressionCache cache;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final ExecutorService connectionThreads;
+    private ServerSocket serverSocket;
+
+    /**
+     * @param env           the environment expressions are evaluated in, must not be modified after starting the server
+     * @param cacheCapacity the maximum amount of compiled expressions to keep
+     */
+    public ExpressionServer(ExecutionEnv env, int cacheCapacity) {
+        this.cache = new CompiledExpressionCache(env, cacheCapacity);
+        AtomicInteger connectionCount = new AtomicInteger();
+        this.connectionThreads = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "expression-server-connection-" + connectionCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int cacheCapacity = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CACHE_CAPACITY;
+        ExpressionServer server = new ExpressionServer(ExecutionEnv.defaulted(), cacheCapacity);
+        server.bind(port);
+        System.out.println("Listening on " + server.serverSocket.getLocalSocketAddress());
+        // accept on the main thread, the other threads are daemons
+        server.acceptLoop();
+    }
+
+    /**
+     * Binds to the loopback address and starts accepting connections on a background thread.
+     *
+     * @param port the port, or 0 to pick a free one, see {@link #getPort()}
+     * @throws IOException if the port could not be bound
+     */
+    public void start(int port) throws IOException {
+        bind(port);
+        Thread acceptor = new Thread(this::acceptLoop, "expression-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void bind(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("server is already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public CompiledExpressionCache getCache() {
+        return cache;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                connectionThreads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) return;
+                System.err.println("Failed to accept a connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        ConnectionScope scope = new ConnectionScope(cache);
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                boolean open = handle(line, scope, out);
+                if (!open) break;
+                // answer a burst of pipelined requests in one write
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (SocketException ignored) { // closed by the client or by close()
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * @return whether the connection should stay open
+     */
+    private boolean handle(String request, ConnectionScope scope, Writer out) throws IOException {
+        try {
+            if (request.startsWith("SET ")) {
+                int nameEnd = request.indexOf(' ', 4);
+                if (nameEnd < 0) {
+                    writeError(out, "usage: SET <name> <expression>");
+                    return true;
+                }
+                String name = request.substring(4, nameEnd);
+                scope.set(name, evaluateValue(request.substring(nameEnd + 1), scope));
+                out.write("OK\n");
+            } else if (request.startsWith("UNSET ")) {
+                String name = request.substring(6).strip();
+                if (scope.remove(name)) {
+                    out.write("OK\n");
+                } else {
+                    writeError(out, "no variable " + name);
+                }
+            } else if (request.equals("STATS")) {
+                out.write("OK size=" + cache.size() + " hits=" + cache.getHits() + " misses=" + cache.getMisses()
+                        + " variables=" + scope.size() + '\n');
+            } else if (request.equals("QUIT")) {
+                out.write("OK\n");
+                out.flush();
+                return false;
+            } else {
+                double result = scope.evaluate(request);
+                out.write("OK ");
+                out.write(Double.toString(result));
+                out.write('\n');
+            }
+        } catch (RuntimeException | StackOverflowError e) {
+            writeError(out, e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Plain numbers are parsed directly, so they do not fill up the cache.
+     */
+    private static double evaluateValue(String value, ConnectionScope scope) {
+        String stripped = value.strip();
+        if (isPlainNumber(stripped)) {
+            return Double.parseDouble(stripped);
+        }
+        return scope.evaluate(value);
+    }
+
+    /**
+     * Whether the value is a number as written in expressions, f.e. {@code -12.5}.
+     * {@link Double#parseDouble(String)} also accepts forms like {@code 1f}, {@code 0x1p3} or {@code NaN},
+     * those must be rejected like they would be in an expression.
+     */
+    private static boolean isPlainNumber(String value) {
+        int pos = value.startsWith("-") ? 1 : 0;
+        int digitsStart = pos;
+        while (pos < value.length() && value.charAt(pos) >= '0' && value.charAt(pos) <= '9') {
+            pos++;
+        }
+        if (pos == digitsStart) return false;
+        if (pos == value.length()) return true;
+        if (value.charAt(pos++) != '.') return false;
+        int decimalsStart = pos;
+        while (pos < value.length() && value.charAt(pos) >= '0' && value.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos > decimalsStart && pos == value.length();
+    }
+
+    private static void writeError(Writer out, String message) throws IOException {
+        out.write("ERR ");
+        // a message must not end the response early
+        out.write(message == null ? "unknown error" : message.replace('\n', ' '));
+        out.write('\n');
+    }
+
+    /**
+     * Stops accepting connections and closes all open ones.
+     */
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        connectionThreads.shutdown();
+    }
+}
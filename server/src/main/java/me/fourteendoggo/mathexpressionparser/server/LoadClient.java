@@ -0,0 +1,89 @@
+package me.fourteendoggo.mathexpressionparser.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A stand-in client to load test an {@link ExpressionServer} on this machine.
+ * Every connection registers its own variables, then sends bursts of pipelined requests and waits for all responses
+ * of a burst before sending the next one.
+ * <p>
+ * Usage: {@code LoadClient [port] [connections] [requests per connection] [pipeline depth]}
+ */
+public class LoadClient {
+    private static final String[] EXPRESSIONS = {
+            "sqrt(x * x + y * y)",
+            "sin(x) * cos(y) + tan(x / 4)",
+            "max(x, y, 1) * 2 - abs(y - x)",
+            "pow(x, 2) + log(y + 1) - floor(x / 3)",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : ExpressionServer.DEFAULT_PORT;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        LongAdder errors = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    run(port, id, requests, depth, errors);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "load-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = (long) connections * requests;
+        System.out.printf("%d requests over %d connections in %.2f s: %.0f requests/s, %d errors%n",
+                total, connections, seconds, total / seconds, errors.sum());
+    }
+
+    private static void run(int port, int id, int requests, int depth, LongAdder errors) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            out.write("SET x " + (id + 1) + "\nSET y " + (id * 0.5) + '\n');
+            out.flush();
+            in.readLine();
+            in.readLine();
+
+            for (int sent = 0; sent < requests; ) {
+                int burst = Math.min(depth, requests - sent);
+                for (int i = 0; i < burst; i++) {
+                    out.write(EXPRESSIONS[(sent + i) % EXPRESSIONS.length]);
+                    out.write('\n');
+                }
+                out.flush();
+                for (int i = 0; i < burst; i++) {
+                    String response = in.readLine();
+                    if (response == null) throw new IOException("server closed the connection");
+                    if (!response.startsWith("OK")) errors.increment();
+                }
+                sent += burst;
+            }
+            out.write("QUIT\n");
+            out.flush();
+        }
+    }
+}
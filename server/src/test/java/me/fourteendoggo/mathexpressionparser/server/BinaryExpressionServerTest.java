@@ -0,0 +1,224 @@
+package me.fourteendoggo.mathexpressionparser.server;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static me.fourteendoggo.mathexpressionparser.server.BinaryExpressionServer.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryExpressionServerTest {
+    @TempDir
+    Path directory;
+    private BinaryExpressionServer server;
+    private SocketChannel channel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path socket = directory.resolve("server.sock");
+        server = new BinaryExpressionServer(ExecutionEnv.defaulted(), 16);
+        server.start(socket);
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socket));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        channel.close();
+        server.close();
+    }
+
+    @Test
+    void testRegisterAndEvaluateBatches() throws IOException {
+        ByteBuffer register = frame(REGISTER);
+        putFormula(register, "x * y + 1", "x", "y");
+        send(register);
+        ByteBuffer response = receive();
+        assertThat(response.get()).isEqualTo(STATUS_OK);
+        int id = response.getInt();
+
+        // pipelined: both requests are written before reading the responses
+        ByteBuffer first = frame(EVALUATE).putInt(id).putInt(3);
+        putDoubles(first, 1, 2, 3, /* y */ 10, 20, 30);
+        ByteBuffer second = frame(EVALUATE).putInt(id).putInt(1);
+        putDoubles(second, -1, 4);
+        send(first, second);
+
+        assertThat(readResults(receive(), 3)).containsExactly(11, 41, 91);
+        assertThat(readResults(receive(), 1)).containsExactly(-3);
+        assertThat(server.getCache().getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void testBatchLargerThanTheBuffers() throws IOException {
+        int rows = 50_000;
+        ByteBuffer request = frame(EVALUATE_TEXT, 64 + rows * Double.BYTES);
+        putFormula(request, "2x", "x");
+        request.putInt(rows);
+        for (int i = 0; i < rows; i++) {
+            request.putDouble(i);
+        }
+        send(request);
+
+        double[] results = readResults(receive(), rows);
+        for (int i = 0; i < rows; i++) {
+            assertThat(results[i]).isEqualTo(2.0 * i);
+        }
+    }
+
+    @Test
+    void testFailingRowsAreReportedPerRow() throws IOException {
+        ByteBuffer request = frame(EVALUATE_TEXT);
+        putFormula(request, "gcd(x, 12)", "x");
+        request.putInt(3);
+        putDoubles(request, 8, 1.5, 9);
+        send(request);
+
+        ByteBuffer response = receive();
+        assertThat(response.get()).isEqualTo(STATUS_OK);
+        assertThat(response.getInt()).isEqualTo(3);
+        assertThat(response.getDouble()).isEqualTo(4);
+        assertThat(response.getDouble()).isNaN();
+        assertThat(response.getDouble()).isEqualTo(3);
+        assertThat(new byte[]{response.get(), response.get(), response.get()})
+                .containsExactly(ROW_OK, ROW_EVALUATION_ERROR, ROW_OK);
+    }
+
+    @Test
+    void testRejectedRequestsKeepTheConnectionOpen() throws IOException {
+        send(frame(EVALUATE).putInt(42).putInt(0));
+        assertThat(readError(receive(), STATUS_UNKNOWN_FORMULA)).contains("42");
+
+        ByteBuffer invalid = frame(REGISTER);
+        putFormula(invalid, "x +", "x");
+        send(invalid);
+        assertThat(readError(receive(), STATUS_COMPILE_ERROR)).isNotEmpty();
+
+        ByteBuffer wrongSize = frame(EVALUATE_TEXT);
+        putFormula(wrongSize, "x", "x");
+        wrongSize.putInt(2);
+        putDoubles(wrongSize, 1);
+        send(wrongSize, frame((byte) 99));
+        assertThat(readError(receive(), STATUS_MALFORMED_FRAME)).contains("2 rows");
+        assertThat(readError(receive(), STATUS_MALFORMED_FRAME)).contains("99");
+
+        ByteBuffer valid = frame(EVALUATE_TEXT);
+        putFormula(valid, "sqrt(16)");
+        valid.putInt(1);
+        send(valid);
+        assertThat(readResults(receive(), 1)).containsExactly(4);
+    }
+
+    @Test
+    void testRowCountOfFormulaWithoutParametersIsBounded() throws IOException {
+        ByteBuffer huge = frame(EVALUATE_TEXT);
+        putFormula(huge, "1");
+        huge.putInt(Integer.MAX_VALUE);
+        ByteBuffer negative = frame(EVALUATE_TEXT);
+        putFormula(negative, "1");
+        negative.putInt(-1);
+        send(huge, negative);
+        assertThat(readError(receive(), STATUS_MALFORMED_FRAME)).contains(String.valueOf(Integer.MAX_VALUE));
+        assertThat(readError(receive(), STATUS_MALFORMED_FRAME)).contains("-1");
+
+        ByteBuffer valid = frame(EVALUATE_TEXT);
+        putFormula(valid, "1");
+        valid.putInt(3);
+        send(valid);
+        assertThat(readResults(receive(), 3)).containsExactly(1, 1, 1);
+    }
+
+    @Test
+    void testDeeplyNestedFormulaIsACompileError() throws IOException {
+        // within the string limit, but deep enough to overflow the stack of the compiler
+        String nested = "(".repeat(30_000) + "1" + ")".repeat(30_000);
+        ByteBuffer deep = frame(EVALUATE_TEXT, 64 + nested.length());
+        putFormula(deep, nested);
+        deep.putInt(1);
+        ByteBuffer valid = frame(EVALUATE_TEXT);
+        putFormula(valid, "2 + 3");
+        valid.putInt(1);
+        // pipelined, the response to the second request must not be dropped
+        send(deep, valid);
+
+        assertThat(readError(receive(), STATUS_COMPILE_ERROR)).isNotEmpty();
+        assertThat(readResults(receive(), 1)).containsExactly(5);
+    }
+
+    private static ByteBuffer frame(byte type) {
+        return frame(type, 1024);
+    }
+
+    private static ByteBuffer frame(byte type, int capacity) {
+        // room for the length, filled in by send
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN).putInt(0).put(type);
+    }
+
+    private static void putFormula(ByteBuffer frame, String source, String... parameters) {
+        putString(frame, source);
+        frame.putShort((short) parameters.length);
+        for (String parameter : parameters) {
+            putString(frame, parameter);
+        }
+    }
+
+    private static void putString(ByteBuffer frame, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        frame.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static void putDoubles(ByteBuffer frame, double... values) {
+        for (double value : values) {
+            frame.putDouble(value);
+        }
+    }
+
+    private void send(ByteBuffer... frames) throws IOException {
+        for (ByteBuffer frame : frames) {
+            frame.putInt(0, frame.position() - 4).flip();
+        }
+        channel.write(frames);
+    }
+
+    private ByteBuffer receive() throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(length);
+        ByteBuffer frame = ByteBuffer.allocate(length.getInt(0)).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(frame);
+        return frame.flip();
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new IOException("server closed the connection");
+        }
+    }
+
+    private static double[] readResults(ByteBuffer response, int rows) {
+        assertThat(response.get()).isEqualTo(STATUS_OK);
+        assertThat(response.getInt()).isEqualTo(rows);
+        double[] results = new double[rows];
+        response.asDoubleBuffer().get(results);
+        response.position(response.position() + rows * Double.BYTES);
+        for (int i = 0; i < rows; i++) {
+            assertThat(response.get()).isEqualTo(ROW_OK);
+        }
+        return results;
+    }
+
+    private static String readError(ByteBuffer response, byte status) {
+        assertThat(response.get()).isEqualTo(status);
+        return StandardCharsets.UTF_8.decode(response).toString();
+    }
+}
@@ -0,0 +1,111 @@
+package me.fourteendoggo.mathexpressionparser.server;
+
+import me.fourteendoggo.mathexpressionparser.symbol.ExecutionEnv;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpressionServerTest {
+    private ExpressionServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new ExpressionServer(ExecutionEnv.defaulted(), 2);
+        server.start(0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void testPipelinedRequests() throws IOException {
+        try (Socket socket = connect()) {
+            List<String> responses = send(socket, "1 + 2", "sqrt(16)", "1 +", "", "STATS", "QUIT");
+
+            assertThat(responses.get(0)).isEqualTo("OK 3.0");
+            assertThat(responses.get(1)).isEqualTo("OK 4.0");
+            assertThat(responses.get(2)).startsWith("ERR ");
+            assertThat(responses.get(3)).startsWith("ERR ");
+            assertThat(responses.get(4)).startsWith("OK size=2 hits=0 misses=4");
+            assertThat(responses.get(5)).isEqualTo("OK");
+        }
+    }
+
+    @Test
+    void testVariablesAreScopedToTheConnection() throws IOException {
+        try (Socket first = connect(); Socket second = connect()) {
+            assertThat(send(first, "SET x 3", "SET y x * 2", "x + y")).containsExactly("OK", "OK", "OK 9.0");
+            assertThat(send(second, "SET x 10", "x + 1")).containsExactly("OK", "OK 11.0");
+            assertThat(send(first, "x + 1", "SET x 4", "x + 1")).containsExactly("OK 4.0", "OK", "OK 5.0");
+            assertThat(send(second, "x + y", "UNSET x", "UNSET x", "x")).satisfiesExactly(
+                    response -> assertThat(response).startsWith("ERR "),
+                    response -> assertThat(response).isEqualTo("OK"),
+                    response -> assertThat(response).isEqualTo("ERR no variable x"),
+                    response -> assertThat(response).startsWith("ERR ")
+            );
+            assertThat(send(first, "SET Q 1", "SET x")).allSatisfy(response -> assertThat(response).startsWith("ERR "));
+        }
+    }
+
+    @Test
+    void testOnlyPlainNumbersSkipTheParser() throws IOException {
+        try (Socket socket = connect()) {
+            assertThat(send(socket, "SET x -2.5", "x", "SET y 10", "y")).containsExactly("OK", "OK -2.5", "OK", "OK 10.0");
+            // accepted by Double.parseDouble, but not by the expression language
+            assertThat(send(socket, "SET x 1f", "SET x 0x1p3", "SET x NaN", "SET x Infinity", "SET x 1e3"))
+                    .allSatisfy(response -> assertThat(response).startsWith("ERR "));
+            assertThat(send(socket, "x")).containsExactly("OK -2.5");
+        }
+        assertThat(server.getCache().getHits() + server.getCache().getMisses()).isEqualTo(2 + 5 + 1);
+    }
+
+    @Test
+    void testCacheIsSharedAndBounded() throws IOException {
+        try (Socket first = connect(); Socket second = connect()) {
+            send(first, "SET x 1", "x * 2", "x * 2");
+            send(second, "SET x 2", "x * 2");
+        }
+        CompiledExpressionCache cache = server.getCache();
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(2);
+
+        try (Socket socket = connect()) {
+            send(socket, "1 + 1", "2 + 2", "3 + 3");
+        }
+        assertThat(cache.size()).isEqualTo(cache.getCapacity());
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    /**
+     * Writes all requests at once, then reads one response per request.
+     */
+    private static List<String> send(Socket socket, String... requests) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((String.join("\n", requests) + '\n').getBytes(StandardCharsets.UTF_8));
+        out.flush();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        List<String> responses = new ArrayList<>();
+        for (int i = 0; i < requests.length; i++) {
+            responses.add(in.readLine());
+        }
+        return responses;
+    }
+}